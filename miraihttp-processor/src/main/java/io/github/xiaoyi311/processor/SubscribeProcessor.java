@@ -0,0 +1,350 @@
+package io.github.xiaoyi311.processor;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * MiraiHttp 事件处理方法注解处理器<br>
+ * 为每个含有 {@code @Subscribe} 方法的类生成 {@code 类名_Dispatcher}，
+ * 分发器实现 MiraiEventListener 并直接调用处理方法，同时生成只接收所需事件类型与群的过滤器
+ */
+@SupportedAnnotationTypes(SubscribeProcessor.SUBSCRIBE)
+public class SubscribeProcessor extends AbstractProcessor {
+    /**
+     * 注解类名
+     */
+    static final String SUBSCRIBE = "io.github.xiaoyi311.event.Subscribe";
+
+    /**
+     * 事件包名
+     */
+    private static final String EVENT_PACKAGE = "io.github.xiaoyi311.event.";
+
+    /**
+     * 事件类名与对应的监听方法、事件类型
+     */
+    private static final Map<String, String[]> EVENTS = new LinkedHashMap<>();
+
+    static {
+        EVENTS.put("GroupMessageEvent", new String[]{"onGroupMessage", "GroupMessage"});
+        EVENTS.put("MemberJoinEvent", new String[]{"onMemberJoin", "MemberJoinEvent"});
+        EVENTS.put("MemberLeaveEventQuit", new String[]{"onMemberLeaveQuit", "MemberLeaveEventQuit"});
+        EVENTS.put("MemberLeaveEventKick", new String[]{"onMemberLeaveKick", "MemberLeaveEventKick"});
+        EVENTS.put("MemberPermissionChangeEvent", new String[]{"onMemberPermissionChange", "MemberPermissionChangeEvent"});
+        EVENTS.put("BotGroupPermissionChangeEvent", new String[]{"onBotGroupPermissionChange", "BotGroupPermissionChangeEvent"});
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement subscribe = processingEnv.getElementUtils().getTypeElement(SUBSCRIBE);
+        if (subscribe == null) {
+            return false;
+        }
+
+        //按所在类分组
+        Map<TypeElement, List<Handler>> owners = new LinkedHashMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(subscribe)) {
+            Handler handler = toHandler((ExecutableElement) element, subscribe);
+            if (handler != null) {
+                owners.computeIfAbsent((TypeElement) element.getEnclosingElement(), (k) -> new ArrayList<>()).add(handler);
+            }
+        }
+
+        for (Map.Entry<TypeElement, List<Handler>> entry : owners.entrySet()) {
+            try {
+                write(entry.getKey(), entry.getValue());
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "生成分发器失败：" + e, entry.getKey());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 检查并读取处理方法
+     *
+     * @param method    方法
+     * @param subscribe 注解类型
+     * @return          处理方法，不合法时为 null
+     */
+    private Handler toHandler(ExecutableElement method, TypeElement subscribe) {
+        Messager messager = processingEnv.getMessager();
+        if (method.getModifiers().contains(Modifier.PRIVATE)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@Subscribe 方法不能是 private", method);
+            return null;
+        }
+        if (method.getEnclosingElement().getModifiers().contains(Modifier.PRIVATE)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@Subscribe 方法所在的类不能是 private", method);
+            return null;
+        }
+        if (method.getParameters().size() != 1) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@Subscribe 方法需有且只有一个事件参数", method);
+            return null;
+        }
+
+        TypeMirror param = method.getParameters().get(0).asType();
+        String event = param.getKind() == TypeKind.DECLARED ? param.toString() : "";
+        if (!event.startsWith(EVENT_PACKAGE) || !EVENTS.containsKey(event.substring(EVENT_PACKAGE.length()))) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "不支持的事件类型 " + param + "，可用：" + EVENTS.keySet(), method);
+            return null;
+        }
+
+        Handler handler = new Handler();
+        handler.method = method;
+        handler.event = event.substring(EVENT_PACKAGE.length());
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            if (!mirror.getAnnotationType().asElement().equals(subscribe)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value
+                    : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+                String name = value.getKey().getSimpleName().toString();
+                if (name.equals("groups")) {
+                    for (Object group : (List<?>) value.getValue().getValue()) {
+                        handler.groups.add((Long) ((AnnotationValue) group).getValue());
+                    }
+                } else if (name.equals("prefix")) {
+                    handler.prefix = (String) value.getValue().getValue();
+                }
+            }
+        }
+
+        if (!handler.prefix.isEmpty() && !handler.event.equals("GroupMessageEvent")) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "prefix 只能用于群信息事件", method);
+            return null;
+        }
+        return handler;
+    }
+
+    /**
+     * 生成分发器
+     *
+     * @param owner    所在类
+     * @param handlers 处理方法
+     */
+    private void write(TypeElement owner, List<Handler> handlers) throws IOException {
+        Elements elements = processingEnv.getElementUtils();
+        String pkg = elements.getPackageOf(owner).getQualifiedName().toString();
+        String name = dispatcherName(owner);
+        String target = owner.getQualifiedName().toString();
+
+        //分发器接收的事件类型，以及群的并集；有处理方法不限制群时不过滤群
+        Set<String> types = new LinkedHashSet<>();
+        Set<Long> groups = new TreeSet<>();
+        boolean anyGroup = false;
+        for (Handler handler : handlers) {
+            types.add(EVENTS.get(handler.event)[1]);
+            groups.addAll(handler.groups);
+            anyGroup |= handler.groups.isEmpty();
+        }
+
+        StringBuilder out = new StringBuilder();
+        if (!pkg.isEmpty()) {
+            out.append("package ").append(pkg).append(";\n\n");
+        }
+        out.append("import io.github.xiaoyi311.MiraiHttp;\n")
+                .append("import io.github.xiaoyi311.MiraiHttpConn;\n")
+                .append("import io.github.xiaoyi311.entity.message.MessageChain;\n")
+                .append("import io.github.xiaoyi311.event.EventFilter;\n")
+                .append("import io.github.xiaoyi311.event.MiraiEventListener;\n\n")
+                .append("/**\n * ").append(owner.getSimpleName()).append(" 的事件分发器，由 @Subscribe 生成，请勿修改\n */\n")
+                .append("public final class ").append(name).append(" implements MiraiEventListener {\n");
+
+        out.append("    /**\n     * 只接收处理方法需要的事件\n     */\n")
+                .append("    public static final EventFilter FILTER = EventFilter.ANY.types(");
+        joinQuoted(out, types);
+        out.append(")");
+        if (!anyGroup) {
+            out.append(".groups(");
+            int i = 0;
+            for (Long group : groups) {
+                out.append(i++ > 0 ? ", " : "").append(group).append("L");
+            }
+            out.append(")");
+        }
+        out.append(";\n\n");
+
+        out.append("    private final ").append(target).append(" target;\n\n")
+                .append("    public ").append(name).append("(").append(target).append(" target) {\n")
+                .append("        this.target = target;\n")
+                .append("    }\n\n");
+
+        out.append("    /**\n     * 创建分发器并注册到 Mirai 连接\n     *\n")
+                .append("     * @param conn   Mirai 连接\n     * @param target 处理方法所在的实例\n     * @return       分发器\n     */\n")
+                .append("    public static ").append(name).append(" register(MiraiHttpConn conn, ").append(target).append(" target) {\n")
+                .append("        ").append(name).append(" dispatcher = new ").append(name).append("(target);\n")
+                .append("        MiraiHttp.registerListener(dispatcher, conn, FILTER);\n")
+                .append("        return dispatcher;\n")
+                .append("    }\n");
+
+        for (Map.Entry<String, String[]> event : EVENTS.entrySet()) {
+            List<Handler> matched = new ArrayList<>();
+            for (Handler handler : handlers) {
+                if (handler.event.equals(event.getKey())) {
+                    matched.add(handler);
+                }
+            }
+            //onGroupMessage 没有默认实现，必须生成
+            if (matched.isEmpty() && !event.getKey().equals("GroupMessageEvent")) {
+                continue;
+            }
+            writeEvent(out, event.getKey(), event.getValue()[0], matched, target);
+        }
+        out.append("}\n");
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                pkg.isEmpty() ? name : pkg + "." + name,
+                owner
+        );
+        try (Writer writer = file.openWriter()) {
+            writer.write(out.toString());
+        }
+    }
+
+    /**
+     * 生成单个事件的监听方法
+     *
+     * @param out      输出
+     * @param event    事件类名
+     * @param method   监听方法名
+     * @param handlers 处理方法
+     * @param target   所在类名
+     */
+    private void writeEvent(StringBuilder out, String event, String method, List<Handler> handlers, String target) {
+        out.append("\n    @Override\n")
+                .append("    public void ").append(method).append("(").append(EVENT_PACKAGE).append(event).append(" event) {\n");
+
+        boolean needGroup = false;
+        boolean needText = false;
+        for (Handler handler : handlers) {
+            needGroup |= !handler.groups.isEmpty();
+            needText |= !handler.prefix.isEmpty();
+        }
+        if (needGroup) {
+            out.append("        long group = event.getGroupId();\n");
+        }
+        if (needText) {
+            out.append("        String text = MessageChain.toPlainText(event.messages);\n");
+        }
+
+        for (Handler handler : handlers) {
+            List<String> conditions = new ArrayList<>();
+            if (!handler.groups.isEmpty()) {
+                StringBuilder condition = new StringBuilder();
+                int i = 0;
+                for (Long group : handler.groups) {
+                    condition.append(i++ > 0 ? " || " : "").append("group == ").append(group).append("L");
+                }
+                conditions.add(handler.groups.size() > 1 ? "(" + condition + ")" : condition.toString());
+            }
+            if (!handler.prefix.isEmpty()) {
+                conditions.add("text.startsWith(" + quote(handler.prefix) + ")");
+            }
+
+            String call = (handler.method.getModifiers().contains(Modifier.STATIC) ? target : "target")
+                    + "." + handler.method.getSimpleName() + "(event);";
+            if (conditions.isEmpty()) {
+                out.append("        ").append(call).append("\n");
+            } else {
+                out.append("        if (").append(String.join(" && ", conditions)).append(") {\n")
+                        .append("            ").append(call).append("\n")
+                        .append("        }\n");
+            }
+        }
+        out.append("    }\n");
+    }
+
+    /**
+     * 获取分发器类名，嵌套类以下划线连接外部类名
+     *
+     * @param owner 所在类
+     * @return      分发器类名
+     */
+    private static String dispatcherName(TypeElement owner) {
+        StringBuilder name = new StringBuilder(owner.getSimpleName());
+        Element enclosing = owner.getEnclosingElement();
+        while (enclosing instanceof TypeElement) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name.append("_Dispatcher").toString();
+    }
+
+    /**
+     * 以逗号连接带引号的字符串
+     *
+     * @param out    输出
+     * @param values 字符串
+     */
+    private static void joinQuoted(StringBuilder out, Collection<String> values) {
+        int i = 0;
+        for (String value : values) {
+            out.append(i++ > 0 ? ", " : "").append(quote(value));
+        }
+    }
+
+    /**
+     * 转为 Java 字符串字面量
+     *
+     * @param value 字符串
+     * @return      字面量
+     */
+    private static String quote(String value) {
+        StringBuilder ret = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"': ret.append("\\\""); break;
+                case '\\': ret.append("\\\\"); break;
+                case '\n': ret.append("\\n"); break;
+                case '\r': ret.append("\\r"); break;
+                case '\t': ret.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        ret.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        ret.append(c);
+                    }
+            }
+        }
+        return ret.append('"').toString();
+    }
+
+    /**
+     * 处理方法
+     */
+    private static class Handler {
+        /**
+         * 方法
+         */
+        ExecutableElement method;
+
+        /**
+         * 事件类名
+         */
+        String event;
+
+        /**
+         * 只处理的群
+         */
+        final Set<Long> groups = new LinkedHashSet<>();
+
+        /**
+         * 命令前缀
+         */
+        String prefix = "";
+    }
+}
@@ -3,9 +3,15 @@ package io.github.xiaoyi311;
 import io.github.xiaoyi311.err.NetworkIOError;
 import io.github.xiaoyi311.err.RobotNotFound;
 import io.github.xiaoyi311.err.VerifyKeyError;
+import io.github.xiaoyi311.event.EventFilter;
 import io.github.xiaoyi311.event.EventManager;
+import io.github.xiaoyi311.event.ListenerStats;
+import io.github.xiaoyi311.event.ListenerWatchdog;
 import io.github.xiaoyi311.event.MiraiEventListener;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * MiraiHttp 主类
  */
@@ -49,6 +55,18 @@ public class MiraiHttp {
         return new MiraiHttpConn(verifyKey, host, networkErrorStrategy, sessionOutDateErrorStrategy);
     }
 
+    /**
+     * 并行创建并绑定多个机器人的连接<br>
+     * 每个连接在开始轮询前注册好监听器，所有连接就绪或失败后返回
+     *
+     * @param bots        机器人配置
+     * @param parallelism 最大并行数
+     * @return            与配置顺序一致的启动结果
+     */
+    public static List<MiraiHttpFleet.Result> createConns(Collection<MiraiHttpFleet.Bot> bots, int parallelism) {
+        return MiraiHttpFleet.bootstrap(bots, parallelism);
+    }
+
     /**
      * 注册事件监听器<br>
      * 建议在绑定机器人前进行注册，防止部分信息无法接收
@@ -60,6 +78,18 @@ public class MiraiHttp {
         EventManager.addListener(conn, listener);
     }
 
+    /**
+     * 注册带过滤器的事件监听器<br>
+     * 监听器只会收到过滤器接受的事件；连接上所有监听器都不需要的事件在解码前就会被丢弃
+     *
+     * @param listener 监听器
+     * @param conn     对应的 Mirai 连接
+     * @param filter   事件过滤器，例如 EventFilter.ANY.types("GroupMessage").groups(123L)
+     */
+    public static void registerListener(MiraiEventListener listener, MiraiHttpConn conn, EventFilter filter){
+        EventManager.addListener(conn, listener, filter);
+    }
+
     /**
      * 卸载事件监听器
      *
@@ -69,4 +99,25 @@ public class MiraiHttp {
     public static void removeListener(MiraiEventListener listener, MiraiHttpConn conn){
         EventManager.removeListener(conn, listener);
     }
+
+    /**
+     * 获取连接上所有事件监听器的执行统计
+     *
+     * @param conn 对应的 Mirai 连接
+     * @return     执行统计
+     */
+    public static List<ListenerStats> getListenerStats(MiraiHttpConn conn){
+        return EventManager.getListenerStats(conn);
+    }
+
+    /**
+     * 设置慢监听器看门狗<br>
+     * 连续超过耗时预算的监听器会被移到独立线程执行，不再拖慢其他监听器
+     *
+     * @param conn     对应的 Mirai 连接
+     * @param watchdog 看门狗配置，null 为不启用
+     */
+    public static void setListenerWatchdog(MiraiHttpConn conn, ListenerWatchdog watchdog){
+        EventManager.setWatchdog(conn, watchdog);
+    }
 }
@@ -0,0 +1,245 @@
+package io.github.xiaoyi311;
+
+import io.github.xiaoyi311.event.GroupMessageEvent;
+import io.github.xiaoyi311.event.MiraiEventListener;
+import io.github.xiaoyi311.util.CountMinSketch;
+import io.github.xiaoyi311.util.RateCounter;
+import io.github.xiaoyi311.util.TopK;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 群活跃度统计<br>
+ * 每个群与所有群各保存一份固定大小的统计：Count-Min 估计每个成员的发言数，Space-Saving 记录发言最多的成员，
+ * 滑动窗口记录最近的信息速率，并按小时累计信息数。内存与活跃成员数量无关，查询不需遍历历史信息<br>
+ * 统计作为监听器注册在 Mirai 连接上，由事件分发填充
+ */
+public class MiraiHttpAnalytics implements MiraiEventListener {
+    /**
+     * Count-Min 每行宽度
+     */
+    private static final int SKETCH_WIDTH = 1024;
+
+    /**
+     * Count-Min 行数
+     */
+    private static final int SKETCH_DEPTH = 4;
+
+    /**
+     * 滑动窗口的桶数
+     */
+    private static final int RATE_BUCKETS = 60;
+
+    /**
+     * 记录的发言最多成员数
+     */
+    private final int topK;
+
+    /**
+     * 速率窗口长度（毫秒）
+     */
+    private final long windowMillis;
+
+    /**
+     * 按小时统计使用的时区规则
+     */
+    private final ZoneRules zone;
+
+    /**
+     * 群号与统计对应表
+     */
+    private final Map<Long, Stats> groups = new ConcurrentHashMap<>();
+
+    /**
+     * 所有群的统计
+     */
+    private final Stats global;
+
+    /**
+     * 创建统计
+     *
+     * @param topK   记录的发言最多成员数
+     * @param window 速率窗口长度
+     * @param unit   时间单位
+     */
+    protected MiraiHttpAnalytics(int topK, long window, TimeUnit unit) {
+        this(topK, window, unit, ZoneId.systemDefault());
+    }
+
+    /**
+     * 创建统计
+     *
+     * @param topK   记录的发言最多成员数
+     * @param window 速率窗口长度
+     * @param unit   时间单位
+     * @param zone   按小时统计使用的时区
+     */
+    protected MiraiHttpAnalytics(int topK, long window, TimeUnit unit, ZoneId zone) {
+        if (topK < 1 || unit.toMillis(window) < RATE_BUCKETS) {
+            throw new IllegalArgumentException("topK 必须大于 0，window 不能短于 " + RATE_BUCKETS + " 毫秒");
+        }
+        this.topK = topK;
+        this.windowMillis = unit.toMillis(window);
+        this.zone = zone.getRules();
+        this.global = new Stats();
+    }
+
+    @Override
+    public void onGroupMessage(GroupMessageEvent event) {
+        long now = System.currentTimeMillis();
+        long sender = event.getSenderId();
+        int hour = hourOf(event.time != null ? event.time : now / 1000);
+
+        groups.computeIfAbsent(event.getGroupId(), (k) -> new Stats()).add(sender, hour, now);
+        global.add(sender, hour, now);
+    }
+
+    /**
+     * 获取有统计的群
+     *
+     * @return 群号
+     */
+    public Set<Long> getGroups() {
+        return Collections.unmodifiableSet(groups.keySet());
+    }
+
+    /**
+     * 获取信息总数
+     *
+     * @param group 群号，null 为所有群
+     * @return      信息数
+     */
+    public long getTotal(Long group) {
+        Stats stats = stats(group);
+        return stats != null ? stats.total() : 0;
+    }
+
+    /**
+     * 估计成员的发言数<br>
+     * 估计值不会小于真实值
+     *
+     * @param group  群号，null 为所有群
+     * @param sender 成员 QQ
+     * @return       发言数
+     */
+    public long getMessageCount(Long group, long sender) {
+        Stats stats = stats(group);
+        return stats != null ? stats.estimate(sender) : 0;
+    }
+
+    /**
+     * 获取发言最多的成员<br>
+     * 创建时的 topK 明显大于 n（例如 10 倍）时，前 n 名基本准确
+     *
+     * @param group 群号，null 为所有群
+     * @param n     最多返回的数量，不超过创建时的 topK
+     * @return      按发言数从大到小排列，key 为成员 QQ
+     */
+    public List<TopK.Entry> getTopSenders(Long group, int n) {
+        Stats stats = stats(group);
+        return stats != null ? stats.top(n) : new ArrayList<>();
+    }
+
+    /**
+     * 获取最近一个窗口内的信息速率
+     *
+     * @param group 群号，null 为所有群
+     * @param unit  速率的时间单位
+     * @return      每单位时间的信息数
+     */
+    public double getRate(Long group, TimeUnit unit) {
+        Stats stats = stats(group);
+        return stats != null ? stats.rate(System.currentTimeMillis(), unit) : 0;
+    }
+
+    /**
+     * 获取按小时累计的信息数
+     *
+     * @param group 群号，null 为所有群
+     * @return      长度为 24 的数组，第 i 个为 i 点到 i+1 点的信息数
+     */
+    public long[] getHourHistogram(Long group) {
+        Stats stats = stats(group);
+        return stats != null ? stats.hours() : new long[24];
+    }
+
+    /**
+     * 获取信息最多的小时
+     *
+     * @param group 群号，null 为所有群
+     * @return      0 ~ 23，没有信息时为 -1
+     */
+    public int getBusiestHour(Long group) {
+        long[] hours = getHourHistogram(group);
+        int busiest = -1;
+        for (int i = 0; i < hours.length; i++) {
+            if (hours[i] > 0 && (busiest < 0 || hours[i] > hours[busiest])) {
+                busiest = i;
+            }
+        }
+        return busiest;
+    }
+
+    /**
+     * 获取群的统计
+     *
+     * @param group 群号，null 为所有群
+     * @return      统计，没有时为 null
+     */
+    private Stats stats(Long group) {
+        return group == null ? global : groups.get(group);
+    }
+
+    /**
+     * 计算时间戳所在的小时
+     *
+     * @param epochSecond 时间戳（秒）
+     * @return            0 ~ 23
+     */
+    private int hourOf(long epochSecond) {
+        long local = epochSecond + zone.getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+        return (int) (Math.floorMod(local, 86400L) / 3600);
+    }
+
+    /**
+     * 单个群或所有群的统计
+     */
+    private class Stats {
+        private final CountMinSketch senders = new CountMinSketch(SKETCH_WIDTH, SKETCH_DEPTH);
+        private final TopK talkers = new TopK(topK);
+        private final RateCounter rate = new RateCounter(windowMillis, TimeUnit.MILLISECONDS, RATE_BUCKETS);
+        private final long[] hours = new long[24];
+
+        private synchronized void add(long sender, int hour, long now) {
+            senders.add(sender);
+            talkers.add(sender);
+            rate.add(now);
+            hours[hour]++;
+        }
+
+        private synchronized long total() {
+            return senders.getTotal();
+        }
+
+        private synchronized long estimate(long sender) {
+            return senders.estimate(sender);
+        }
+
+        private synchronized List<TopK.Entry> top(int n) {
+            return talkers.top(n);
+        }
+
+        private synchronized double rate(long now, TimeUnit unit) {
+            return rate.getRate(now, unit);
+        }
+
+        private synchronized long[] hours() {
+            return hours.clone();
+        }
+    }
+}
@@ -1,9 +1,27 @@
 package io.github.xiaoyi311;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
+import io.github.xiaoyi311.entity.Group;
+import io.github.xiaoyi311.entity.Member;
+import io.github.xiaoyi311.entity.message.Image;
 import io.github.xiaoyi311.entity.message.MessageChain;
+import io.github.xiaoyi311.err.NetworkIOError;
 import io.github.xiaoyi311.err.SessionNotBind;
+import io.github.xiaoyi311.util.AdaptiveLimiter;
 import io.github.xiaoyi311.util.Network;
+import io.github.xiaoyi311.util.Threads;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * MiraiHttp Api 管理
@@ -14,6 +32,11 @@ public class MiraiHttpApi {
      */
     private final MiraiHttpConn miraiConn;
 
+    /**
+     * 上传图片时每次读取的字节数
+     */
+    private static final int UPLOAD_CHUNK = 64 * 1024;
+
     /**
      * 创建一个 Api
      *
@@ -37,13 +60,11 @@ public class MiraiHttpApi {
         }
 
         //构建参数
-        JSONObject data = new JSONObject();
-        data.put("sessionKey", miraiConn.session);
-        data.put("target", group);
-        data.put("messageChain", MessageChain.toJSONObject(message));
+        String session = miraiConn.outboundSession();
+        String body = sendBody(session, group, null, MessageChain.toJSONString(message));
 
         //获取 Mirai 连接
-        Network.NetworkReturn ret = Network.sendPost(miraiConn.getHost() + "/sendGroupMessage", data.toJSONString());
+        Network.NetworkReturn ret = call("sendGroupMessage", session, () -> Network.sendPost(miraiConn.getHost() + "/sendGroupMessage", body));
 
         return ret.data.getString("messageId");
     }
@@ -63,15 +84,404 @@ public class MiraiHttpApi {
         }
 
         //构建参数
-        JSONObject data = new JSONObject();
-        data.put("sessionKey", miraiConn.session);
-        data.put("target", group);
-        data.put("quote", id);
-        data.put("messageChain", MessageChain.toJSONObject(message));
+        String session = miraiConn.outboundSession();
+        String body = sendBody(session, group, id, MessageChain.toJSONString(message));
 
         //获取 Session
-        Network.NetworkReturn ret = Network.sendPost(miraiConn.getHost() + "/sendGroupMessage", data.toJSONString());
+        Network.NetworkReturn ret = call("sendGroupMessage", session, () -> Network.sendPost(miraiConn.getHost() + "/sendGroupMessage", body));
 
         return ret.data.getString("messageId");
     }
+
+    /**
+     * 获取机器人加入的群列表
+     *
+     * @return 群列表，获取失败时为空
+     */
+    public List<Group> groupList() throws NetworkIOError {
+        //Mirai 连接是否绑定机器人
+        if (!miraiConn.isBound()){
+            throw new SessionNotBind();
+        }
+
+        String session = miraiConn.outboundSession();
+        Network.NetworkReturn ret = call("groupList", session, () -> Network.sendGet(
+                miraiConn.getHost() + "/groupList",
+                "sessionKey=" + session
+        ));
+
+        List<Group> groups = new ArrayList<>();
+        JSONArray data = ret.code == 0 ? ret.data.getJSONArray("data") : null;
+        if (data != null){
+            for (int i = 0; i < data.size(); i++) {
+                groups.add(Group.fromJSONObject(data.getJSONObject(i)));
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * 获取群成员列表
+     *
+     * @param group 群 ID
+     * @return      群成员列表，获取失败时为空
+     */
+    public List<Member> memberList(Long group) throws NetworkIOError {
+        //Mirai 连接是否绑定机器人
+        if (!miraiConn.isBound()){
+            throw new SessionNotBind();
+        }
+
+        String session = miraiConn.outboundSession();
+        Network.NetworkReturn ret = call("memberList", session, () -> Network.sendGet(
+                miraiConn.getHost() + "/memberList",
+                "sessionKey=" + session + "&target=" + group
+        ));
+
+        List<Member> members = new ArrayList<>();
+        JSONArray data = ret.code == 0 ? ret.data.getJSONArray("data") : null;
+        if (data != null){
+            for (int i = 0; i < data.size(); i++) {
+                members.add(Member.fromJSONObject(data.getJSONObject(i)));
+            }
+        }
+        return members;
+    }
+
+    /**
+     * 获取群成员信息
+     *
+     * @param group  群 ID
+     * @param member 群成员 QQ
+     * @return       群成员，不存在或获取失败时为 null
+     */
+    public Member memberInfo(Long group, Long member) throws NetworkIOError {
+        //Mirai 连接是否绑定机器人
+        if (!miraiConn.isBound()){
+            throw new SessionNotBind();
+        }
+
+        String session = miraiConn.outboundSession();
+        Network.NetworkReturn ret = call("memberInfo", session, () -> Network.sendGet(
+                miraiConn.getHost() + "/memberInfo",
+                "sessionKey=" + session + "&target=" + group + "&memberId=" + member
+        ));
+
+        //部分版本直接返回成员信息，没有状态码
+        if (ret.code != null && ret.code != 0){
+            return null;
+        }
+        return Member.fromJSONObject(ret.data.containsKey("data") ? ret.data.getJSONObject("data") : ret.data);
+    }
+
+    /**
+     * 上传群图片<br>
+     * 先以 SHA-256 计算文件内容，相同内容已上传过时直接返回缓存的图片；否则分块读取文件并流式上传，不会整体读入内存
+     *
+     * @param file 图片文件，从位置 0 读取到文件末尾，不改变通道位置
+     * @return     图片信息
+     */
+    public Image uploadImage(FileChannel file) throws NetworkIOError {
+        String hash;
+        try {
+            MessageDigest digest = sha256();
+            ByteBuffer chunk = ByteBuffer.allocate(UPLOAD_CHUNK);
+            long pos = 0;
+            int read;
+            while ((read = file.read(chunk, pos)) > 0) {
+                chunk.flip();
+                digest.update(chunk);
+                chunk.clear();
+                pos += read;
+            }
+            hash = toHex(digest.digest());
+        } catch (IOException e) {
+            throw new NetworkIOError("讀取圖片文件時失敗！", e);
+        }
+
+        return uploadImage(hash, (out) -> {
+            ByteBuffer chunk = ByteBuffer.allocate(UPLOAD_CHUNK);
+            long pos = 0;
+            int read;
+            while ((read = file.read(chunk, pos)) > 0) {
+                out.write(chunk.array(), 0, read);
+                chunk.clear();
+                pos += read;
+            }
+        });
+    }
+
+    /**
+     * 上传群图片<br>
+     * 相同内容已上传过时直接返回缓存的图片
+     *
+     * @param image 图片内容，读取 position 到 limit 之间的数据，不改变缓冲区位置
+     * @return      图片信息
+     */
+    public Image uploadImage(ByteBuffer image) throws NetworkIOError {
+        MessageDigest digest = sha256();
+        digest.update(image.duplicate());
+        String hash = toHex(digest.digest());
+
+        return uploadImage(hash, (out) -> {
+            ByteBuffer src = image.duplicate();
+            if (src.hasArray()) {
+                out.write(src.array(), src.arrayOffset() + src.position(), src.remaining());
+                return;
+            }
+            byte[] chunk = new byte[Math.min(UPLOAD_CHUNK, src.remaining())];
+            while (src.hasRemaining()) {
+                int len = Math.min(chunk.length, src.remaining());
+                src.get(chunk, 0, len);
+                out.write(chunk, 0, len);
+            }
+        });
+    }
+
+    /**
+     * 按内容哈希上传群图片
+     *
+     * @param hash  内容哈希
+     * @param image 写入图片内容
+     * @return      图片信息
+     */
+    private Image uploadImage(String hash, Network.BodyWriter image) throws NetworkIOError {
+        //Mirai 连接是否绑定机器人
+        if (!miraiConn.isBound()){
+            throw new SessionNotBind();
+        }
+
+        //同样的内容只上传一次
+        String imageId = miraiConn.imageIds.get(hash);
+        if (imageId != null){
+            return new Image(imageId);
+        }
+
+        String session = miraiConn.outboundSession();
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("sessionKey", session);
+        fields.put("type", "group");
+        Network.NetworkReturn ret = call("uploadImage", session, () -> Network.sendMultipart(
+                miraiConn.getHost() + "/uploadImage",
+                fields,
+                "img",
+                hash,
+                image
+        ));
+
+        //部分版本失败时返回状态码，成功时直接返回图片信息
+        if (ret.code != null && ret.code != 0){
+            throw new NetworkIOError("上傳圖片失敗：" + ret.data.getString("msg"), null);
+        }
+        Image result = new Image(ret.data.containsKey("data") ? ret.data.getJSONObject("data") : ret.data);
+        miraiConn.imageIds.put(hash, result.imageId);
+        return result;
+    }
+
+    /**
+     * 发出 Api 请求<br>
+     * 启用并发限制时先取得空位，启用追踪时记录请求耗时；返回后检查 Session 是否失效，失效时报告给 Mirai 连接。
+     * 发送队列也经由此处发送，与其他 Api 请求共用并发限制
+     *
+     * @param api     Api 名称
+     * @param session 使用的 Session
+     * @param request 请求
+     * @return        返回数据
+     */
+    <E extends Exception> Network.NetworkReturn call(String api, String session, Request<E> request) throws E {
+        AdaptiveLimiter limiter = miraiConn.limiter;
+        if (limiter != null){
+            limiter.acquire();
+        }
+
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Network.NetworkReturn ret = request.send();
+            success = true;
+            if (ret.code != null && ret.code == 3){
+                miraiConn.outboundSessionExpired(session);
+            }
+            return ret;
+        } finally {
+            long end = System.nanoTime();
+            if (limiter != null){
+                limiter.release(end - start, success);
+            }
+            MiraiHttpTracer tracer = miraiConn.tracer;
+            if (tracer != null){
+                tracer.recordSend(api, start, end);
+            }
+        }
+    }
+
+    /**
+     * 拼接发送群信息的请求内容<br>
+     * 信息链使用预先序列化的 JSON 字符串，不经过 JSONObject
+     *
+     * @param session Session
+     * @param group   群号
+     * @param quote   引用的信息 ID，可为 null
+     * @param chain   信息链 JSON
+     * @return        请求内容
+     */
+    static String sendBody(String session, long group, Long quote, String chain) {
+        StringBuilder body = new StringBuilder(chain.length() + 96).append("{\"sessionKey\":").append(JSON.toJSONString(session))
+                .append(",\"target\":").append(group);
+        if (quote != null) {
+            body.append(",\"quote\":").append(quote);
+        }
+        return body.append(",\"messageChain\":").append(chain).append('}').toString();
+    }
+
+    /**
+     * 获取 SHA-256 摘要
+     *
+     * @return 摘要
+     */
+    private static MessageDigest sha256(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 转为十六进制字符串
+     *
+     * @param bytes 字节
+     * @return      十六进制字符串
+     */
+    private static String toHex(byte[] bytes){
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+
+    /**
+     * 向多个群广播同一条信息<br>
+     * 信息链只序列化一次，每个群只替换请求外层的 target，并以有限的并发发送
+     *
+     * @param groups      目标群 ID 列表
+     * @param message     信息内容
+     * @param concurrency 最大并发发送数
+     * @param interval    两次发送之间的最小间隔（毫秒），用于遵守频率限制，0 为不限制
+     * @return            全部发送完成后完成的 Future，按目标顺序给出每个群的发送结果
+     */
+    public CompletableFuture<Map<Long, BroadcastResult>> broadcastGroupMessage(
+            Collection<Long> groups,
+            MessageChain[] message,
+            int concurrency,
+            long interval
+    ){
+        //Mirai 连接是否绑定机器人
+        if (!miraiConn.isBound()){
+            throw new SessionNotBind();
+        }
+        if (concurrency < 1){
+            throw new IllegalArgumentException("concurrency 必须大于 0");
+        }
+
+        //预先序列化信息链与请求外层，每个群只需拼接 Session 与 target
+        String url = miraiConn.getHost() + "/sendGroupMessage";
+        String tail = ",\"messageChain\":" + MessageChain.toJSONString(message) + "}";
+
+        List<Long> targets = new ArrayList<>(new LinkedHashSet<>(groups));
+        if (targets.isEmpty()){
+            return CompletableFuture.completedFuture(new LinkedHashMap<>());
+        }
+
+        ExecutorService executor = Threads.newExecutor("MiraiHttp-Broadcast", Math.min(concurrency, targets.size()));
+
+        //发送时间槽，保证相邻两次发送至少间隔 interval
+        AtomicLong nextSlot = new AtomicLong(System.currentTimeMillis());
+
+        List<CompletableFuture<BroadcastResult>> futures = new ArrayList<>(targets.size());
+        for (Long group : targets) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                BroadcastResult result = new BroadcastResult();
+                result.group = group;
+                try {
+                    if (interval > 0){
+                        long wait = nextSlot.getAndAdd(interval) - System.currentTimeMillis();
+                        if (wait > 0){
+                            Thread.sleep(wait);
+                        }
+                    }
+
+                    String session = miraiConn.outboundSession();
+                    Network.NetworkReturn ret = call("sendGroupMessage", session, () -> Network.sendPostChecked(
+                            url,
+                            "{\"sessionKey\":" + JSON.toJSONString(session) + ",\"target\":" + group + tail
+                    ));
+                    if (ret.code == null || ret.code != 0){
+                        result.error = new IllegalStateException("发送失败（" + ret.code + "）：" + ret.data.getString("msg"));
+                    } else {
+                        result.messageId = ret.data.getString("messageId");
+                    }
+                } catch (Exception e) {
+                    result.error = e;
+                }
+                return result;
+            }, executor));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((v, e) -> {
+            executor.shutdown();
+
+            Map<Long, BroadcastResult> results = new LinkedHashMap<>();
+            for (CompletableFuture<BroadcastResult> future : futures) {
+                BroadcastResult result = future.join();
+                results.put(result.group, result);
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Api 请求
+     *
+     * @param <E> 请求可能抛出的异常
+     */
+    interface Request<E extends Exception> {
+        /**
+         * 发出请求
+         *
+         * @return 返回数据
+         */
+        Network.NetworkReturn send() throws E;
+    }
+
+    /**
+     * 广播中单个群的发送结果
+     */
+    public static class BroadcastResult {
+        /**
+         * 群 ID
+         */
+        public Long group;
+
+        /**
+         * 信息 ID，发送失败时为 null
+         */
+        public String messageId;
+
+        /**
+         * 发送失败的原因，发送成功时为 null
+         */
+        public Throwable error;
+
+        /**
+         * 是否发送成功
+         *
+         * @return 是否成功
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
 }
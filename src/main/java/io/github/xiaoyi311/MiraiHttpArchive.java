@@ -0,0 +1,457 @@
+package io.github.xiaoyi311;
+
+import io.github.xiaoyi311.archive.*;
+import io.github.xiaoyi311.entity.message.MessageChain;
+import io.github.xiaoyi311.entity.message.Plain;
+import io.github.xiaoyi311.event.GroupMessageEvent;
+import io.github.xiaoyi311.event.MiraiEventListener;
+import io.github.xiaoyi311.util.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 群信息存档<br>
+ * 收到的群信息追加写入目录中的段文件，并为文本、群号与发送者建立倒排索引，可按关键词、群、发送者与时间范围查询。
+ * 正在写入的段索引在内存中，达到 {@link #SEGMENT_DOCS} 条后封存为内存映射的只读段；
+ * 后台线程把相邻的同级段合并为更大的段，查询需要打开的段数保持在对数级别。
+ * 堆内存只用于正在写入的段，与存档总量无关<br>
+ * 目录中的 segments 文件记录已封存的段，进程崩溃后重新打开同一目录即可恢复
+ */
+public class MiraiHttpArchive implements MiraiEventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.MiraiHttpArchive");
+
+    /**
+     * 每个段写入的信息数
+     */
+    public static final int SEGMENT_DOCS = 1 << 15;
+
+    /**
+     * 每次合并的段数
+     */
+    private static final int MERGE_FACTOR = 4;
+
+    /**
+     * 最多合并到的级别，第 n 级的段最多有 SEGMENT_DOCS × MERGE_FACTOR^n 条信息
+     */
+    private static final int MAX_LEVEL = 4;
+
+    /**
+     * 存档目录
+     */
+    private final Path dir;
+
+    /**
+     * 段记录文件
+     */
+    private final Path manifest;
+
+    /**
+     * 合并线程
+     */
+    private final ExecutorService merger;
+
+    /**
+     * 已封存的段，从旧到新，替换时整个列表替换
+     */
+    private volatile List<Segment> segments;
+
+    /**
+     * 正在写入的段
+     */
+    private ActiveSegment active;
+
+    /**
+     * 下一个段 ID
+     */
+    private long nextId;
+
+    /**
+     * 是否已关闭
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * 打开存档，目录不存在时创建
+     *
+     * @param dir 存档目录
+     * @throws IOException 读取已有的段失败
+     */
+    protected MiraiHttpArchive(Path dir) throws IOException {
+        this.dir = dir;
+        this.manifest = dir.resolve("segments");
+        Files.createDirectories(dir);
+
+        List<Long> ids = readManifest();
+        long maxId = 0;
+        Long activeId = null;
+        List<Path> garbage = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    garbage.add(file);
+                    continue;
+                }
+                int dot = name.indexOf('.');
+                long id;
+                try {
+                    id = Long.parseLong(name.substring(0, Math.max(dot, 0)));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                maxId = Math.max(maxId, id);
+                String ext = name.substring(dot + 1);
+                if (ids.contains(id)) {
+                    continue;
+                }
+                if (ext.equals("log")) {
+                    activeId = activeId == null ? id : Math.max(activeId, id);
+                } else {
+                    //合并或封存未完成留下的文件
+                    garbage.add(file);
+                }
+            }
+        }
+        for (Path file : garbage) {
+            Files.deleteIfExists(file);
+        }
+
+        List<Segment> loaded = new ArrayList<>();
+        for (long id : ids) {
+            //封存时记录段后、重命名数据文件前崩溃
+            Path log = dir.resolve(id + ".log");
+            Path data = dir.resolve(id + ".dat");
+            if (!Files.exists(data) && Files.exists(log)) {
+                Files.move(log, data, StandardCopyOption.ATOMIC_MOVE);
+            }
+            loaded.add(new Segment(id, data, dir.resolve(id + ".idx")));
+        }
+        this.segments = Collections.unmodifiableList(loaded);
+        this.nextId = maxId + 1;
+        if (activeId == null) {
+            activeId = nextId++;
+        }
+        this.active = new ActiveSegment(activeId, logFile(activeId), SEGMENT_DOCS);
+
+        this.merger = Threads.newExecutor("MiraiHttp-ArchiveMerge", 1);
+        if (active.isFull()) {
+            //写满后、封存完成前崩溃，先完成封存
+            seal();
+        } else {
+            merger.execute(this::mergeAll);
+        }
+    }
+
+    @Override
+    public void onGroupMessage(GroupMessageEvent event) {
+        StringBuilder text = new StringBuilder();
+        for (MessageChain message : event.messages) {
+            if (message instanceof Plain) {
+                text.append(((Plain) message).msg);
+            }
+        }
+        long time = event.time != null ? event.time : System.currentTimeMillis() / 1000;
+        try {
+            append(event.getGroupId(), event.getSenderId(), time, event.messageId, text.toString());
+        } catch (IOException e) {
+            logger.warn("寫入信息存檔失敗。", e);
+        }
+    }
+
+    /**
+     * 写入一条信息<br>
+     * 也可以用于导入历史信息；段写满时在调用线程中封存，上次封存失败时在写入前重新封存
+     *
+     * @param group     群号
+     * @param sender    发送者 QQ
+     * @param time      时间戳（秒）
+     * @param messageId 信息 ID，可为 null
+     * @param text      信息中的文本
+     * @throws IOException 写入失败
+     */
+    public synchronized void append(long group, long sender, long time, Integer messageId, String text) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("信息存檔已關閉");
+        }
+        if (active.isFull()) {
+            seal();
+        }
+        active.append(time, group, sender, messageId, text);
+        if (active.isFull()) {
+            seal();
+        }
+    }
+
+    /**
+     * 查询信息
+     *
+     * @param keyword 关键词，null 为不限
+     * @param group   群号，null 为不限
+     * @param sender  发送者 QQ，null 为不限
+     * @param from    最早时间戳（秒），null 为不限
+     * @param to      最晚时间戳（秒），null 为不限
+     * @param limit   最多返回的信息数
+     * @return        按写入顺序从新到旧排列，实时写入时即按时间
+     * @throws IOException 读取正在写入的段失败
+     */
+    public List<ArchivedMessage> search(String keyword, Long group, Long sender, Long from, Long to, int limit) throws IOException {
+        return search(new ArchiveQuery(keyword, group, sender, from, to, limit));
+    }
+
+    /**
+     * 查询信息
+     *
+     * @param query 查询
+     * @return      按写入顺序从新到旧排列，实时写入时即按时间
+     * @throws IOException 读取正在写入的段失败
+     */
+    public List<ArchivedMessage> search(ArchiveQuery query) throws IOException {
+        List<ArchivedMessage> out = new ArrayList<>();
+        List<Segment> sealed;
+        synchronized (this) {
+            active.search(query, out);
+            sealed = segments;
+        }
+        for (int i = sealed.size() - 1; i >= 0 && out.size() < query.limit; i--) {
+            sealed.get(i).search(query, out);
+        }
+        return out;
+    }
+
+    /**
+     * 获取存档的信息总数
+     *
+     * @return 信息数
+     */
+    public synchronized long getMessageCount() {
+        long count = active.getDocCount();
+        for (Segment segment : segments) {
+            count += segment.getDocCount();
+        }
+        return count;
+    }
+
+    /**
+     * 获取已封存的段数
+     *
+     * @return 段数
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * 关闭存档<br>
+     * 等待正在进行的合并结束，并把正在写入的段同步到磁盘
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        merger.shutdown();
+        try {
+            if (!merger.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("等待存檔段合併結束超時。");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                active.force();
+                active.close();
+            } catch (IOException e) {
+                logger.warn("關閉信息存檔時出錯。", e);
+            }
+        }
+    }
+
+    /**
+     * 封存正在写入的段<br>
+     * 先写入索引并记录到段记录文件，再把数据文件改名，任一步骤中崩溃都可以恢复
+     */
+    private void seal() throws IOException {
+        long id = active.id;
+        Path index = dir.resolve(id + ".idx");
+        Path temp = dir.resolve(id + ".idx.tmp");
+        active.seal(temp);
+        Files.move(temp, index, StandardCopyOption.ATOMIC_MOVE);
+
+        List<Segment> next = new ArrayList<>(segments);
+        List<Long> ids = idsOf(next);
+        ids.add(id);
+        writeManifest(ids);
+
+        active.close();
+        Path data = dir.resolve(id + ".dat");
+        Files.move(active.dataFile, data, StandardCopyOption.ATOMIC_MOVE);
+        next.add(new Segment(id, data, index));
+        segments = Collections.unmodifiableList(next);
+
+        long newId = nextId++;
+        active = new ActiveSegment(newId, logFile(newId), SEGMENT_DOCS);
+        if (!closed) {
+            merger.execute(this::mergeAll);
+        }
+    }
+
+    /**
+     * 合并所有可以合并的段
+     */
+    private void mergeAll() {
+        try {
+            while (!closed) {
+                List<Segment> current = segments;
+                int start = pickMerge(current);
+                if (start < 0) {
+                    break;
+                }
+                merge(new ArrayList<>(current.subList(start, start + MERGE_FACTOR)));
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("合併存檔段時出錯。", e);
+        }
+    }
+
+    /**
+     * 选择要合并的段<br>
+     * 第一组 MERGE_FACTOR 个相邻且同级的段，合并后不超过 2GB
+     *
+     * @param list 已封存的段
+     * @return     第一个段的位置，没有可合并的段时为 -1
+     */
+    private static int pickMerge(List<Segment> list) {
+        for (int i = 0; i + MERGE_FACTOR <= list.size(); i++) {
+            int level = levelOf(list.get(i));
+            if (level >= MAX_LEVEL) {
+                continue;
+            }
+            long size = 0;
+            boolean same = true;
+            for (int j = i; j < i + MERGE_FACTOR && same; j++) {
+                same = levelOf(list.get(j)) == level;
+                size += list.get(j).getSize();
+            }
+            if (same && size < Integer.MAX_VALUE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 计算段的级别
+     */
+    private static int levelOf(Segment segment) {
+        int level = 0;
+        long limit = SEGMENT_DOCS;
+        while (segment.getDocCount() > limit) {
+            limit *= MERGE_FACTOR;
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * 合并相邻的段<br>
+     * 合并结果写入临时文件后改名，记录到段记录文件后才替换原来的段
+     *
+     * @param parts 相邻的段，从旧到新
+     */
+    private void merge(List<Segment> parts) throws IOException {
+        long id;
+        synchronized (this) {
+            id = nextId++;
+        }
+        Path data = dir.resolve(id + ".dat");
+        Path index = dir.resolve(id + ".idx");
+        Path dataTemp = dir.resolve(id + ".dat.tmp");
+        Path indexTemp = dir.resolve(id + ".idx.tmp");
+
+        int docCount = Segment.merge(parts, dataTemp, indexTemp);
+        Files.move(dataTemp, data, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(indexTemp, index, StandardCopyOption.ATOMIC_MOVE);
+        Segment merged = new Segment(id, data, index);
+
+        synchronized (this) {
+            List<Segment> next = new ArrayList<>(segments);
+            int start = next.indexOf(parts.get(0));
+            for (int i = 0; i < parts.size(); i++) {
+                next.remove(start);
+            }
+            next.add(start, merged);
+            writeManifest(idsOf(next));
+            segments = Collections.unmodifiableList(next);
+        }
+
+        //正在进行的查询仍可使用已映射的内容；无法删除时（例如 Windows 上仍被映射）下次打开时清理
+        for (Segment part : parts) {
+            try {
+                Files.deleteIfExists(part.dataFile);
+                Files.deleteIfExists(part.indexFile);
+            } catch (IOException e) {
+                logger.debug("暫時無法刪除已合併的存檔段 {}。", part.id);
+            }
+        }
+        logger.debug("已合併 {} 個存檔段為 {}，共 {} 條信息。", parts.size(), id, docCount);
+    }
+
+    /**
+     * 读取段记录文件
+     */
+    private List<Long> readManifest() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    ids.add(Long.parseLong(line.trim()));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 写入段记录文件，先写入临时文件再替换
+     */
+    private void writeManifest(List<Long> ids) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (long id : ids) {
+            content.append(id).append('\n');
+        }
+        Path temp = dir.resolve("segments.tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static List<Long> idsOf(List<Segment> list) {
+        List<Long> ids = new ArrayList<>();
+        for (Segment segment : list) {
+            ids.add(segment.id);
+        }
+        return ids;
+    }
+
+    private Path logFile(long id) {
+        return dir.resolve(id + ".log");
+    }
+}
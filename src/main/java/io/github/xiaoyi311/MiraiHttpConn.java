@@ -3,12 +3,33 @@ package io.github.xiaoyi311;
 import com.alibaba.fastjson.JSONObject;
 import io.github.xiaoyi311.entity.Robot;
 import io.github.xiaoyi311.err.*;
+import io.github.xiaoyi311.event.EventFilter;
+import io.github.xiaoyi311.event.EventManager;
+import io.github.xiaoyi311.event.EventTrace;
+import io.github.xiaoyi311.event.GroupMessageEvent;
+import io.github.xiaoyi311.relay.EventRelayServer;
+import io.github.xiaoyi311.util.AdaptiveLimiter;
+import io.github.xiaoyi311.util.ConversationStore;
 import io.github.xiaoyi311.util.Network;
+import io.github.xiaoyi311.util.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * 一个到 Mirai 服务器的连接。
  */
 public class MiraiHttpConn {
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.MiraiHttpConn");
+
     /**
      * 连接地址
      */
@@ -25,15 +46,120 @@ public class MiraiHttpConn {
     protected Long boundRobotQq;
 
     /**
-     * 轮询
+     * 轮询任务
+     */
+    private MiraiHttpMsgFetchingThread msgFetcher;
+
+    /**
+     * 轮询线程
      */
-    private MiraiHttpMsgFetchingThread msgGettingThread;
+    private Thread msgGettingThread;
 
     /**
      * Session 信息
      */
     protected String session;
 
+    /**
+     * 绑定后是否轮询事件
+     */
+    private boolean fetchEvents = true;
+
+    /**
+     * 事件中继，设置后轮询到的事件会转发给中继的订阅进程
+     */
+    protected volatile EventRelayServer relay;
+
+    /**
+     * 群与群成员名单，首次使用时创建
+     */
+    private MiraiHttpRoster roster;
+
+    /**
+     * 最近群信息缓存，启用后才存在
+     */
+    private MiraiHttpMessageCache messageCache;
+
+    /**
+     * 群活跃度统计
+     */
+    private MiraiHttpAnalytics analytics;
+
+    /**
+     * 持久化发送队列
+     */
+    private MiraiHttpOutbox outbox;
+
+    /**
+     * 群信息存档
+     */
+    private MiraiHttpArchive archive;
+
+    /**
+     * 定时发送
+     */
+    private MiraiHttpScheduler scheduler;
+
+    /**
+     * 事件延迟追踪，启用后才存在
+     */
+    protected volatile MiraiHttpTracer tracer;
+
+    /**
+     * Api 请求的自适应并发限制，启用后才存在
+     */
+    protected volatile AdaptiveLimiter limiter;
+
+    /**
+     * 发送用 Session 池
+     */
+    private volatile MiraiHttpSessionPool sessionPool;
+
+    /**
+     * 绑定时是否预取名单
+     */
+    private volatile boolean rosterPrefetch = false;
+
+    /**
+     * 会话状态存储，首次使用时创建
+     */
+    private ConversationStore conversationStore;
+
+    /**
+     * 每次轮询获取的最大事件数
+     */
+    protected volatile int fetchCount = 5;
+
+    /**
+     * 已上传图片的内容哈希与图片 ID，最多保存 {@link #IMAGE_ID_CACHE_SIZE} 个
+     */
+    protected final Map<String, String> imageIds = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > IMAGE_ID_CACHE_SIZE;
+        }
+    });
+
+    /**
+     * 图片 ID 缓存大小
+     */
+    private static final int IMAGE_ID_CACHE_SIZE = 1024;
+
+    /**
+     * 并行解码阈值，一批事件数达到此值时并行解码，0 为不启用
+     */
+    protected volatile int parallelDecodeThreshold = 0;
+
+    /**
+     * 是否使用事件池
+     */
+    protected volatile boolean pooledEvents = false;
+
+    /**
+     * 启用虚拟线程时同时触发事件的最大虚拟线程数
+     */
+    protected volatile int dispatchConcurrency = 256;
+
 
     /**
      * 網絡錯誤處理策略
@@ -111,9 +237,11 @@ public class MiraiHttpConn {
         this.session = getSessionKey();
         try {
             if(this.isBound()) {
+                //只刷新轮询用的 Session，发送用 Session 池由健康检查自行替换
                 long qq = boundRobotQq;
-                unbind();
-                bindRobot(qq);
+                releaseSession();
+                boundRobotQq = null;
+                bindRobot(qq, fetchEvents);
             }
         } catch (SessionOutDate e) {
             //获取完直接绑定也能失效？这就离谱了，直接丢错吧，我不管了
@@ -146,11 +274,13 @@ public class MiraiHttpConn {
     }
 
     /**
-     * 启动 Http 轮询，获取事件信息
+     * 启动 Http 轮询，获取事件信息<br>
+     * 启用虚拟线程时轮询运行在虚拟线程上，事件按群并发分发，见 {@link #setDispatchConcurrency(int)}
      */
     private void launchMsgGettingThread() {
         if (msgGettingThread == null || !msgGettingThread.isAlive()) {
-            msgGettingThread = new MiraiHttpMsgFetchingThread(this, networkErrorStrategy, sessionOutDateErrorStrategy);
+            msgFetcher = new MiraiHttpMsgFetchingThread(this, networkErrorStrategy, sessionOutDateErrorStrategy);
+            msgGettingThread = Threads.newThread("MiraiHttp-Fetch-" + boundRobotQq, msgFetcher);
             msgGettingThread.start();
         }
     }
@@ -164,6 +294,39 @@ public class MiraiHttpConn {
         return host;
     }
 
+    /**
+     * 获取验证密钥
+     *
+     * @return 验证密钥
+     */
+    protected String getVerifyKey() {
+        return verifyKey;
+    }
+
+    /**
+     * 获取调用 Api 使用的 Session<br>
+     * 启用发送用 Session 池时轮流使用池中的 Session，否则使用此连接的 Session
+     *
+     * @return Session
+     */
+    protected String outboundSession() {
+        MiraiHttpSessionPool pool = sessionPool;
+        return pool != null ? pool.acquire() : session;
+    }
+
+    /**
+     * 报告调用 Api 时 Session 已失效<br>
+     * 属于发送用 Session 池时交由池替换，此连接自己的 Session 由轮询的过期策略处理
+     *
+     * @param session Session
+     */
+    protected void outboundSessionExpired(String session) {
+        MiraiHttpSessionPool pool = sessionPool;
+        if (pool != null){
+            pool.expired(session);
+        }
+    }
+
     /**
      * 是否绑定机器人完成
      *
@@ -177,6 +340,28 @@ public class MiraiHttpConn {
      * 解除 qq 號的綁定，並使 MiraiHttpConn 無效。一旦調用此函數，此类對象不应再使用，需重新新建<br>
      */
     public void unbind() throws NetworkIOError {
+        synchronized (this){
+            if (scheduler != null){
+                scheduler.close();
+                scheduler = null;
+            }
+            if (outbox != null){
+                outbox.close();
+                outbox = null;
+            }
+            if (archive != null){
+                EventManager.removeListener(this, archive);
+                archive.close();
+                archive = null;
+            }
+        }
+
+        MiraiHttpSessionPool pool = sessionPool;
+        if (pool != null){
+            sessionPool = null;
+            pool.close();
+        }
+
         releaseSession();
 
         //释放 Session
@@ -212,6 +397,21 @@ public class MiraiHttpConn {
      * @throws SessionNotBind  Session 已失效，需要重新新建
      */
     public Robot bindRobot(Long qq) throws RobotNotFound, SessionIsBind, SessionOutDate, NetworkIOError {
+        return bindRobot(qq, true);
+    }
+
+    /**
+     * 绑定到机器人<br>
+     * 不轮询事件时，此连接只用于调用 Api，例如从事件中继接收事件的工作进程。
+     * 同一机器人可以绑定多个 Session，但应只有一个 Session 轮询事件
+     *
+     * @param qq               指定机器人 QQ
+     * @param fetchEvents      是否启动轮询获取事件
+     * @throws RobotNotFound   指定机器人未找到
+     * @throws SessionIsBind   Session 已绑定到某个 QQ，不可重复绑定
+     * @throws SessionNotBind  Session 已失效，需要重新新建
+     */
+    public Robot bindRobot(Long qq, boolean fetchEvents) throws RobotNotFound, SessionIsBind, SessionOutDate, NetworkIOError {
         //Session 是否绑定机器人
         if (isBound()){
             throw new SessionIsBind();
@@ -239,7 +439,17 @@ public class MiraiHttpConn {
         }
 
         boundRobotQq = qq;
-        launchMsgGettingThread();
+        this.fetchEvents = fetchEvents;
+        if (rosterPrefetch){
+            try {
+                getRoster().prefetch();
+            } catch (NetworkIOError | RuntimeException e) {
+                logger.warn("預取群成員名單失敗。", e);
+            }
+        }
+        if (fetchEvents){
+            launchMsgGettingThread();
+        }
         return getRobot();
     }
 
@@ -284,5 +494,347 @@ public class MiraiHttpConn {
      * 设置新信息查询间隔时间
      * @param time 时间（毫秒）
      */
-    public void setCheckTime(Integer time){ msgGettingThread.setCheckTime(time); }
+    public void setCheckTime(Integer time){ msgFetcher.setCheckTime(time); }
+
+    /**
+     * 设置每次轮询获取的最大事件数
+     *
+     * @param count 事件数
+     */
+    public void setFetchCount(int count){
+        if (count < 1){
+            throw new IllegalArgumentException("count 必须大于 0");
+        }
+        fetchCount = count;
+    }
+
+    /**
+     * 设置并行解码阈值<br>
+     * 一次轮询获取的事件数达到阈值时，在 ForkJoin 公共池中并行解码，事件仍按原顺序触发。
+     * 适合启动或断线后积压大量事件的情况，需配合 {@link #setFetchCount(int)} 增大每批事件数
+     *
+     * @param threshold 阈值，0 为不启用
+     */
+    public void setParallelDecode(int threshold){
+        parallelDecodeThreshold = Math.max(threshold, 0);
+    }
+
+    /**
+     * 设置是否使用事件池<br>
+     * 启用后群信息事件及其群成员、群实体从解码线程的事件池复用，所有监听类返回后即被回收，
+     * 适合每秒数千条信息的连接，以减少垃圾回收。监听类需要保留事件时应先复制，
+     * 见 {@link io.github.xiaoyi311.event.MiraiEventBase#detach()}；
+     * 可用 {@link io.github.xiaoyi311.event.EventFactory#setPoolDebug(boolean)} 检查回收后的使用
+     *
+     * @param pooled 是否启用
+     */
+    public void setPooledEvents(boolean pooled){
+        pooledEvents = pooled;
+    }
+
+    /**
+     * 设置启用虚拟线程时的分发并发数<br>
+     * 启用虚拟线程时，每次轮询取得的事件按群分组，每个群的事件在一个虚拟线程中按顺序触发，
+     * 不同群的事件并发触发，监听类中阻塞的发送不会拖慢其他群。未启用虚拟线程时不生效
+     *
+     * @param concurrency 同时运行的最大虚拟线程数
+     */
+    public void setDispatchConcurrency(int concurrency){
+        if (concurrency < 1){
+            throw new IllegalArgumentException("concurrency 必须大于 0");
+        }
+        dispatchConcurrency = concurrency;
+    }
+
+    /**
+     * 设置事件中继<br>
+     * 设置后，此连接轮询到的所有事件都会转发给中继的订阅进程，本地监听器照常触发
+     *
+     * @param relay 事件中继，null 为取消
+     */
+    public void setEventRelay(EventRelayServer relay){
+        this.relay = relay;
+    }
+
+    /**
+     * 获取会话状态存储<br>
+     * 按 (群号, 成员 QQ) 保存多步指令的状态。未设置时创建默认存储：
+     * 创建后 30 分钟或 5 分钟未访问过期，最多 10000 条
+     *
+     * @return 会话状态存储
+     */
+    public synchronized ConversationStore getConversationStore(){
+        if (conversationStore == null){
+            conversationStore = new ConversationStore(30 * 60 * 1000, 5 * 60 * 1000, 10000);
+        }
+        return conversationStore;
+    }
+
+    /**
+     * 设置会话状态存储<br>
+     * 原有的存储会被关闭
+     *
+     * @param store 会话状态存储
+     */
+    public synchronized void setConversationStore(ConversationStore store){
+        if (conversationStore != null && conversationStore != store){
+            conversationStore.close();
+        }
+        conversationStore = store;
+    }
+
+    /**
+     * 等待指定群中指定成员的下一条信息<br>
+     * 无需注册临时监听器；等待的请求按 (群号, 发送者) 存放，每条信息只需一次查找。
+     * 收到的信息仍会照常通知所有监听器
+     *
+     * @param group   群号
+     * @param sender  发送者 QQ
+     * @param timeout 超时时间
+     * @param unit    时间单位
+     * @return        收到信息时完成，超时时以 TimeoutException 失败，取消即停止等待
+     */
+    public CompletableFuture<GroupMessageEvent> nextGroupMessage(long group, long sender, long timeout, TimeUnit unit){
+        return EventManager.awaitGroupMessage(this, group, sender, timeout, unit);
+    }
+
+    /**
+     * 获取群与群成员名单<br>
+     * 首次获取时创建并注册为监听器，之后根据收到的事件增量更新；
+     * 注意名单会接收所有群的群信息，连接上监听器的群过滤条件将不再能在解码前丢弃群信息
+     *
+     * @return 名单
+     */
+    public synchronized MiraiHttpRoster getRoster(){
+        if (roster == null){
+            roster = new MiraiHttpRoster(this);
+            EventManager.addListener(this, roster, MiraiHttpRoster.FILTER);
+        }
+        return roster;
+    }
+
+    /**
+     * 设置绑定时是否预取名单<br>
+     * 启用后，绑定机器人时会在开始轮询前获取所有群与群成员
+     *
+     * @param prefetch 是否预取
+     */
+    public void setRosterPrefetch(boolean prefetch){
+        rosterPrefetch = prefetch;
+    }
+
+    /**
+     * 启用最近群信息缓存<br>
+     * 缓存注册为监听器，保存之后收到的群信息；已启用时返回已有的缓存
+     *
+     * @param perGroup 每个群最多保存的条数
+     * @param maxBytes 所有群最多占用的估算字节数
+     * @return         缓存
+     */
+    public synchronized MiraiHttpMessageCache enableMessageCache(int perGroup, long maxBytes){
+        if (messageCache == null){
+            messageCache = new MiraiHttpMessageCache(perGroup, maxBytes);
+            EventManager.addListener(this, messageCache, EventFilter.ANY.types("GroupMessage"));
+        }
+        return messageCache;
+    }
+
+    /**
+     * 获取最近群信息缓存
+     *
+     * @return 缓存，未启用时为 null
+     */
+    public synchronized MiraiHttpMessageCache getMessageCache(){
+        return messageCache;
+    }
+
+    /**
+     * 启用群活跃度统计<br>
+     * 统计注册为监听器，记录之后收到的群信息；已启用时返回已有的统计
+     *
+     * @param topK   记录的发言最多成员数
+     * @param window 速率窗口长度
+     * @param unit   时间单位
+     * @return       统计
+     */
+    public synchronized MiraiHttpAnalytics enableAnalytics(int topK, long window, TimeUnit unit){
+        if (analytics == null){
+            analytics = new MiraiHttpAnalytics(topK, window, unit);
+            EventManager.addListener(this, analytics, EventFilter.ANY.types("GroupMessage"));
+        }
+        return analytics;
+    }
+
+    /**
+     * 获取群活跃度统计
+     *
+     * @return 统计，未启用时为 null
+     */
+    public synchronized MiraiHttpAnalytics getAnalytics(){
+        return analytics;
+    }
+
+    /**
+     * 启用事件延迟追踪<br>
+     * 之后轮询到的事件都会记录各阶段耗时；总耗时达到 slow 的追踪按 sampleRate 采样交给 exporter。
+     * 已启用时返回已有的追踪
+     *
+     * @param slow       慢追踪阈值
+     * @param unit       时间单位
+     * @param sampleRate 慢追踪的采样率，0 ~ 1
+     * @param exporter   慢追踪导出函数，在分发事件的线程中调用，可为 null
+     * @return           追踪
+     */
+    public synchronized MiraiHttpTracer enableTracing(long slow, TimeUnit unit, double sampleRate, Consumer<EventTrace> exporter){
+        if (tracer == null){
+            tracer = new MiraiHttpTracer(slow, unit, sampleRate, exporter);
+        }
+        return tracer;
+    }
+
+    /**
+     * 获取事件延迟追踪
+     *
+     * @return 追踪，未启用时为 null
+     */
+    public MiraiHttpTracer getTracer(){
+        return tracer;
+    }
+
+    /**
+     * 启用 Api 请求的自适应并发限制<br>
+     * 之后的 Api 请求按往返耗时自动调整并发上限：Mirai 响应变慢时减少并发，恢复后逐渐增加。
+     * 超过上限的请求最多排队 maxWait，仍没有空位时抛出 {@link LimitExceeded}。已启用时返回已有的限制
+     *
+     * @param initial 初始上限
+     * @param min     最小上限
+     * @param max     最大上限
+     * @param maxWait 最长排队时间，0 为没有空位时立即拒绝
+     * @param unit    时间单位
+     * @return        并发限制
+     */
+    public synchronized AdaptiveLimiter enableConcurrencyLimit(int initial, int min, int max, long maxWait, TimeUnit unit){
+        if (limiter == null){
+            limiter = new AdaptiveLimiter(initial, min, max, maxWait, unit);
+        }
+        return limiter;
+    }
+
+    /**
+     * 获取 Api 请求的自适应并发限制
+     *
+     * @return 并发限制，未启用时为 null
+     */
+    public AdaptiveLimiter getConcurrencyLimit(){
+        return limiter;
+    }
+
+    /**
+     * 打开持久化发送队列<br>
+     * 通过发送队列发送的群信息会先写入日志文件，失败时自动重试，进程重启后重新打开同一文件即可继续发送。
+     * 已打开时返回已有的队列
+     *
+     * @param file 日志文件
+     * @return     发送队列
+     * @throws IOException 读取或压缩日志失败
+     */
+    public synchronized MiraiHttpOutbox openOutbox(Path file) throws IOException {
+        if (outbox == null){
+            outbox = new MiraiHttpOutbox(this, file);
+        }
+        return outbox;
+    }
+
+    /**
+     * 获取持久化发送队列
+     *
+     * @return 发送队列，未打开时为 null
+     */
+    public synchronized MiraiHttpOutbox getOutbox(){
+        return outbox;
+    }
+
+    /**
+     * 打开群信息存档<br>
+     * 存档注册为监听器，之后收到的群信息写入目录中的段文件并建立索引，可按关键词、群、发送者与时间查询。
+     * 进程重启后重新打开同一目录即可继续写入，已打开时返回已有的存档
+     *
+     * @param dir 存档目录
+     * @return    存档
+     * @throws IOException 读取已有的段失败
+     */
+    public synchronized MiraiHttpArchive openArchive(Path dir) throws IOException {
+        if (archive == null){
+            archive = new MiraiHttpArchive(dir);
+            EventManager.addListener(this, archive, EventFilter.ANY.types("GroupMessage"));
+        }
+        return archive;
+    }
+
+    /**
+     * 获取群信息存档
+     *
+     * @return 存档，未打开时为 null
+     */
+    public synchronized MiraiHttpArchive getArchive(){
+        return archive;
+    }
+
+    /**
+     * 打开定时发送<br>
+     * 大量延迟或按 cron 重复的群信息由时间轮统一计时，到期后按批发送；打开了持久化发送队列时交由队列发送。
+     * 指定文件时安排会写入日志，进程重启后重新打开同一文件即可恢复，已打开时返回已有的定时发送
+     *
+     * @param file        日志文件，null 为不持久化
+     * @param batchSize   同时发送的最大信息数
+     * @param concurrency 发送线程数
+     * @return            定时发送
+     * @throws IOException 读取或压缩日志失败
+     */
+    public synchronized MiraiHttpScheduler openScheduler(Path file, int batchSize, int concurrency) throws IOException {
+        if (scheduler == null){
+            scheduler = new MiraiHttpScheduler(this, file, batchSize, concurrency);
+        }
+        return scheduler;
+    }
+
+    /**
+     * 获取定时发送
+     *
+     * @return 定时发送，未打开时为 null
+     */
+    public synchronized MiraiHttpScheduler getScheduler(){
+        return scheduler;
+    }
+
+    /**
+     * 启用发送用 Session 池<br>
+     * 为同一机器人额外绑定 size 个不轮询事件的 Session，之后的 Api 调用轮流使用，
+     * 大量发送不再与事件轮询争用同一个 Session。已启用时返回已有的池
+     *
+     * @param size     Session 数量
+     * @param interval 健康检查间隔，0 为不检查
+     * @param unit     时间单位
+     * @return         Session 池
+     */
+    public synchronized MiraiHttpSessionPool enableSessionPool(int size, long interval, TimeUnit unit){
+        //Mirai 连接是否绑定机器人
+        if (!isBound()){
+            throw new SessionNotBind();
+        }
+
+        if (sessionPool == null){
+            sessionPool = new MiraiHttpSessionPool(this, size, interval, unit);
+        }
+        return sessionPool;
+    }
+
+    /**
+     * 获取发送用 Session 池
+     *
+     * @return Session 池，未启用时为 null
+     */
+    public MiraiHttpSessionPool getSessionPool(){
+        return sessionPool;
+    }
 }
@@ -0,0 +1,248 @@
+package io.github.xiaoyi311;
+
+import io.github.xiaoyi311.entity.message.MessageChain;
+import io.github.xiaoyi311.err.NetworkIOError;
+import io.github.xiaoyi311.err.SessionNotBind;
+import io.github.xiaoyi311.event.EventFactory;
+import io.github.xiaoyi311.event.EventFilter;
+import io.github.xiaoyi311.event.EventManager;
+import io.github.xiaoyi311.event.MiraiEventListener;
+import io.github.xiaoyi311.util.Network;
+import io.github.xiaoyi311.util.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 多机器人批量启动<br>
+ * 并行创建并绑定多个 Mirai 连接。每个连接在绑定（即开始轮询）前注册好监听器，不会漏掉绑定后立刻到达的事件
+ */
+public class MiraiHttpFleet {
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.MiraiHttpFleet");
+
+    /**
+     * 并行创建并绑定所有机器人<br>
+     * 开始前预热事件与信息解码，并对每个 Mirai 服务器发出一次请求以建立连接。
+     * 所有机器人都已就绪或失败后返回
+     *
+     * @param bots        机器人配置
+     * @param parallelism 最大并行数
+     * @return            与配置顺序一致的启动结果
+     */
+    public static List<Result> bootstrap(Collection<Bot> bots, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism 必须大于 0");
+        }
+        List<Bot> temp = new ArrayList<>(bots);
+        if (temp.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        EventFactory.warmUp();
+        MessageChain.warmUp();
+
+        ExecutorService executor = Threads.newExecutor("MiraiHttp-Bootstrap", Math.min(parallelism, temp.size()));
+        try {
+            //预热到每个 Mirai 服务器的连接
+            Set<String> hosts = new LinkedHashSet<>();
+            for (Bot bot : temp) {
+                hosts.add(bot.host);
+            }
+            List<CompletableFuture<Void>> warmUps = new ArrayList<>();
+            for (String host : hosts) {
+                warmUps.add(CompletableFuture.runAsync(() -> warmUp(host), executor));
+            }
+            CompletableFuture.allOf(warmUps.toArray(new CompletableFuture<?>[0])).join();
+
+            //并行创建并绑定
+            List<CompletableFuture<Result>> futures = new ArrayList<>();
+            for (Bot bot : temp) {
+                futures.add(CompletableFuture.supplyAsync(() -> start(bot), executor));
+            }
+
+            List<Result> results = new ArrayList<>();
+            for (CompletableFuture<Result> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 创建连接，注册监听器后绑定机器人
+     *
+     * @param bot 机器人配置
+     * @return    启动结果
+     */
+    private static Result start(Bot bot) {
+        Result result = new Result();
+        result.bot = bot;
+        MiraiHttpConn conn = null;
+        try {
+            conn = new MiraiHttpConn(
+                    bot.verifyKey,
+                    bot.host,
+                    bot.networkErrorStrategy,
+                    bot.sessionOutDateErrorStrategy
+            );
+            conn.setRosterPrefetch(bot.prefetchRoster);
+            for (Map.Entry<MiraiEventListener, EventFilter> entry : bot.listeners.entrySet()) {
+                EventManager.addListener(conn, entry.getKey(), entry.getValue());
+            }
+            conn.bindRobot(bot.qq);
+            result.conn = conn;
+        } catch (Exception | SessionNotBind e) {
+            logger.warn("機器人 {} 啟動失敗。", bot.qq, e);
+            result.error = e;
+            if (conn != null) {
+                //卸载已注册的监听器，避免失败的连接留在事件管理器中
+                for (MiraiEventListener listener : bot.listeners.keySet()) {
+                    EventManager.removeListener(conn, listener);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 对 Mirai 服务器发出一次请求，提前建立连接
+     *
+     * @param host 连接地址
+     */
+    private static void warmUp(String host) {
+        try {
+            Network.sendGet(host + "/about", "");
+        } catch (NetworkIOError | RuntimeException e) {
+            logger.debug("預熱 {} 失敗。", host, e);
+        }
+    }
+
+    /**
+     * 机器人配置
+     */
+    public static class Bot {
+        /**
+         * 验证密钥
+         */
+        public final String verifyKey;
+
+        /**
+         * 连接地址
+         */
+        public final String host;
+
+        /**
+         * 机器人 QQ
+         */
+        public final Long qq;
+
+        /**
+         * 網絡錯誤處理策略
+         */
+        public final MiraiHttpMsgFetchingThread.NetworkErrorStrategy networkErrorStrategy;
+
+        /**
+         * Session 過期錯誤處理策略
+         */
+        public final MiraiHttpMsgFetchingThread.SessionOutDateErrorStrategy sessionOutDateErrorStrategy;
+
+        /**
+         * 绑定前注册的监听器与过滤器
+         */
+        private final Map<MiraiEventListener, EventFilter> listeners = new LinkedHashMap<>();
+
+        /**
+         * 绑定时是否预取群与群成员名单
+         */
+        private boolean prefetchRoster = false;
+
+        /**
+         * 创建机器人配置
+         *
+         * @param verifyKey                     验证密钥
+         * @param host                          连接地址，类似于：127.0.0.1:8080
+         * @param qq                            机器人 QQ
+         * @param networkErrorStrategy          網絡錯誤處理策略
+         * @param sessionOutDateErrorStrategy   Session 過期錯誤處理策略
+         */
+        public Bot(
+                String verifyKey,
+                String host,
+                Long qq,
+                MiraiHttpMsgFetchingThread.NetworkErrorStrategy networkErrorStrategy,
+                MiraiHttpMsgFetchingThread.SessionOutDateErrorStrategy sessionOutDateErrorStrategy
+        ) {
+            this.verifyKey = verifyKey;
+            this.host = host;
+            this.qq = qq;
+            this.networkErrorStrategy = networkErrorStrategy;
+            this.sessionOutDateErrorStrategy = sessionOutDateErrorStrategy;
+        }
+
+        /**
+         * 添加绑定前注册的监听器
+         *
+         * @param listener 监听器
+         * @return         此配置
+         */
+        public Bot listen(MiraiEventListener listener) {
+            return listen(listener, null);
+        }
+
+        /**
+         * 添加绑定前注册的带过滤器的监听器
+         *
+         * @param listener 监听器
+         * @param filter   事件过滤器，null 为不过滤
+         * @return         此配置
+         */
+        public Bot listen(MiraiEventListener listener, EventFilter filter) {
+            listeners.put(listener, filter);
+            return this;
+        }
+
+        /**
+         * 绑定时预取群与群成员名单
+         *
+         * @return 此配置
+         */
+        public Bot prefetchRoster() {
+            prefetchRoster = true;
+            return this;
+        }
+    }
+
+    /**
+     * 单个机器人的启动结果
+     */
+    public static class Result {
+        /**
+         * 机器人配置
+         */
+        public Bot bot;
+
+        /**
+         * 已绑定的 Mirai 连接，启动失败时为 null
+         */
+        public MiraiHttpConn conn;
+
+        /**
+         * 启动失败的原因，启动成功时为 null
+         */
+        public Throwable error;
+
+        /**
+         * 是否启动成功
+         *
+         * @return 是否成功
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+}
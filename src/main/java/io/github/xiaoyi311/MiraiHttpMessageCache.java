@@ -0,0 +1,292 @@
+package io.github.xiaoyi311;
+
+import io.github.xiaoyi311.entity.message.MessageChain;
+import io.github.xiaoyi311.entity.message.Plain;
+import io.github.xiaoyi311.event.GroupMessageEvent;
+import io.github.xiaoyi311.event.MiraiEventListener;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 最近群信息缓存<br>
+ * 每个群保存最近若干条信息，可按信息 ID 以 O(1) 查找，引用或回复时无需再向 Mirai 获取原信息。
+ * 每个群的条数与所有群的估算总字节数都有上限，超出时移除最早的信息<br>
+ * 缓存作为监听器注册在 Mirai 连接上，由事件分发填充
+ */
+public class MiraiHttpMessageCache implements MiraiEventListener {
+    /**
+     * 每个群最多保存的条数
+     */
+    private final int perGroup;
+
+    /**
+     * 所有群最多占用的估算字节数
+     */
+    private final long maxBytes;
+
+    /**
+     * 群号与其环形缓冲对应表
+     */
+    private final Map<Long, Ring> rings = new ConcurrentHashMap<>();
+
+    /**
+     * 所有信息按加入顺序排列，用于按字节数移除最早的信息
+     */
+    private final Queue<CachedMessage> order = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 当前估算字节数
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * 当前缓存的条数
+     */
+    private final AtomicInteger live = new AtomicInteger();
+
+    /**
+     * 顺序队列中的条数，包含已按条数移出的信息
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * 创建缓存
+     *
+     * @param perGroup 每个群最多保存的条数
+     * @param maxBytes 所有群最多占用的估算字节数
+     */
+    protected MiraiHttpMessageCache(int perGroup, long maxBytes) {
+        if (perGroup < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("perGroup 与 maxBytes 必须大于 0");
+        }
+        this.perGroup = perGroup;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 按信息 ID 获取信息
+     *
+     * @param group     群号
+     * @param messageId 信息 ID
+     * @return          信息，不在缓存中时为 null
+     */
+    public CachedMessage get(long group, int messageId) {
+        Ring ring = rings.get(group);
+        return ring != null ? ring.get(messageId) : null;
+    }
+
+    /**
+     * 获取群最近的信息
+     *
+     * @param group 群号
+     * @param count 最多条数
+     * @return      信息，从新到旧
+     */
+    public List<CachedMessage> getRecent(long group, int count) {
+        Ring ring = rings.get(group);
+        return ring != null ? ring.recent(count) : Collections.emptyList();
+    }
+
+    /**
+     * 获取当前估算字节数
+     *
+     * @return 字节数
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * 加入一条信息
+     *
+     * @param message 信息
+     */
+    public void add(CachedMessage message) {
+        bytes.addAndGet(message.bytes);
+        live.incrementAndGet();
+        rings.computeIfAbsent(message.group, (k) -> new Ring()).add(message);
+        order.add(message);
+        queued.incrementAndGet();
+
+        //超出总字节数时从最早的信息开始移除
+        while (bytes.get() > maxBytes) {
+            CachedMessage eldest = order.poll();
+            if (eldest == null) {
+                break;
+            }
+            queued.decrementAndGet();
+            Ring ring = rings.get(eldest.group);
+            if (ring != null) {
+                ring.remove(eldest);
+            }
+        }
+
+        //按条数移出的信息仍在顺序队列中，积累过多时清理
+        if (queued.get() > 2 * live.get() + perGroup) {
+            synchronized (order) {
+                if (queued.get() > 2 * live.get() + perGroup) {
+                    int before = queued.get();
+                    int removed = 0;
+                    Iterator<CachedMessage> iter = order.iterator();
+                    while (iter.hasNext()) {
+                        if (iter.next().evicted) {
+                            iter.remove();
+                            removed++;
+                        }
+                    }
+                    queued.addAndGet(-Math.min(removed, before));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onGroupMessage(GroupMessageEvent event) {
+        add(new CachedMessage(
+                event.messageId,
+                event.getGroupId(),
+                event.getSenderId(),
+                event.time,
+                event.messages
+        ));
+    }
+
+    /**
+     * 估算信息占用的字节数
+     *
+     * @param chains 信息链
+     * @return       字节数
+     */
+    private static long estimate(MessageChain[] chains) {
+        long size = 96 + 16L * chains.length;
+        for (MessageChain chain : chains) {
+            size += chain instanceof Plain && ((Plain) chain).msg != null
+                    ? 56 + 2L * ((Plain) chain).msg.length()
+                    : 32;
+        }
+        return size;
+    }
+
+    /**
+     * 单个群的环形缓冲
+     */
+    private class Ring {
+        private final CachedMessage[] slots = new CachedMessage[perGroup];
+        private final Map<Integer, CachedMessage> byId = new HashMap<>();
+        private int head = 0;
+
+        private synchronized CachedMessage get(int messageId) {
+            return byId.get(messageId);
+        }
+
+        private synchronized void add(CachedMessage message) {
+            CachedMessage old = slots[head];
+            if (old != null) {
+                evict(old);
+            }
+            slots[head] = message;
+            message.slot = head;
+            head = (head + 1) % slots.length;
+            byId.put(message.messageId, message);
+        }
+
+        private synchronized void remove(CachedMessage message) {
+            if (slots[message.slot] == message) {
+                slots[message.slot] = null;
+                evict(message);
+            }
+        }
+
+        private synchronized List<CachedMessage> recent(int count) {
+            List<CachedMessage> ret = new ArrayList<>();
+            for (int i = 1; i <= slots.length && ret.size() < count; i++) {
+                CachedMessage message = slots[Math.floorMod(head - i, slots.length)];
+                if (message != null) {
+                    ret.add(message);
+                }
+            }
+            return ret;
+        }
+
+        /**
+         * 从索引中移除并扣除字节数，每条信息只扣除一次
+         */
+        private void evict(CachedMessage message) {
+            if (byId.get(message.messageId) == message) {
+                byId.remove(message.messageId);
+            }
+            if (!message.evicted) {
+                message.evicted = true;
+                bytes.addAndGet(-message.bytes);
+                live.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 缓存的信息
+     */
+    public static class CachedMessage {
+        /**
+         * 信息 ID
+         */
+        public final Integer messageId;
+
+        /**
+         * 群号
+         */
+        public final Long group;
+
+        /**
+         * 发送者 QQ
+         */
+        public final Long sender;
+
+        /**
+         * 发送时间戳
+         */
+        public final Integer time;
+
+        /**
+         * 信息链
+         */
+        public final MessageChain[] messages;
+
+        /**
+         * 估算字节数
+         */
+        private final long bytes;
+
+        /**
+         * 是否已移出缓存
+         */
+        private volatile boolean evicted = false;
+
+        /**
+         * 在环形缓冲中的位置
+         */
+        private int slot;
+
+        /**
+         * 创建缓存的信息
+         *
+         * @param messageId 信息 ID
+         * @param group     群号
+         * @param sender    发送者 QQ
+         * @param time      发送时间戳
+         * @param messages  信息链
+         */
+        public CachedMessage(Integer messageId, Long group, Long sender, Integer time, MessageChain[] messages) {
+            this.messageId = messageId;
+            this.group = group;
+            this.sender = sender;
+            this.time = time;
+            this.messages = messages;
+            this.bytes = estimate(messages);
+        }
+    }
+}
@@ -4,19 +4,28 @@ import com.alibaba.fastjson.JSONObject;
 import io.github.xiaoyi311.err.NetworkIOError;
 import io.github.xiaoyi311.err.RobotNotFound;
 import io.github.xiaoyi311.err.VerifyKeyError;
-import io.github.xiaoyi311.event.MessageEventBase;
+import io.github.xiaoyi311.event.EventFactory;
+import io.github.xiaoyi311.event.EventManager;
 import io.github.xiaoyi311.event.MiraiEventBase;
+import io.github.xiaoyi311.relay.EventRelayServer;
 import io.github.xiaoyi311.util.Network;
+import io.github.xiaoyi311.util.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 /**
- * Http 轮询多线程<br>
- * 使用多线程获取事件与信息
+ * Http 轮询任务<br>
+ * 在独立线程中获取事件与信息，线程由 {@link io.github.xiaoyi311.util.Threads} 创建
  */
-public class MiraiHttpMsgFetchingThread extends Thread{
+public class MiraiHttpMsgFetchingThread implements Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.MiraiHttpMsgFetchingThread");
 
@@ -105,7 +114,102 @@ public class MiraiHttpMsgFetchingThread extends Thread{
         return null;
     }
 
+    /**
+     * 解码一批事件<br>
+     * 批量大小达到 Mirai 连接设置的并行解码阈值时，在 ForkJoin 公共池中并行解码，结果仍保持原顺序
+     *
+     * @param array 事件数据
+     * @return      事件，与数据一一对应，不支持的事件为 null
+     */
+    private MiraiEventBase[] decodeEvents(List<JSONObject> array) {
+        int threshold = miraiConn.parallelDecodeThreshold;
+        boolean pooled = miraiConn.pooledEvents;
+        if (threshold > 0 && array.size() >= threshold) {
+            return IntStream.range(0, array.size())
+                    .parallel()
+                    .mapToObj((i) -> EventFactory.create(miraiConn, array.get(i), pooled))
+                    .toArray(MiraiEventBase[]::new);
+        }
+
+        MiraiEventBase[] events = new MiraiEventBase[array.size()];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = EventFactory.create(miraiConn, array.get(i), pooled);
+        }
+        return events;
+    }
+
+    /**
+     * 触发单个事件并在结束后回收
+     *
+     * @param event      事件
+     * @param fetchedAt  取得事件的时间（毫秒）
+     * @param fetchStart 开始轮询的时间（纳秒）
+     * @param fetchEnd   轮询结束的时间（纳秒）
+     * @param decodeEnd  解码结束的时间（纳秒）
+     */
+    private void dispatch(MiraiEventBase event, long fetchedAt, long fetchStart, long fetchEnd, long decodeEnd) {
+        MiraiHttpTracer tracer = miraiConn.tracer;
+        try {
+            if (tracer != null) {
+                tracer.begin(event, fetchedAt, fetchStart, fetchEnd, decodeEnd);
+            }
+            event.doEvent(miraiConn);
+        } catch (Exception e) {
+            logger.warn("處理事件 {} 時出錯。", event.getClass().getSimpleName(), e);
+        } finally {
+            if (tracer != null) {
+                tracer.end(event);
+            }
+            event.release();
+        }
+    }
+
+    /**
+     * 在虚拟线程中并发触发一批事件<br>
+     * 同一个群的事件在同一个虚拟线程中按原顺序触发，不同群的事件并发触发，同时运行的虚拟线程数不超过
+     * Mirai 连接设置的分发并发数。等待这批事件全部触发完成后返回
+     *
+     * @param events     事件，不支持的事件为 null
+     * @param fetchedAt  取得事件的时间（毫秒）
+     * @param fetchStart 开始轮询的时间（纳秒）
+     * @param fetchEnd   轮询结束的时间（纳秒）
+     * @param decodeEnd  解码结束的时间（纳秒）
+     */
+    private void dispatchConcurrently(MiraiEventBase[] events, long fetchedAt, long fetchStart, long fetchEnd, long decodeEnd) {
+        Map<Long, List<MiraiEventBase>> chains = new LinkedHashMap<>();
+        for (MiraiEventBase event : events) {
+            if (event != null) {
+                chains.computeIfAbsent(event.getGroupId(), (k) -> new ArrayList<>()).add(event);
+            }
+        }
+        if (chains.size() <= 1) {
+            for (List<MiraiEventBase> chain : chains.values()) {
+                for (MiraiEventBase event : chain) {
+                    dispatch(event, fetchedAt, fetchStart, fetchEnd, decodeEnd);
+                }
+            }
+            return;
+        }
+
+        ExecutorService dispatcher = Threads.newExecutor("MiraiHttp-Dispatch-" + miraiConn.boundRobotQq, miraiConn.dispatchConcurrency);
+        for (List<MiraiEventBase> chain : chains.values()) {
+            dispatcher.execute(() -> {
+                for (MiraiEventBase event : chain) {
+                    dispatch(event, fetchedAt, fetchStart, fetchEnd, decodeEnd);
+                }
+            });
+        }
+        dispatcher.shutdown();
+        try {
+            dispatcher.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void fetchMsgsAndRaiseEventOnce() {
+        long fetchStart = System.nanoTime();
+
         //获取信息队列大小
         Network.NetworkReturn ret = sendGetWithHandlingError(
                 miraiConn.getHost() + "/countMessage",
@@ -125,7 +229,7 @@ public class MiraiHttpMsgFetchingThread extends Thread{
                 //获取头部信息
                 ret = sendGetWithHandlingError(
                         miraiConn.getHost() + "/fetchMessage",
-                        "sessionKey=" + miraiConn.session + "&count=5"
+                        "sessionKey=" + miraiConn.session + "&count=" + miraiConn.fetchCount
                 );
 
                 // 請求出錯，跳過本回輪詢。
@@ -136,21 +240,36 @@ public class MiraiHttpMsgFetchingThread extends Thread{
 
                 //Session 是否过期，过期则啥都不幹
                 if (ret.code != 3){
-                    //遍历所有信息
-                    ret.data.getJSONArray("data").forEach((data) -> {
-                        JSONObject relData = (JSONObject) data;
-
-                        //尝试获取对应事件或信息
-                        //如果获取不到，便为暂不支持，不处理此事件
-                        try {
-                            String eventPack = "io.github.xiaoyi311.event."
-                                    + relData.getString("type")
-                                    + (relData.containsKey("messageChain") ? "Event" : "");
-                            Constructor<?> eventConst = Class.forName(eventPack).getConstructor(MiraiHttpConn.class, JSONObject.class);
-                            MiraiEventBase event = (MessageEventBase) eventConst.newInstance(miraiConn, relData);
-                            event.doEvent(miraiConn);
-                        } catch (Exception e) { System.out.print(e); }
-                    });
+                    long fetchEnd = System.nanoTime();
+                    long fetchedAt = System.currentTimeMillis();
+
+                    //转发给事件中继的订阅进程
+                    EventRelayServer relay = miraiConn.relay;
+                    if (relay != null) {
+                        for (Object data : ret.data.getJSONArray("data")) {
+                            relay.publish((JSONObject) data);
+                        }
+                    }
+
+                    //丢弃没有监听器需要的事件，解码剩余事件，再按原顺序逐个触发
+                    List<JSONObject> accepted = new ArrayList<>();
+                    for (Object data : ret.data.getJSONArray("data")) {
+                        if (EventManager.acceptRaw(miraiConn, (JSONObject) data)) {
+                            accepted.add((JSONObject) data);
+                        }
+                    }
+                    MiraiEventBase[] events = decodeEvents(accepted);
+                    long decodeEnd = System.nanoTime();
+                    if (Threads.isVirtualThreads()) {
+                        dispatchConcurrently(events, fetchedAt, fetchStart, fetchEnd, decodeEnd);
+                    } else {
+                        for (MiraiEventBase event : events) {
+                            if (event != null) {
+                                dispatch(event, fetchedAt, fetchStart, fetchEnd, decodeEnd);
+                            }
+                        }
+                    }
+                    EventManager.endCycle(miraiConn);
                 }
             }
         } else {
@@ -184,7 +303,7 @@ public class MiraiHttpMsgFetchingThread extends Thread{
             //等待
             try {
                 //noinspection BusyWait
-                sleep(checkTime);
+                Thread.sleep(checkTime);
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
             }
@@ -0,0 +1,508 @@
+package io.github.xiaoyi311;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import io.github.xiaoyi311.entity.message.MessageChain;
+import io.github.xiaoyi311.err.LimitExceeded;
+import io.github.xiaoyi311.err.NetworkIOError;
+import io.github.xiaoyi311.util.Network;
+import io.github.xiaoyi311.util.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 持久化发送队列<br>
+ * 发送前先把信息追加写入本地日志，再发送并重试直到 Mirai 返回信息 ID，进程重启后继续发送未完成的信息。
+ * 每条信息带有幂等键，同一个键只会发送一次，重复提交返回同一结果；
+ * 多条写入合并为一次 fsync，持久化不会成为每条信息一次 fsync 的瓶颈<br>
+ * 发送成功但确认尚未写入日志时进程崩溃，重启后该信息会再发送一次
+ */
+public class MiraiHttpOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.MiraiHttpOutbox");
+
+    /**
+     * 重启后最多记住的已完成幂等键数
+     */
+    private static final int MAX_DONE_KEYS = 10000;
+
+    /**
+     * 每次合并写入的最大条数
+     */
+    private static final int MAX_BATCH = 512;
+
+    /**
+     * 首次重试间隔（毫秒）
+     */
+    private static final long BASE_BACKOFF = 1000;
+
+    /**
+     * 最大重试间隔（毫秒）
+     */
+    private static final long MAX_BACKOFF = 60000;
+
+    /**
+     * 不会因重试而成功的状态码：指定对象不存在、无权限、机器人被禁言、信息过长
+     */
+    static final Set<Integer> PERMANENT_CODES = new HashSet<>(Arrays.asList(5, 10, 20, 30));
+
+    /**
+     * Mirai 连接
+     */
+    private final MiraiHttpConn miraiConn;
+
+    /**
+     * 发送使用的 Api，与其他请求共用并发限制
+     */
+    private final MiraiHttpApi api;
+
+    /**
+     * 日志文件
+     */
+    private final Path file;
+
+    /**
+     * 日志文件通道
+     */
+    private final FileChannel channel;
+
+    /**
+     * 等待写入的记录
+     */
+    private final BlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+
+    /**
+     * 写入线程
+     */
+    private final Thread writer;
+
+    /**
+     * 发送线程
+     */
+    private final ScheduledThreadPoolExecutor sender;
+
+    /**
+     * 未完成的信息
+     */
+    private final Map<String, Entry> pending = new LinkedHashMap<>();
+
+    /**
+     * 已完成的幂等键与信息 ID，放弃发送的为 null
+     */
+    private final Map<String, String> done = new LinkedHashMap<String, String>(16, 0.75f, false){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_DONE_KEYS;
+        }
+    };
+
+    /**
+     * 是否已关闭
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * 打开发送队列<br>
+     * 读取已有日志，压缩掉已完成的记录，并继续发送未完成的信息
+     *
+     * @param conn Mirai 连接
+     * @param file 日志文件
+     */
+    protected MiraiHttpOutbox(MiraiHttpConn conn, Path file) throws IOException {
+        this.miraiConn = conn;
+        this.api = new MiraiHttpApi(conn);
+        this.file = file;
+
+        replay();
+        compact();
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        this.writer = Threads.newThread("MiraiHttp-Outbox-Writer", this::writeLoop);
+        this.writer.setDaemon(true);
+        this.writer.start();
+        this.sender = new ScheduledThreadPoolExecutor(1, (r) -> {
+            Thread thread = new Thread(r, "MiraiHttp-Outbox-Sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (!pending.isEmpty()) {
+            logger.info("發送隊列中有 {} 條未完成的信息，繼續發送。", pending.size());
+        }
+        for (Entry entry : pending.values()) {
+            schedule(entry, 0);
+        }
+    }
+
+    /**
+     * 发送群信息，自动生成幂等键
+     *
+     * @param group   群号
+     * @param message 信息内容
+     * @return        发送成功时以信息 ID 完成；无法发送时以错误完成
+     */
+    public CompletableFuture<String> send(long group, MessageChain[] message) {
+        return send(UUID.randomUUID().toString(), group, null, message);
+    }
+
+    /**
+     * 发送群信息<br>
+     * 写入日志后才开始发送；同一幂等键已提交过时不再发送，返回同一结果
+     *
+     * @param key     幂等键，例如业务上的信息编号
+     * @param group   群号
+     * @param quote   要回复的信息 ID，null 为不回复
+     * @param message 信息内容
+     * @return        发送成功时以信息 ID 完成；无法发送时以错误完成
+     */
+    public synchronized CompletableFuture<String> send(String key, long group, Long quote, MessageChain[] message) {
+        if (closed) {
+            throw new IllegalStateException("發送隊列已關閉");
+        }
+        if (done.containsKey(key)) {
+            String messageId = done.get(key);
+            if (messageId != null) {
+                return CompletableFuture.completedFuture(messageId);
+            }
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("信息 " + key + " 已放棄發送"));
+            return failed;
+        }
+        Entry existing = pending.get(key);
+        if (existing != null) {
+            return existing.future;
+        }
+
+        Entry entry = new Entry(key, group, quote, MessageChain.toJSONString(message));
+        pending.put(key, entry);
+        append(entry.toRecord()).whenComplete((v, e) -> {
+            if (e != null) {
+                fail(entry, e);
+            } else {
+                schedule(entry, 0);
+            }
+        });
+        return entry.future;
+    }
+
+    /**
+     * 获取未完成的信息数
+     *
+     * @return 信息数
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 关闭发送队列<br>
+     * 已写入日志但未完成的信息在下次打开时继续发送
+     */
+    public void close() {
+        closed = true;
+        sender.shutdownNow();
+        writer.interrupt();
+        try {
+            writer.join(5000);
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.warn("關閉發送隊列日誌時出錯。", e);
+        }
+    }
+
+    /**
+     * 读取日志，恢复未完成的信息与已完成的幂等键<br>
+     * 最后一行可能因崩溃而不完整，无法解析的行会被跳过
+     */
+    private void replay() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                JSONObject record;
+                try {
+                    record = JSON.parseObject(line);
+                } catch (RuntimeException e) {
+                    logger.warn("跳過發送隊列日誌中無法解析的記錄。");
+                    continue;
+                }
+                if (record == null) {
+                    continue;
+                }
+
+                String key = record.getString("key");
+                switch (record.getString("op")) {
+                    case "send":
+                        if (!done.containsKey(key)) {
+                            pending.put(key, new Entry(
+                                    key,
+                                    record.getLongValue("group"),
+                                    record.getLong("quote"),
+                                    record.getString("chain")
+                            ));
+                        }
+                        break;
+                    case "ack":
+                    case "drop":
+                        pending.remove(key);
+                        done.put(key, record.getString("id"));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 压缩日志，只保留未完成的信息与最近完成的幂等键<br>
+     * 先写入临时文件再替换，替换前崩溃不影响原日志
+     */
+    private void compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            StringBuilder records = new StringBuilder();
+            for (Map.Entry<String, String> entry : done.entrySet()) {
+                records.append(doneRecord(entry.getKey(), entry.getValue()));
+            }
+            for (Entry entry : pending.values()) {
+                records.append(entry.toRecord());
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 追加一条记录，写入并 fsync 后完成
+     *
+     * @param record 记录，以换行结尾
+     * @return       持久化后完成
+     */
+    private CompletableFuture<Void> append(String record) {
+        Append append = new Append(record.getBytes(StandardCharsets.UTF_8));
+        appends.add(append);
+        return append.future;
+    }
+
+    /**
+     * 写入循环<br>
+     * 取出当前所有等待的记录，一次写入并 fsync，再通知这些记录已持久化
+     */
+    private void writeLoop() {
+        List<Append> batch = new ArrayList<>();
+        while (!closed || !appends.isEmpty()) {
+            try {
+                batch.add(appends.take());
+            } catch (InterruptedException e) {
+                if (appends.isEmpty()) {
+                    break;
+                }
+            }
+            appends.drainTo(batch, MAX_BATCH - batch.size());
+
+            int size = 0;
+            for (Append append : batch) {
+                size += append.data.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (Append append : batch) {
+                buffer.put(append.data);
+            }
+            buffer.flip();
+
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                for (Append append : batch) {
+                    append.future.complete(null);
+                }
+            } catch (IOException e) {
+                logger.error("寫入發送隊列日誌失敗。", e);
+                for (Append append : batch) {
+                    append.future.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * 安排发送
+     *
+     * @param entry 信息
+     * @param delay 延迟（毫秒）
+     */
+    private void schedule(Entry entry, long delay) {
+        if (closed) {
+            return;
+        }
+        try {
+            sender.schedule(() -> attempt(entry), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            //已关闭，下次打开时继续发送
+        }
+    }
+
+    /**
+     * 发送一次，失败时按退避时间重试
+     *
+     * @param entry 信息
+     */
+    private void attempt(Entry entry) {
+        entry.attempts++;
+        String session = miraiConn.outboundSession();
+        String body = MiraiHttpApi.sendBody(session, entry.group, entry.quote, entry.chain);
+
+        try {
+            Network.NetworkReturn ret = api.call("sendGroupMessage", session,
+                    () -> Network.sendPostChecked(miraiConn.getHost() + "/sendGroupMessage", body));
+            String messageId = ret.data.getString("messageId");
+            if (ret.code != null && ret.code == 0 && messageId != null) {
+                finish(entry, messageId, null);
+                return;
+            }
+            if (ret.code != null && PERMANENT_CODES.contains(ret.code)) {
+                logger.warn("信息 {} 無法發送（{}）：{}，放棄發送。", entry.key, ret.code, ret.data.getString("msg"));
+                finish(entry, null, new IllegalStateException("发送失败（" + ret.code + "）：" + ret.data.getString("msg")));
+                return;
+            }
+            logger.warn("發送信息 {} 失敗（{}），稍後重試。", entry.key, ret.code);
+        } catch (NetworkIOError e) {
+            logger.warn("發送信息 {} 時發生網絡錯誤，稍後重試。", entry.key, e);
+        } catch (LimitExceeded e) {
+            logger.warn("發送信息 {} 時並發請求已達上限，稍後重試。", entry.key);
+        }
+
+        schedule(entry, backoff(entry.attempts));
+    }
+
+    /**
+     * 计算第 n 次失败后的重试间隔，带有随机抖动
+     *
+     * @param attempts 已尝试次数
+     * @return         重试间隔（毫秒）
+     */
+    static long backoff(int attempts) {
+        long backoff = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(attempts - 1, 16));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * 完成信息，记录确认或放弃后通知提交者
+     *
+     * @param entry     信息
+     * @param messageId 信息 ID，放弃时为 null
+     * @param error     放弃的原因，成功时为 null
+     */
+    private void finish(Entry entry, String messageId, Throwable error) {
+        synchronized (this) {
+            pending.remove(entry.key);
+            done.put(entry.key, messageId);
+        }
+
+        append(doneRecord(entry.key, messageId)).whenComplete((v, e) -> {
+            if (error != null) {
+                entry.future.completeExceptionally(error);
+            } else {
+                entry.future.complete(messageId);
+            }
+        });
+    }
+
+    /**
+     * 写入日志失败，放弃信息
+     *
+     * @param entry 信息
+     * @param error 原因
+     */
+    private void fail(Entry entry, Throwable error) {
+        synchronized (this) {
+            pending.remove(entry.key);
+        }
+        entry.future.completeExceptionally(error);
+    }
+
+    /**
+     * 生成完成记录
+     *
+     * @param key       幂等键
+     * @param messageId 信息 ID，放弃时为 null
+     * @return          记录
+     */
+    private static String doneRecord(String key, String messageId) {
+        JSONObject record = new JSONObject();
+        record.put("op", messageId != null ? "ack" : "drop");
+        record.put("key", key);
+        record.put("id", messageId);
+        return record.toJSONString() + "\n";
+    }
+
+    /**
+     * 等待写入的记录
+     */
+    private static class Append {
+        private final byte[] data;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Append(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    /**
+     * 未完成的信息
+     */
+    private static class Entry {
+        private final String key;
+        private final long group;
+        private final Long quote;
+        private final String chain;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        private int attempts;
+
+        private Entry(String key, long group, Long quote, String chain) {
+            this.key = key;
+            this.group = group;
+            this.quote = quote;
+            this.chain = chain;
+        }
+
+        /**
+         * 生成发送记录
+         *
+         * @return 记录
+         */
+        private String toRecord() {
+            JSONObject record = new JSONObject();
+            record.put("op", "send");
+            record.put("key", key);
+            record.put("group", group);
+            record.put("quote", quote);
+            record.put("chain", chain);
+            return record.toJSONString() + "\n";
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package io.github.xiaoyi311;
+
+import io.github.xiaoyi311.entity.Group;
+import io.github.xiaoyi311.entity.Member;
+import io.github.xiaoyi311.entity.Permission;
+import io.github.xiaoyi311.err.NetworkIOError;
+import io.github.xiaoyi311.event.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 群与群成员名单<br>
+ * 在内存中保存机器人加入的群与群成员，查询为 O(1) 的本地读取，不需要网络请求。
+ * 可在绑定时批量预取，之后根据收到的群信息、入群、退群与权限改变事件增量更新<br>
+ * 名单作为监听器注册在 Mirai 连接上，会接收所有群的相关事件
+ */
+public class MiraiHttpRoster implements MiraiEventListener {
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.MiraiHttpRoster");
+
+    /**
+     * 名单接收的事件类型
+     */
+    protected static final EventFilter FILTER = EventFilter.ANY.types(
+            "GroupMessage",
+            "MemberJoinEvent",
+            "MemberLeaveEventQuit",
+            "MemberLeaveEventKick",
+            "MemberPermissionChangeEvent",
+            "BotGroupPermissionChangeEvent"
+    );
+
+    /**
+     * Mirai 连接
+     */
+    private final MiraiHttpConn miraiConn;
+
+    /**
+     * 群号与群对应表
+     */
+    private final Map<Long, Group> groups = new ConcurrentHashMap<>();
+
+    /**
+     * 群号与其成员表对应表
+     */
+    private final Map<Long, Map<Long, Member>> members = new ConcurrentHashMap<>();
+
+    /**
+     * 创建名单
+     *
+     * @param conn Mirai 连接
+     */
+    protected MiraiHttpRoster(MiraiHttpConn conn) {
+        this.miraiConn = conn;
+    }
+
+    /**
+     * 批量获取所有群与群成员，替换当前名单
+     */
+    public void prefetch() throws NetworkIOError {
+        MiraiHttpApi api = miraiConn.getApi();
+        List<Group> temp = api.groupList();
+        for (Group group : temp) {
+            Map<Long, Member> memberMap = new ConcurrentHashMap<>();
+            for (Member member : api.memberList(group.id)) {
+                member.group = group;
+                memberMap.put(member.qq, member);
+            }
+            groups.put(group.id, group);
+            members.put(group.id, memberMap);
+        }
+
+        //移除已退出的群
+        Set<Long> joined = new HashSet<>();
+        for (Group group : temp) {
+            joined.add(group.id);
+        }
+        groups.keySet().retainAll(joined);
+        members.keySet().retainAll(joined);
+        logger.info("已預取 {} 個群的成員名單。", temp.size());
+    }
+
+    /**
+     * 获取所有群
+     *
+     * @return 群列表
+     */
+    public List<Group> getGroups() {
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * 获取群
+     *
+     * @param group 群号
+     * @return      群，不在名单中时为 null
+     */
+    public Group getGroup(long group) {
+        return groups.get(group);
+    }
+
+    /**
+     * 获取群的所有成员
+     *
+     * @param group 群号
+     * @return      群成员列表，不在名单中时为空
+     */
+    public List<Member> getMembers(long group) {
+        Map<Long, Member> temp = members.get(group);
+        return temp != null ? new ArrayList<>(temp.values()) : Collections.emptyList();
+    }
+
+    /**
+     * 获取群成员
+     *
+     * @param group  群号
+     * @param member 群成员 QQ
+     * @return       群成员，不在名单中时为 null
+     */
+    public Member getMember(long group, long member) {
+        Map<Long, Member> temp = members.get(group);
+        return temp != null ? temp.get(member) : null;
+    }
+
+    /**
+     * 获取群成员的权限
+     *
+     * @param group  群号
+     * @param member 群成员 QQ
+     * @return       权限，不在名单中时为 null
+     */
+    public Permission getPermission(long group, long member) {
+        Member temp = getMember(group, member);
+        return temp != null ? temp.permission : null;
+    }
+
+    /**
+     * 群成员是否为管理员或群主
+     *
+     * @param group  群号
+     * @param member 群成员 QQ
+     * @return       是否为管理员或群主，不在名单中时为 false
+     */
+    public boolean isAdmin(long group, long member) {
+        Permission temp = getPermission(group, member);
+        return temp == Permission.ADMINISTRATOR || temp == Permission.OWNER;
+    }
+
+    /**
+     * 获取群成员，不在名单中时通过网络获取并加入名单
+     *
+     * @param group  群号
+     * @param member 群成员 QQ
+     * @return       群成员，不存在时为 null
+     */
+    public Member fetchMember(long group, long member) throws NetworkIOError {
+        Member temp = getMember(group, member);
+        if (temp == null) {
+            temp = miraiConn.getApi().memberInfo(group, member);
+            if (temp != null) {
+                put(temp);
+            }
+        }
+        return temp;
+    }
+
+    /**
+     * 加入或更新群成员，同时更新其所在的群<br>
+     * 名单保存的是副本，不会引用事件中的实体
+     *
+     * @param member 群成员
+     */
+    private void put(Member member) {
+        if (member.group == null) {
+            return;
+        }
+        Member copy = member.copy();
+        Group group = groups.get(copy.group.id);
+        if (group == null) {
+            groups.put(copy.group.id, copy.group);
+        } else {
+            group.groupName = copy.group.groupName;
+            group.permission = copy.group.permission;
+            copy.group = group;
+        }
+        members.computeIfAbsent(copy.group.id, (k) -> new ConcurrentHashMap<>()).put(copy.qq, copy);
+    }
+
+    /**
+     * 移除群成员
+     *
+     * @param member 群成员
+     */
+    private void remove(Member member) {
+        Map<Long, Member> temp = members.get(member.group.id);
+        if (temp != null) {
+            temp.remove(member.qq);
+        }
+    }
+
+    @Override
+    public void onGroupMessage(GroupMessageEvent event) {
+        put(event.sender);
+    }
+
+    @Override
+    public void onMemberJoin(MemberJoinEvent event) {
+        put(event.member);
+    }
+
+    @Override
+    public void onMemberLeaveQuit(MemberLeaveEventQuit event) {
+        remove(event.member);
+    }
+
+    @Override
+    public void onMemberLeaveKick(MemberLeaveEventKick event) {
+        remove(event.member);
+    }
+
+    @Override
+    public void onMemberPermissionChange(MemberPermissionChangeEvent event) {
+        Member member = event.member.copy();
+        member.permission = event.current;
+        put(member);
+    }
+
+    @Override
+    public void onBotGroupPermissionChange(BotGroupPermissionChangeEvent event) {
+        Group group = groups.get(event.group.id);
+        if (group != null) {
+            group.permission = event.current;
+        } else {
+            Group copy = event.group.copy();
+            copy.permission = event.current;
+            groups.put(copy.id, copy);
+        }
+    }
+}
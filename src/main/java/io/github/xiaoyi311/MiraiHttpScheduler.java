@@ -0,0 +1,701 @@
+package io.github.xiaoyi311;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import io.github.xiaoyi311.entity.message.MessageChain;
+import io.github.xiaoyi311.err.LimitExceeded;
+import io.github.xiaoyi311.err.NetworkIOError;
+import io.github.xiaoyi311.util.CronExpression;
+import io.github.xiaoyi311.util.Network;
+import io.github.xiaoyi311.util.Threads;
+import io.github.xiaoyi311.util.TimerWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时发送<br>
+ * 延迟与按 cron 重复的群信息保存在分层时间轮中，加入与取消都是 O(1)，数万条安排只需一个计时线程。
+ * 每个刻度取出到期的信息交给发送线程，同时在发送的信息数不超过 batchSize，其余在前面的信息发送完成或交给发送队列后依次交出；
+ * 打开了持久化发送队列时交由队列发送与重试，否则直接通过 Api 发送，失败时按退避时间重试<br>
+ * 指定文件时安排会写入日志，进程重启后重新打开同一文件即可恢复：停机期间到期的单次信息会立即发送，
+ * 重复的信息从重启时起计算下一次触发时间。日志每个刻度 fsync 一次，崩溃时可能丢失最近一个刻度内新增的安排
+ */
+public class MiraiHttpScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.MiraiHttpScheduler");
+
+    /**
+     * 每刻度的毫秒数
+     */
+    private static final long TICK_MILLIS = 100;
+
+    /**
+     * 日志记录数超过安排数的两倍加上此数时压缩日志
+     */
+    private static final int COMPACT_SLACK = 4096;
+
+    /**
+     * Mirai 连接
+     */
+    private final MiraiHttpConn miraiConn;
+
+    /**
+     * 日志文件，不持久化时为 null
+     */
+    private final Path file;
+
+    /**
+     * cron 使用的时区
+     */
+    private final ZoneId zone;
+
+    /**
+     * 同时发送的最大信息数
+     */
+    private final int batchSize;
+
+    /**
+     * 时间轮
+     */
+    private final TimerWheel<Job> wheel;
+
+    /**
+     * 等待触发的安排
+     */
+    private final Map<String, Job> jobs = new HashMap<>();
+
+    /**
+     * 已触发但尚未发送完成的单次信息
+     */
+    private final Map<String, Job> sending = new HashMap<>();
+
+    /**
+     * 已到期但尚未交给发送线程的信息
+     */
+    private final ArrayDeque<Fire> ready = new ArrayDeque<>();
+
+    /**
+     * 计时线程
+     */
+    private final ScheduledThreadPoolExecutor ticker;
+
+    /**
+     * 发送线程
+     */
+    private final ExecutorService sender;
+
+    /**
+     * 日志文件通道，不持久化时为 null
+     */
+    private FileChannel channel;
+
+    /**
+     * 日志中的记录数
+     */
+    private int records = 0;
+
+    /**
+     * 尚未写入日志的记录
+     */
+    private final StringBuilder unwritten = new StringBuilder();
+
+    /**
+     * 正在发送的信息数
+     */
+    private int inFlight = 0;
+
+    /**
+     * 是否已关闭
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * 打开定时发送，cron 使用系统时区
+     *
+     * @param conn        Mirai 连接
+     * @param file        日志文件，null 为不持久化
+     * @param batchSize   同时发送的最大信息数
+     * @param concurrency 发送线程数
+     */
+    protected MiraiHttpScheduler(MiraiHttpConn conn, Path file, int batchSize, int concurrency) throws IOException {
+        this(conn, file, batchSize, concurrency, ZoneId.systemDefault());
+    }
+
+    /**
+     * 打开定时发送<br>
+     * 读取已有日志，压缩掉已完成的记录，并恢复未完成的安排
+     *
+     * @param conn        Mirai 连接
+     * @param file        日志文件，null 为不持久化
+     * @param batchSize   同时发送的最大信息数
+     * @param concurrency 发送线程数
+     * @param zone        cron 使用的时区
+     */
+    protected MiraiHttpScheduler(MiraiHttpConn conn, Path file, int batchSize, int concurrency, ZoneId zone) throws IOException {
+        if (batchSize < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("batchSize 与 concurrency 必须大于 0");
+        }
+        this.miraiConn = conn;
+        this.file = file;
+        this.zone = zone;
+        this.batchSize = batchSize;
+        this.wheel = new TimerWheel<>(TICK_MILLIS, System.currentTimeMillis());
+
+        if (file != null) {
+            replay();
+            compact();
+            if (!jobs.isEmpty()) {
+                logger.info("恢復了 {} 條定時信息。", jobs.size());
+            }
+        }
+
+        this.sender = Threads.newExecutor("MiraiHttp-Scheduler-Sender", concurrency);
+        this.ticker = new ScheduledThreadPoolExecutor(1, (r) -> {
+            Thread thread = new Thread(r, "MiraiHttp-Scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 延迟发送群信息
+     *
+     * @param group   群号
+     * @param message 信息内容
+     * @param delay   延迟
+     * @param unit    时间单位
+     * @return        安排 ID，可用于取消
+     */
+    public String schedule(long group, MessageChain[] message, long delay, TimeUnit unit) {
+        return scheduleAt(group, null, message, System.currentTimeMillis() + unit.toMillis(delay));
+    }
+
+    /**
+     * 在指定时间发送群信息
+     *
+     * @param group   群号
+     * @param quote   要回复的信息 ID，null 为不回复
+     * @param message 信息内容
+     * @param time    发送时间（毫秒时间戳），已过去时在下一刻度发送
+     * @return        安排 ID，可用于取消
+     */
+    public String scheduleAt(long group, Long quote, MessageChain[] message, long time) {
+        return add(new Job(UUID.randomUUID().toString(), group, quote, MessageChain.toJSONString(message), time, null));
+    }
+
+    /**
+     * 按 cron 表达式重复发送群信息
+     *
+     * @param group   群号
+     * @param quote   要回复的信息 ID，null 为不回复
+     * @param message 信息内容
+     * @param cron    cron 表达式，见 {@link CronExpression}
+     * @return        安排 ID，可用于取消
+     */
+    public String scheduleCron(long group, Long quote, MessageChain[] message, String cron) {
+        CronExpression expression = new CronExpression(cron);
+        Long time = nextTime(expression, System.currentTimeMillis());
+        if (time == null) {
+            throw new IllegalArgumentException("cron 表达式不会再触发：" + cron);
+        }
+        return add(new Job(UUID.randomUUID().toString(), group, quote, MessageChain.toJSONString(message), time, expression));
+    }
+
+    /**
+     * 取消安排<br>
+     * 已交给发送线程的信息无法取消
+     *
+     * @param id 安排 ID
+     * @return   是否取消，安排不存在或已触发时为 false
+     */
+    public synchronized boolean cancel(String id) {
+        Job job = jobs.remove(id);
+        if (job == null) {
+            return false;
+        }
+        job.cancelled = true;
+        wheel.cancel(job.timeout);
+        write(doneRecord(id));
+        return true;
+    }
+
+    /**
+     * 获取下一次触发时间
+     *
+     * @param id 安排 ID
+     * @return   毫秒时间戳，安排不存在或已触发时为 null
+     */
+    public synchronized Long getNextTime(String id) {
+        Job job = jobs.get(id);
+        return job != null ? job.time : null;
+    }
+
+    /**
+     * 获取等待触发的安排数
+     *
+     * @return 安排数
+     */
+    public synchronized int getPendingCount() {
+        return jobs.size();
+    }
+
+    /**
+     * 关闭定时发送<br>
+     * 已触发但尚未发送完成的单次信息在下次打开时重新发送
+     */
+    public void close() {
+        closed = true;
+        ticker.shutdownNow();
+        sender.shutdown();
+        synchronized (this) {
+            if (channel != null) {
+                try {
+                    flush();
+                    channel.close();
+                } catch (IOException e) {
+                    logger.warn("關閉定時發送日誌時出錯。", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 加入安排
+     *
+     * @param job 安排
+     * @return    安排 ID
+     */
+    private synchronized String add(Job job) {
+        if (closed) {
+            throw new IllegalStateException("定時發送已關閉");
+        }
+        write(job.toRecord());
+        jobs.put(job.id, job);
+        job.timeout = wheel.schedule(job, job.time);
+        return job.id;
+    }
+
+    /**
+     * 推进时间轮，交出到期的信息，并 fsync 这段时间写入的记录<br>
+     * 出错时只记录日志，避免定时任务被取消
+     */
+    private synchronized void tick() {
+        if (closed) {
+            return;
+        }
+        try {
+            advance();
+        } catch (RuntimeException e) {
+            logger.error("推進定時發送時出錯。", e);
+        }
+    }
+
+    /**
+     * 推进时间轮一次
+     */
+    private void advance() {
+        long now = System.currentTimeMillis();
+        for (Job job : wheel.advance(now)) {
+            ready.add(new Fire(job, job.time));
+            if (job.cron != null) {
+                Long next = nextTime(job.cron, Math.max(now, job.time));
+                if (next != null) {
+                    job.time = next;
+                    wheel.reschedule(job.timeout, next);
+                    continue;
+                }
+                jobs.remove(job.id);
+                write(doneRecord(job.id));
+            } else {
+                jobs.remove(job.id);
+                sending.put(job.id, job);
+            }
+        }
+
+        release();
+
+        if (channel != null) {
+            try {
+                if (records > (jobs.size() + sending.size()) * 2 + COMPACT_SLACK) {
+                    compact();
+                } else {
+                    flush();
+                }
+            } catch (IOException e) {
+                logger.error("寫入定時發送日誌失敗。", e);
+            }
+        }
+    }
+
+    /**
+     * 把到期的信息交给发送线程，直到同时发送的信息数达到 batchSize
+     */
+    private void release() {
+        while (inFlight < batchSize && !ready.isEmpty()) {
+            Fire fire = ready.poll();
+            if (fire.job.cancelled) {
+                continue;
+            }
+            try {
+                sender.execute(() -> send(fire));
+                inFlight++;
+            } catch (RejectedExecutionException ignored) {
+                //已关闭，单次信息下次打开时重新发送
+                return;
+            }
+        }
+    }
+
+    /**
+     * 发送一条到期的信息<br>
+     * 打开了持久化发送队列时以安排 ID 与触发时间作为幂等键交给队列，重启后重复触发也只会发送一次；
+     * 队列接收后即让出发送名额，队列中无法送达的信息不会阻塞其他到期的信息
+     *
+     * @param fire 到期的信息
+     */
+    private void send(Fire fire) {
+        Job job = fire.job;
+        try {
+            MiraiHttpOutbox outbox = miraiConn.getOutbox();
+            if (outbox != null) {
+                MessageChain[] message = MessageChain.getMessageChain(JSON.parseArray(job.chain));
+                try {
+                    outbox.send(job.id + "@" + fire.time, job.group, job.quote, message).whenComplete((id, e) -> {
+                        if (e != null) {
+                            logger.warn("定時信息 {} 發送失敗。", job.id, e);
+                        }
+                        sent(job);
+                    });
+                    return;
+                } catch (IllegalStateException e) {
+                    //发送队列已关闭，改为直接发送
+                }
+            }
+            sendDirect(fire);
+        } catch (RuntimeException e) {
+            //信息链无法解析，重试也不会成功
+            logger.warn("定時信息 {} 無法發送，放棄發送。", job.id, e);
+            sent(job);
+        } finally {
+            accepted();
+        }
+    }
+
+    /**
+     * 不经发送队列直接发送一次<br>
+     * 失败时按退避时间重试，单次信息在发送成功或确定无法发送前保持为发送中，关闭后下次打开时重新发送
+     *
+     * @param fire 到期的信息
+     */
+    private void sendDirect(Fire fire) {
+        Job job = fire.job;
+        fire.attempts++;
+        try {
+            String session = miraiConn.outboundSession();
+            String body = MiraiHttpApi.sendBody(session, job.group, job.quote, job.chain);
+            Network.NetworkReturn ret = miraiConn.getApi().call("sendGroupMessage", session,
+                    () -> Network.sendPostChecked(miraiConn.getHost() + "/sendGroupMessage", body));
+            if (ret.code != null && ret.code == 0) {
+                sent(job);
+                return;
+            }
+            if (ret.code != null && MiraiHttpOutbox.PERMANENT_CODES.contains(ret.code)) {
+                logger.warn("定時信息 {} 無法發送（{}）：{}，放棄發送。", job.id, ret.code, ret.data.getString("msg"));
+                sent(job);
+                return;
+            }
+            logger.warn("定時信息 {} 發送失敗（{}），稍後重試。", job.id, ret.code);
+        } catch (NetworkIOError e) {
+            logger.warn("定時信息 {} 發送時發生網絡錯誤，稍後重試。", job.id, e);
+        } catch (LimitExceeded e) {
+            logger.warn("定時信息 {} 發送時並發請求已達上限，稍後重試。", job.id);
+        } catch (RuntimeException e) {
+            logger.warn("定時信息 {} 發送失敗，稍後重試。", job.id, e);
+        }
+        retry(fire);
+    }
+
+    /**
+     * 按退避时间把发送失败的信息重新交出<br>
+     * 重复的信息在下一次触发前来不及重试时放弃本次触发
+     *
+     * @param fire 发送失败的信息
+     */
+    private synchronized void retry(Fire fire) {
+        Job job = fire.job;
+        if (closed || job.cancelled) {
+            return;
+        }
+        long delay = MiraiHttpOutbox.backoff(fire.attempts);
+        if (job.cron != null && job.time > fire.time && System.currentTimeMillis() + delay >= job.time) {
+            logger.warn("定時信息 {} 在下一次觸發前來不及重試，放棄本次發送。", job.id);
+            return;
+        }
+        try {
+            ticker.schedule(() -> requeue(fire), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            //已关闭，单次信息下次打开时重新发送
+        }
+    }
+
+    /**
+     * 重新交出发送失败的信息
+     *
+     * @param fire 信息
+     */
+    private synchronized void requeue(Fire fire) {
+        if (!closed) {
+            ready.add(fire);
+            release();
+        }
+    }
+
+    /**
+     * 信息已直接发送或已交给发送队列，让出发送名额并交出下一条到期的信息
+     */
+    private synchronized void accepted() {
+        inFlight--;
+        if (!closed) {
+            release();
+        }
+    }
+
+    /**
+     * 信息发送完成，单次信息记录为已完成
+     *
+     * @param job 安排
+     */
+    private synchronized void sent(Job job) {
+        if (job.cron == null && sending.remove(job.id) != null && !closed) {
+            write(doneRecord(job.id));
+        }
+    }
+
+    /**
+     * 追加一条记录，在下一个刻度写入并 fsync
+     *
+     * @param record 记录，以换行结尾
+     */
+    private void write(String record) {
+        if (channel == null || !channel.isOpen()) {
+            return;
+        }
+        unwritten.append(record);
+        records++;
+    }
+
+    /**
+     * 把尚未写入的记录一次写入日志并 fsync
+     */
+    private void flush() throws IOException {
+        if (unwritten.length() == 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(unwritten.toString().getBytes(StandardCharsets.UTF_8));
+        unwritten.setLength(0);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * 读取日志，恢复未完成的安排<br>
+     * 最后一行可能因崩溃而不完整，无法解析的行会被跳过
+     */
+    private void replay() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                JSONObject record;
+                try {
+                    record = JSON.parseObject(line);
+                } catch (RuntimeException e) {
+                    logger.warn("跳過定時發送日誌中無法解析的記錄。");
+                    continue;
+                }
+                if (record == null) {
+                    continue;
+                }
+
+                String id = record.getString("id");
+                switch (record.getString("op")) {
+                    case "add":
+                        String cron = record.getString("cron");
+                        CronExpression expression = null;
+                        long time = record.getLongValue("time");
+                        if (cron != null) {
+                            expression = new CronExpression(cron);
+                            Long next = nextTime(expression, now - 1);
+                            if (next == null) {
+                                continue;
+                            }
+                            time = next;
+                        }
+                        jobs.put(id, new Job(
+                                id,
+                                record.getLongValue("group"),
+                                record.getLong("quote"),
+                                record.getString("chain"),
+                                time,
+                                expression
+                        ));
+                        break;
+                    case "done":
+                        jobs.remove(id);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        for (Job job : jobs.values()) {
+            job.timeout = wheel.schedule(job, job.time);
+        }
+    }
+
+    /**
+     * 压缩日志，只保留未完成的安排，并重新打开日志<br>
+     * 先写入临时文件再替换，替换前崩溃不影响原日志
+     */
+    private void compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            StringBuilder data = new StringBuilder();
+            for (Job job : jobs.values()) {
+                data.append(job.toRecord());
+            }
+            for (Job job : sending.values()) {
+                data.append(job.toRecord());
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(data.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if (channel != null) {
+            channel.close();
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        records = jobs.size() + sending.size();
+        unwritten.setLength(0);
+    }
+
+    /**
+     * 计算 cron 的下一次触发时间
+     *
+     * @param cron  cron 表达式
+     * @param after 时间（毫秒时间戳），结果严格晚于此时间
+     * @return      毫秒时间戳，不会再触发时为 null
+     */
+    private Long nextTime(CronExpression cron, long after) {
+        ZonedDateTime next = cron.next(ZonedDateTime.ofInstant(Instant.ofEpochMilli(after), zone));
+        return next != null ? next.toInstant().toEpochMilli() : null;
+    }
+
+    /**
+     * 生成完成记录
+     *
+     * @param id 安排 ID
+     * @return   记录
+     */
+    private static String doneRecord(String id) {
+        JSONObject record = new JSONObject();
+        record.put("op", "done");
+        record.put("id", id);
+        return record.toJSONString() + "\n";
+    }
+
+    /**
+     * 到期的信息
+     */
+    private static class Fire {
+        private final Job job;
+
+        /**
+         * 本次触发时间
+         */
+        private final long time;
+
+        /**
+         * 直接发送的尝试次数
+         */
+        private int attempts;
+
+        private Fire(Job job, long time) {
+            this.job = job;
+            this.time = time;
+        }
+    }
+
+    /**
+     * 安排
+     */
+    private static class Job {
+        private final String id;
+        private final long group;
+        private final Long quote;
+        private final String chain;
+        private final CronExpression cron;
+
+        /**
+         * 下一次触发时间
+         */
+        private long time;
+
+        private TimerWheel.Timeout<Job> timeout;
+        private boolean cancelled;
+
+        private Job(String id, long group, Long quote, String chain, long time, CronExpression cron) {
+            this.id = id;
+            this.group = group;
+            this.quote = quote;
+            this.chain = chain;
+            this.time = time;
+            this.cron = cron;
+        }
+
+        /**
+         * 生成加入记录
+         *
+         * @return 记录
+         */
+        private String toRecord() {
+            JSONObject record = new JSONObject();
+            record.put("op", "add");
+            record.put("id", id);
+            record.put("group", group);
+            record.put("quote", quote);
+            record.put("chain", chain);
+            record.put("time", time);
+            record.put("cron", cron != null ? cron.toString() : null);
+            return record.toJSONString() + "\n";
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package io.github.xiaoyi311;
+
+import com.alibaba.fastjson.JSONObject;
+import io.github.xiaoyi311.err.NetworkIOError;
+import io.github.xiaoyi311.util.Network;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 发送用 Session 池<br>
+ * 为同一机器人额外绑定多个 Session，Api 调用轮流使用，不再与轮询事件的 Session 争用。
+ * 池中的 Session 不轮询事件，只有 Mirai 连接自己的 Session 轮询；
+ * 定期检查池中 Session 是否有效，失效的 Session 会被释放并替换
+ */
+public class MiraiHttpSessionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.MiraiHttpSessionPool");
+
+    /**
+     * 健康检查计时器
+     */
+    private static final ScheduledThreadPoolExecutor timer;
+
+    static {
+        timer = new ScheduledThreadPoolExecutor(1, (r) -> {
+            Thread thread = new Thread(r, "MiraiHttp-SessionPool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Mirai 连接
+     */
+    private final MiraiHttpConn miraiConn;
+
+    /**
+     * 机器人 QQ
+     */
+    private final long qq;
+
+    /**
+     * 池中的 Session，失效或尚未替换成功时为 null
+     */
+    private final AtomicReferenceArray<String> sessions;
+
+    /**
+     * 下一个使用的位置
+     */
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * 健康检查任务
+     */
+    private final ScheduledFuture<?> healthCheck;
+
+    /**
+     * 是否已关闭
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * 创建 Session 池，并绑定所有 Session
+     *
+     * @param conn     Mirai 连接，需已绑定机器人
+     * @param size     Session 数量
+     * @param interval 健康检查间隔
+     * @param unit     时间单位
+     */
+    protected MiraiHttpSessionPool(MiraiHttpConn conn, int size, long interval, TimeUnit unit) {
+        if (size < 1){
+            throw new IllegalArgumentException("size 必须大于 0");
+        }
+        this.miraiConn = conn;
+        this.qq = conn.boundRobotQq;
+        this.sessions = new AtomicReferenceArray<>(size);
+        for (int i = 0; i < size; i++) {
+            replace(i, null);
+        }
+        this.healthCheck = interval > 0
+                ? timer.scheduleWithFixedDelay(this::checkHealth, interval, interval, unit)
+                : null;
+    }
+
+    /**
+     * 获取下一个发送用 Session<br>
+     * 轮流使用池中有效的 Session，全部失效时使用 Mirai 连接自己的 Session
+     *
+     * @return Session
+     */
+    public String acquire() {
+        int size = sessions.length();
+        int start = next.getAndIncrement();
+        for (int i = 0; i < size; i++) {
+            String session = sessions.get(Math.floorMod(start + i, size));
+            if (session != null) {
+                return session;
+            }
+        }
+        return miraiConn.session;
+    }
+
+    /**
+     * 报告 Session 已失效<br>
+     * 失效的 Session 立即停止使用，并在后台替换
+     *
+     * @param session Session
+     */
+    public void expired(String session) {
+        for (int i = 0; i < sessions.length(); i++) {
+            if (session.equals(sessions.get(i)) && sessions.compareAndSet(i, session, null)) {
+                int index = i;
+                logger.warn("發送用 Session 已失效，正在替換。");
+                timer.execute(() -> replace(index, session));
+                return;
+            }
+        }
+    }
+
+    /**
+     * 检查所有 Session 是否有效，并替换失效或缺失的 Session
+     */
+    public void checkHealth() {
+        for (int i = 0; i < sessions.length() && !closed; i++) {
+            String session = sessions.get(i);
+            if (session == null) {
+                replace(i, null);
+                continue;
+            }
+
+            try {
+                Network.NetworkReturn ret = Network.sendGet(miraiConn.getHost() + "/sessionInfo", "sessionKey=" + session);
+                if (ret.code != null && ret.code == 3 && sessions.compareAndSet(i, session, null)) {
+                    logger.warn("健康檢查發現發送用 Session 已失效，正在替換。");
+                    replace(i, session);
+                }
+            } catch (NetworkIOError | RuntimeException e) {
+                logger.warn("檢查發送用 Session 時出錯。", e);
+            }
+        }
+    }
+
+    /**
+     * 获取池的大小
+     *
+     * @return Session 数量
+     */
+    public int size() {
+        return sessions.length();
+    }
+
+    /**
+     * 获取有效的 Session 数量
+     *
+     * @return Session 数量
+     */
+    public int getHealthyCount() {
+        int count = 0;
+        for (int i = 0; i < sessions.length(); i++) {
+            if (sessions.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 关闭 Session 池，停止健康检查并释放所有 Session
+     */
+    public void close() {
+        closed = true;
+        if (healthCheck != null) {
+            healthCheck.cancel(false);
+        }
+        for (int i = 0; i < sessions.length(); i++) {
+            String session = sessions.getAndSet(i, null);
+            if (session != null) {
+                release(session);
+            }
+        }
+    }
+
+    /**
+     * 替换指定位置的 Session<br>
+     * 新 Session 验证并绑定成功后才放入池中，失败时留空，等待下次健康检查；绑定失败时释放已取得的 Session
+     *
+     * @param index 位置
+     * @param old   原 Session，需要释放，没有时为 null
+     */
+    private void replace(int index, String old) {
+        if (old != null) {
+            release(old);
+        }
+        if (closed) {
+            return;
+        }
+
+        try {
+            JSONObject data = new JSONObject();
+            data.put("verifyKey", miraiConn.getVerifyKey());
+            Network.NetworkReturn ret = Network.sendPostChecked(miraiConn.getHost() + "/verify", data.toJSONString());
+            String session = ret.data.getString("session");
+            if (ret.code == null || ret.code != 0 || session == null) {
+                logger.warn("獲取發送用 Session 失敗：{}", ret.data.getString("msg"));
+                return;
+            }
+
+            data = new JSONObject();
+            data.put("sessionKey", session);
+            data.put("qq", qq);
+            try {
+                ret = Network.sendPostChecked(miraiConn.getHost() + "/bind", data.toJSONString());
+            } catch (NetworkIOError | RuntimeException e) {
+                release(session);
+                throw e;
+            }
+            if (ret.code == null || ret.code != 0) {
+                logger.warn("綁定發送用 Session 失敗：{}", ret.data.getString("msg"));
+                release(session);
+                return;
+            }
+
+            if (closed || !sessions.compareAndSet(index, null, session)) {
+                release(session);
+            }
+        } catch (NetworkIOError e) {
+            logger.warn("獲取發送用 Session 時發生網絡錯誤：{}", e.getMessage());
+        } catch (RuntimeException e) {
+            logger.warn("獲取發送用 Session 時出錯。", e);
+        }
+    }
+
+    /**
+     * 释放 Session
+     *
+     * @param session Session
+     */
+    private void release(String session) {
+        try {
+            JSONObject data = new JSONObject();
+            data.put("sessionKey", session);
+            data.put("qq", qq);
+            Network.sendPostChecked(miraiConn.getHost() + "/release", data.toJSONString());
+        } catch (NetworkIOError e) {
+            logger.warn("釋放發送用 Session 時發生網絡錯誤：{}", e.getMessage());
+        } catch (RuntimeException e) {
+            logger.warn("釋放發送用 Session 時出錯。", e);
+        }
+    }
+}
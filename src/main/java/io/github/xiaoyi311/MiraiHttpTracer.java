@@ -0,0 +1,167 @@
+package io.github.xiaoyi311;
+
+import io.github.xiaoyi311.event.EventTrace;
+import io.github.xiaoyi311.event.MessageEventBase;
+import io.github.xiaoyi311.event.MiraiEventBase;
+import io.github.xiaoyi311.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 事件延迟追踪<br>
+ * 轮询线程为每个事件记录 {@link EventTrace}，分发期间在同一线程发出的 Api 请求会关联到正在分发的事件。
+ * 各阶段耗时记录在延迟分布中，总耗时超过阈值的追踪按采样率交给导出函数
+ */
+public class MiraiHttpTracer {
+
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.MiraiHttpTracer");
+
+    /**
+     * 当前线程正在分发的事件的追踪
+     */
+    private static final ThreadLocal<EventTrace> current = new ThreadLocal<>();
+
+    /**
+     * 各阶段的延迟分布
+     */
+    private final Map<EventTrace.Stage, LatencyHistogram> latency = new EnumMap<>(EventTrace.Stage.class);
+
+    /**
+     * 慢追踪阈值（纳秒）
+     */
+    private final long slowNanos;
+
+    /**
+     * 慢追踪的采样率
+     */
+    private final double sampleRate;
+
+    /**
+     * 慢追踪导出函数，可为 null
+     */
+    private final Consumer<EventTrace> exporter;
+
+    /**
+     * 创建追踪
+     *
+     * @param slow       慢追踪阈值
+     * @param unit       时间单位
+     * @param sampleRate 慢追踪的采样率，0 ~ 1
+     * @param exporter   慢追踪导出函数，可为 null
+     */
+    protected MiraiHttpTracer(long slow, TimeUnit unit, double sampleRate, Consumer<EventTrace> exporter) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate 必须在 0 到 1 之間");
+        }
+        this.slowNanos = unit.toNanos(slow);
+        this.sampleRate = sampleRate;
+        this.exporter = exporter;
+        for (EventTrace.Stage stage : EventTrace.Stage.values()) {
+            latency.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * 获取当前线程正在分发的事件的追踪
+     *
+     * @return 追踪，不在分发中或未启用追踪时为 null
+     */
+    public static EventTrace current() {
+        return current.get();
+    }
+
+    /**
+     * 获取阶段的延迟分布
+     *
+     * @param stage 阶段
+     * @return      延迟分布
+     */
+    public LatencyHistogram getLatency(EventTrace.Stage stage) {
+        return latency.get(stage);
+    }
+
+    /**
+     * 清空所有延迟分布
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : latency.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * 开始分发事件<br>
+     * 创建追踪并设为当前线程正在分发的追踪
+     *
+     * @param event      事件
+     * @param fetchedAt  取得事件的时间戳（毫秒）
+     * @param fetchStart 开始轮询
+     * @param fetchEnd   轮询结束
+     * @param decodeEnd  解码结束
+     */
+    protected void begin(MiraiEventBase event, long fetchedAt, long fetchStart, long fetchEnd, long decodeEnd) {
+        Integer time = event instanceof MessageEventBase ? ((MessageEventBase) event).time : null;
+        EventTrace trace = new EventTrace(event.getType(), time, fetchedAt, fetchStart, fetchEnd, decodeEnd);
+        event.trace = trace;
+        current.set(trace);
+        trace.dispatchStart = System.nanoTime();
+    }
+
+    /**
+     * 结束分发事件<br>
+     * 记录各阶段耗时，慢追踪按采样率导出
+     *
+     * @param event 事件
+     */
+    protected void end(MiraiEventBase event) {
+        EventTrace trace = event.trace;
+        current.remove();
+        if (trace == null) {
+            return;
+        }
+        trace.dispatchEnd = System.nanoTime();
+
+        for (EventTrace.Stage stage : EventTrace.Stage.values()) {
+            //每个请求已单独记录
+            if (stage == EventTrace.Stage.SEND) {
+                continue;
+            }
+            long nanos = trace.getNanos(stage);
+            if (nanos >= 0) {
+                latency.get(stage).record(nanos);
+            }
+        }
+
+        if (exporter != null
+                && trace.getNanos(EventTrace.Stage.TOTAL) >= slowNanos
+                && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            try {
+                exporter.accept(trace);
+            } catch (Exception e) {
+                logger.warn("導出慢追蹤時出錯。", e);
+            }
+        }
+    }
+
+    /**
+     * 记录一次 Api 请求<br>
+     * 当前线程正在分发事件时关联到该事件
+     *
+     * @param api   Api 名称
+     * @param start 开始请求
+     * @param end   请求结束
+     */
+    protected void recordSend(String api, long start, long end) {
+        latency.get(EventTrace.Stage.SEND).record(end - start);
+        EventTrace trace = current.get();
+        if (trace != null) {
+            trace.sends.add(new EventTrace.Send(api, start, end));
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package io.github.xiaoyi311.archive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 正在写入的存档段<br>
+ * 记录追加到数据文件，列数据与倒排表保存在内存中，信息数达到上限后封存为 {@link Segment}。
+ * 打开时从数据文件重建内存中的索引，未写完整的最后一条记录会被截断。非线程安全，由存档加锁使用
+ */
+public class ActiveSegment {
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.ActiveSegment");
+
+    /**
+     * 段 ID
+     */
+    public final long id;
+
+    /**
+     * 数据文件
+     */
+    public final Path dataFile;
+
+    /**
+     * 数据文件通道
+     */
+    private final FileChannel channel;
+
+    /**
+     * 最多信息数
+     */
+    private final int capacity;
+
+    private final long[] offsets;
+    private final long[] times;
+    private final long[] groups;
+    private final long[] senders;
+
+    /**
+     * 词与倒排表
+     */
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    /**
+     * 信息数
+     */
+    private int docCount = 0;
+
+    /**
+     * 数据文件大小
+     */
+    private long size;
+
+    /**
+     * 打开或创建正在写入的段
+     *
+     * @param id       段 ID
+     * @param dataFile 数据文件
+     * @param capacity 最多信息数
+     */
+    public ActiveSegment(long id, Path dataFile, int capacity) throws IOException {
+        this.id = id;
+        this.dataFile = dataFile;
+        this.capacity = capacity;
+        this.offsets = new long[capacity];
+        this.times = new long[capacity];
+        this.groups = new long[capacity];
+        this.senders = new long[capacity];
+        this.channel = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay();
+    }
+
+    /**
+     * 是否已达到最多信息数
+     *
+     * @return 是否已满
+     */
+    public boolean isFull() {
+        return docCount >= capacity;
+    }
+
+    /**
+     * 获取信息数
+     *
+     * @return 信息数
+     */
+    public int getDocCount() {
+        return docCount;
+    }
+
+    /**
+     * 追加一条信息
+     *
+     * @param time      时间戳（秒）
+     * @param group     群号
+     * @param sender    发送者 QQ
+     * @param messageId 信息 ID
+     * @param text      文本
+     */
+    public void append(long time, long group, long sender, Integer messageId, String text) throws IOException {
+        if (isFull()) {
+            throw new IllegalStateException("存檔段已滿");
+        }
+        ByteBuffer record = Records.encode(time, group, sender, messageId, text);
+        long offset = size;
+        while (record.hasRemaining()) {
+            size += channel.write(record, size);
+        }
+        add(offset, time, group, sender, text);
+    }
+
+    /**
+     * 按写入顺序从新到旧查询
+     *
+     * @param query 查询
+     * @param out   结果，达到查询的数量上限时停止
+     */
+    public void search(ArchiveQuery query, List<ArchivedMessage> out) throws IOException {
+        long[] terms = query.terms;
+        Postings lead = null;
+        Postings[] lists = new Postings[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            lists[i] = postings.get(terms[i]);
+            if (lists[i] == null) {
+                return;
+            }
+            if (lead == null || lists[i].size < lead.size) {
+                lead = lists[i];
+            }
+        }
+
+        int candidates = lead != null ? lead.size : docCount;
+        for (int j = candidates - 1; j >= 0 && out.size() < query.limit; j--) {
+            int doc = lead != null ? lead.docs[j] : j;
+            boolean all = true;
+            for (int i = 0; i < lists.length && all; i++) {
+                all = lists[i] == lead || Arrays.binarySearch(lists[i].docs, 0, lists[i].size, doc) >= 0;
+            }
+            if (all && query.accept(times[doc], groups[doc], senders[doc])) {
+                ArchivedMessage message = read(doc);
+                if (query.match(message.text)) {
+                    out.add(message);
+                }
+            }
+        }
+    }
+
+    /**
+     * 封存：写入索引文件并把数据同步到磁盘
+     *
+     * @param indexFile 索引文件
+     */
+    public void seal(Path indexFile) throws IOException {
+        channel.force(true);
+
+        long[] keys = new long[postings.size()];
+        int i = 0;
+        for (Long key : postings.keySet()) {
+            keys[i++] = key;
+        }
+        Arrays.sort(keys);
+
+        try (SegmentWriter writer = new SegmentWriter(indexFile, docCount)) {
+            for (int doc = 0; doc < docCount; doc++) {
+                writer.doc(offsets[doc], times[doc], groups[doc], senders[doc]);
+            }
+            for (long key : keys) {
+                Postings list = postings.get(key);
+                writer.term(key, list.size);
+                for (int j = 0; j < list.size; j++) {
+                    writer.posting(list.docs[j]);
+                }
+            }
+            writer.finish();
+        }
+    }
+
+    /**
+     * 同步数据文件到磁盘
+     */
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * 关闭数据文件
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 从数据文件重建内存中的索引
+     */
+    private void replay() throws IOException {
+        long fileSize = channel.size();
+        long pos = 0;
+        ByteBuffer length = ByteBuffer.allocate(4);
+        while (pos + 4 <= fileSize && !isFull()) {
+            length.clear();
+            readFully(length, pos);
+            int len = length.getInt(0);
+            if (len < Records.FIXED || pos + 4 + len > fileSize) {
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(4 + len);
+            readFully(record, pos);
+            record.flip();
+            ArchivedMessage message = Records.decode(record);
+            add(pos, message.time, message.group, message.sender, message.text);
+            pos += 4 + len;
+        }
+
+        if (pos < fileSize) {
+            logger.warn("存檔段 {} 末尾有 {} 字節不完整的記錄，已截斷。", dataFile, fileSize - pos);
+            channel.truncate(pos);
+        }
+        size = pos;
+    }
+
+    /**
+     * 加入内存中的索引
+     */
+    private void add(long offset, long time, long group, long sender, String text) {
+        int doc = docCount++;
+        offsets[doc] = offset;
+        times[doc] = time;
+        groups[doc] = group;
+        senders[doc] = sender;
+
+        Tokenizer.index(text, (term) -> addPosting(term, doc));
+        addPosting(Tokenizer.groupTerm(group), doc);
+        addPosting(Tokenizer.senderTerm(sender), doc);
+    }
+
+    private void addPosting(long term, int doc) {
+        postings.computeIfAbsent(term, (k) -> new Postings()).add(doc);
+    }
+
+    /**
+     * 读取一条信息
+     */
+    private ArchivedMessage read(int doc) throws IOException {
+        long end = doc + 1 < docCount ? offsets[doc + 1] : size;
+        ByteBuffer record = ByteBuffer.allocate((int) (end - offsets[doc]));
+        readFully(record, offsets[doc]);
+        record.flip();
+        return Records.decode(record);
+    }
+
+    private void readFully(ByteBuffer buffer, long pos) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, pos + buffer.position());
+            if (n < 0) {
+                throw new IOException("存檔段數據文件意外結束：" + dataFile);
+            }
+        }
+    }
+
+    /**
+     * 内存中的倒排表，信息序号从小到大
+     */
+    private static class Postings {
+        private int[] docs = new int[4];
+        private int size = 0;
+
+        private void add(int doc) {
+            //同一信息中重复的词只记录一次
+            if (size > 0 && docs[size - 1] == doc) {
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.xiaoyi311.archive;
+
+import java.util.Locale;
+
+/**
+ * 存档查询<br>
+ * 关键词按短语匹配：英文等按整词查找，中日韩文字按相邻两字查找，最后确认原文包含关键词（不分大小写）。
+ * 群号与发送者同样通过索引查找，各条件同时满足的信息按写入顺序从新到旧返回
+ */
+public class ArchiveQuery {
+    /**
+     * 关键词，null 为不限
+     */
+    public final String keyword;
+
+    /**
+     * 群号，null 为不限
+     */
+    public final Long group;
+
+    /**
+     * 发送者 QQ，null 为不限
+     */
+    public final Long sender;
+
+    /**
+     * 最早时间戳（秒），包含
+     */
+    public final long from;
+
+    /**
+     * 最晚时间戳（秒），包含
+     */
+    public final long to;
+
+    /**
+     * 最多返回的信息数
+     */
+    public final int limit;
+
+    /**
+     * 需要在索引中同时出现的词
+     */
+    final long[] terms;
+
+    /**
+     * 小写的关键词，null 为不限
+     */
+    private final String needle;
+
+    /**
+     * 创建查询
+     *
+     * @param keyword 关键词，null 或空为不限
+     * @param group   群号，null 为不限
+     * @param sender  发送者 QQ，null 为不限
+     * @param from    最早时间戳（秒），null 为不限
+     * @param to      最晚时间戳（秒），null 为不限
+     * @param limit   最多返回的信息数
+     */
+    public ArchiveQuery(String keyword, Long group, Long sender, Long from, Long to, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit 必須大於 0");
+        }
+        this.keyword = keyword == null || keyword.isEmpty() ? null : keyword;
+        this.group = group;
+        this.sender = sender;
+        this.from = from != null ? from : Long.MIN_VALUE;
+        this.to = to != null ? to : Long.MAX_VALUE;
+        this.limit = limit;
+        this.needle = this.keyword != null ? this.keyword.toLowerCase(Locale.ROOT) : null;
+
+        long[] text = this.keyword != null ? Tokenizer.query(this.keyword) : new long[0];
+        int extra = (group != null ? 1 : 0) + (sender != null ? 1 : 0);
+        long[] all = new long[text.length + extra];
+        System.arraycopy(text, 0, all, 0, text.length);
+        int i = text.length;
+        if (group != null) {
+            all[i++] = Tokenizer.groupTerm(group);
+        }
+        if (sender != null) {
+            all[i] = Tokenizer.senderTerm(sender);
+        }
+        this.terms = all;
+    }
+
+    /**
+     * 检查信息的群号、发送者与时间
+     *
+     * @param time   时间戳（秒）
+     * @param group  群号
+     * @param sender 发送者 QQ
+     * @return       是否符合
+     */
+    boolean accept(long time, long group, long sender) {
+        return time >= from && time <= to
+                && (this.group == null || this.group == group)
+                && (this.sender == null || this.sender == sender);
+    }
+
+    /**
+     * 检查时间范围是否与查询重叠
+     *
+     * @param minTime 最早时间戳（秒）
+     * @param maxTime 最晚时间戳（秒）
+     * @return        是否重叠
+     */
+    boolean overlaps(long minTime, long maxTime) {
+        return minTime <= to && maxTime >= from;
+    }
+
+    /**
+     * 确认原文包含关键词
+     *
+     * @param text 原文
+     * @return     是否包含
+     */
+    boolean match(String text) {
+        return needle == null || text.toLowerCase(Locale.ROOT).contains(needle);
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.xiaoyi311.archive;
+
+/**
+ * 存档中的一条群信息
+ */
+public class ArchivedMessage {
+    /**
+     * 群号
+     */
+    public final long group;
+
+    /**
+     * 发送者 QQ
+     */
+    public final long sender;
+
+    /**
+     * 发送时间戳（秒）
+     */
+    public final long time;
+
+    /**
+     * 信息 ID，没有时为 null
+     */
+    public final Integer messageId;
+
+    /**
+     * 信息中的文本
+     */
+    public final String text;
+
+    /**
+     * 创建存档信息
+     *
+     * @param group     群号
+     * @param sender    发送者 QQ
+     * @param time      发送时间戳（秒）
+     * @param messageId 信息 ID
+     * @param text      信息中的文本
+     */
+    public ArchivedMessage(long group, long sender, long time, Integer messageId, String text) {
+        this.group = group;
+        this.sender = sender;
+        this.time = time;
+        this.messageId = messageId;
+        this.text = text;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + group + "/" + sender + " @" + time + "] " + text;
+    }
+}
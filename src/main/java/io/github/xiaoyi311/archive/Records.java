@@ -0,0 +1,62 @@
+package io.github.xiaoyi311.archive;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 存档数据文件中的记录<br>
+ * 每条记录为：长度（int，不含自身）、时间（long）、群号（long）、发送者（long）、信息 ID（int）、UTF-8 文本
+ */
+class Records {
+    /**
+     * 长度之后、文本之前的字节数
+     */
+    static final int FIXED = 28;
+
+    /**
+     * 没有信息 ID 时写入的值
+     */
+    private static final int NO_ID = Integer.MIN_VALUE;
+
+    private Records() {}
+
+    /**
+     * 编码一条记录
+     *
+     * @param time      时间戳（秒）
+     * @param group     群号
+     * @param sender    发送者 QQ
+     * @param messageId 信息 ID
+     * @param text      文本
+     * @return          记录，可直接写入
+     */
+    static ByteBuffer encode(long time, long group, long sender, Integer messageId, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + FIXED + bytes.length);
+        buffer.putInt(FIXED + bytes.length)
+                .putLong(time)
+                .putLong(group)
+                .putLong(sender)
+                .putInt(messageId != null ? messageId : NO_ID)
+                .put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 解码一条记录
+     *
+     * @param buffer 从记录的长度开始，解码后位置移到记录末尾
+     * @return       信息
+     */
+    static ArchivedMessage decode(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        long time = buffer.getLong();
+        long group = buffer.getLong();
+        long sender = buffer.getLong();
+        int id = buffer.getInt();
+        byte[] bytes = new byte[length - FIXED];
+        buffer.get(bytes);
+        return new ArchivedMessage(group, sender, time, id != NO_ID ? id : null, new String(bytes, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,341 @@
+package io.github.xiaoyi311.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 已封存的存档段<br>
+ * 数据文件与索引文件都以内存映射只读打开，查询不把索引读入堆内存，可以在多线程中同时查询
+ */
+public class Segment {
+    /**
+     * 段 ID
+     */
+    public final long id;
+
+    /**
+     * 数据文件
+     */
+    public final Path dataFile;
+
+    /**
+     * 索引文件
+     */
+    public final Path indexFile;
+
+    /**
+     * 数据文件映射
+     */
+    private final MappedByteBuffer data;
+
+    /**
+     * 索引文件映射
+     */
+    private final MappedByteBuffer index;
+
+    /**
+     * 信息数
+     */
+    private final int docCount;
+
+    /**
+     * 词数
+     */
+    private final int termCount;
+
+    /**
+     * 最早时间戳（秒）
+     */
+    private final long minTime;
+
+    /**
+     * 最晚时间戳（秒）
+     */
+    private final long maxTime;
+
+    /**
+     * 词典位置
+     */
+    private final int dictOffset;
+
+    /**
+     * 打开已封存的段
+     *
+     * @param id        段 ID
+     * @param dataFile  数据文件
+     * @param indexFile 索引文件
+     */
+    public Segment(long id, Path dataFile, Path indexFile) throws IOException {
+        this.id = id;
+        this.dataFile = dataFile;
+        this.indexFile = indexFile;
+        this.data = map(dataFile);
+        this.index = map(indexFile);
+        if (index.capacity() < SegmentWriter.HEADER || index.getInt(0) != SegmentWriter.MAGIC) {
+            throw new IOException("存檔段索引已損壞：" + indexFile);
+        }
+        this.docCount = index.getInt(4);
+        this.termCount = index.getInt(8);
+        this.minTime = index.getLong(16);
+        this.maxTime = index.getLong(24);
+        this.dictOffset = (int) index.getLong(32);
+    }
+
+    /**
+     * 获取信息数
+     *
+     * @return 信息数
+     */
+    public int getDocCount() {
+        return docCount;
+    }
+
+    /**
+     * 获取数据与索引文件的总大小
+     *
+     * @return 字节数
+     */
+    public long getSize() {
+        return (long) data.capacity() + index.capacity();
+    }
+
+    /**
+     * 合并相邻的段<br>
+     * 数据文件直接拼接，索引中的数据位置与信息序号加上前面段的偏移，词典按哈希归并，只需顺序读写
+     *
+     * @param parts     相邻的段，从旧到新
+     * @param dataFile  合并后的数据文件
+     * @param indexFile 合并后的索引文件
+     * @return          合并后的信息数
+     */
+    public static int merge(List<Segment> parts, Path dataFile, Path indexFile) throws IOException {
+        int k = parts.size();
+        long[] dataBase = new long[k];
+        int[] docBase = new int[k];
+        int docCount = 0;
+        try (FileChannel out = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            for (int i = 0; i < k; i++) {
+                dataBase[i] = position;
+                docBase[i] = docCount;
+                docCount += parts.get(i).docCount;
+                try (FileChannel in = FileChannel.open(parts.get(i).dataFile, StandardOpenOption.READ)) {
+                    long size = in.size();
+                    for (long done = 0; done < size; ) {
+                        done += in.transferTo(done, size - done, out);
+                    }
+                    position += size;
+                }
+            }
+            out.force(true);
+        }
+
+        try (SegmentWriter writer = new SegmentWriter(indexFile, docCount)) {
+            for (int i = 0; i < k; i++) {
+                Segment part = parts.get(i);
+                for (int doc = 0; doc < part.docCount; doc++) {
+                    writer.doc(part.docOffset(doc) + dataBase[i], part.docTime(doc), part.docGroup(doc), part.docSender(doc));
+                }
+            }
+
+            int[] cursor = new int[k];
+            while (true) {
+                //取各段当前最小的词
+                boolean found = false;
+                long hash = 0;
+                int count = 0;
+                for (int i = 0; i < k; i++) {
+                    Segment part = parts.get(i);
+                    if (cursor[i] >= part.termCount) {
+                        continue;
+                    }
+                    long h = part.termHash(cursor[i]);
+                    if (!found || h < hash) {
+                        found = true;
+                        hash = h;
+                        count = 0;
+                    }
+                    if (h == hash) {
+                        count += part.postingsCount(cursor[i]);
+                    }
+                }
+                if (!found) {
+                    break;
+                }
+
+                writer.term(hash, count);
+                for (int i = 0; i < k; i++) {
+                    Segment part = parts.get(i);
+                    if (cursor[i] < part.termCount && part.termHash(cursor[i]) == hash) {
+                        int pos = part.postingsPos(cursor[i]);
+                        int n = part.postingsCount(cursor[i]);
+                        for (int j = 0; j < n; j++) {
+                            writer.posting(part.index.getInt(pos + j * 4) + docBase[i]);
+                        }
+                        cursor[i]++;
+                    }
+                }
+            }
+            writer.finish();
+        }
+        return docCount;
+    }
+
+    /**
+     * 按写入顺序从新到旧查询
+     *
+     * @param query 查询
+     * @param out   结果，达到查询的数量上限时停止
+     */
+    public void search(ArchiveQuery query, List<ArchivedMessage> out) {
+        if (docCount == 0 || !query.overlaps(minTime, maxTime)) {
+            return;
+        }
+
+        long[] terms = query.terms;
+        if (terms.length == 0) {
+            for (int doc = docCount - 1; doc >= 0 && out.size() < query.limit; doc--) {
+                collect(query, doc, out);
+            }
+            return;
+        }
+
+        //从信息最少的词开始，逐个确认其他词也出现在同一信息中
+        int[] entries = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            entries[i] = find(terms[i]);
+            if (entries[i] < 0) {
+                return;
+            }
+        }
+        int lead = 0;
+        for (int i = 1; i < entries.length; i++) {
+            if (postingsCount(entries[i]) < postingsCount(entries[lead])) {
+                lead = i;
+            }
+        }
+
+        int leadPos = postingsPos(entries[lead]);
+        for (int j = postingsCount(entries[lead]) - 1; j >= 0 && out.size() < query.limit; j--) {
+            int doc = index.getInt(leadPos + j * 4);
+            boolean all = true;
+            for (int i = 0; i < entries.length && all; i++) {
+                all = i == lead || contains(entries[i], doc);
+            }
+            if (all) {
+                collect(query, doc, out);
+            }
+        }
+    }
+
+    /**
+     * 检查信息的列数据与原文，符合时加入结果
+     */
+    private void collect(ArchiveQuery query, int doc, List<ArchivedMessage> out) {
+        if (!query.accept(docTime(doc), docGroup(doc), docSender(doc))) {
+            return;
+        }
+        ArchivedMessage message = read(docOffset(doc));
+        if (query.match(message.text)) {
+            out.add(message);
+        }
+    }
+
+    /**
+     * 在词典中二分查找词
+     *
+     * @param hash 词的哈希
+     * @return     词的序号，不存在时为 -1
+     */
+    private int find(long hash) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compare(termHash(mid), hash);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在词的倒排表中二分查找信息
+     */
+    private boolean contains(int entry, int doc) {
+        int pos = postingsPos(entry);
+        int low = 0;
+        int high = postingsCount(entry) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = index.getInt(pos + mid * 4);
+            if (value < doc) {
+                low = mid + 1;
+            } else if (value > doc) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long termHash(int entry) {
+        return index.getLong(dictOffset + entry * SegmentWriter.TERM);
+    }
+
+    private int postingsPos(int entry) {
+        return index.getInt(dictOffset + entry * SegmentWriter.TERM + 8);
+    }
+
+    private int postingsCount(int entry) {
+        return index.getInt(dictOffset + entry * SegmentWriter.TERM + 12);
+    }
+
+    private long docOffset(int doc) {
+        return index.getLong(SegmentWriter.HEADER + doc * SegmentWriter.DOC);
+    }
+
+    private long docTime(int doc) {
+        return index.getLong(SegmentWriter.HEADER + doc * SegmentWriter.DOC + 8);
+    }
+
+    private long docGroup(int doc) {
+        return index.getLong(SegmentWriter.HEADER + doc * SegmentWriter.DOC + 16);
+    }
+
+    private long docSender(int doc) {
+        return index.getLong(SegmentWriter.HEADER + doc * SegmentWriter.DOC + 24);
+    }
+
+    /**
+     * 读取数据文件中的记录
+     *
+     * @param offset 记录位置
+     * @return       信息
+     */
+    private ArchivedMessage read(long offset) {
+        ByteBuffer buffer = data.duplicate();
+        buffer.position((int) offset);
+        return Records.decode(buffer);
+    }
+
+    /**
+     * 以只读内存映射打开文件
+     */
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package io.github.xiaoyi311.archive;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 段索引写入器<br>
+ * 依次写入所有信息的列数据，再按哈希从小到大写入每个词与其出现的信息序号。
+ * 词典先写入临时文件，结束时接在倒排表之后，只需顺序写入，不在内存中保存整个词典
+ */
+class SegmentWriter implements Closeable {
+    /**
+     * 文件标识
+     */
+    static final int MAGIC = 0x4D484131;
+
+    /**
+     * 文件头大小：标识、信息数、词数、保留（int），最早时间、最晚时间、词典位置（long）
+     */
+    static final int HEADER = 40;
+
+    /**
+     * 每条信息的列数据大小：数据文件位置、时间、群号、发送者（long）
+     */
+    static final int DOC = 32;
+
+    /**
+     * 每个词在词典中的大小：哈希（long）、倒排表位置、信息数（int）
+     */
+    static final int TERM = 16;
+
+    /**
+     * 索引文件
+     */
+    private final Path file;
+
+    /**
+     * 词典临时文件
+     */
+    private final Path dictFile;
+
+    /**
+     * 索引文件输出
+     */
+    private final DataOutputStream out;
+
+    /**
+     * 词典输出
+     */
+    private final DataOutputStream dict;
+
+    /**
+     * 信息数
+     */
+    private final int docCount;
+
+    /**
+     * 已写入的信息数
+     */
+    private int docs = 0;
+
+    /**
+     * 已写入的词数
+     */
+    private int terms = 0;
+
+    /**
+     * 当前词剩余的信息数
+     */
+    private int remaining = 0;
+
+    /**
+     * 上一个词的哈希
+     */
+    private long lastTerm;
+
+    /**
+     * 索引文件已写入的字节数
+     */
+    private long position = HEADER;
+
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+
+    /**
+     * 创建写入器
+     *
+     * @param file     索引文件，已存在时覆盖
+     * @param docCount 信息数
+     */
+    SegmentWriter(Path file, int docCount) throws IOException {
+        this.file = file;
+        this.dictFile = file.resolveSibling(file.getFileName() + ".dict.tmp");
+        this.docCount = docCount;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        this.dict = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dictFile), 64 * 1024));
+        out.write(new byte[HEADER]);
+    }
+
+    /**
+     * 写入一条信息的列数据，需按信息序号顺序在所有词之前写入
+     *
+     * @param offset 记录在数据文件中的位置
+     * @param time   时间戳（秒）
+     * @param group  群号
+     * @param sender 发送者 QQ
+     */
+    void doc(long offset, long time, long group, long sender) throws IOException {
+        out.writeLong(offset);
+        out.writeLong(time);
+        out.writeLong(group);
+        out.writeLong(sender);
+        position += DOC;
+        docs++;
+        minTime = Math.min(minTime, time);
+        maxTime = Math.max(maxTime, time);
+    }
+
+    /**
+     * 开始写入一个词，之后需写入 count 个信息序号
+     *
+     * @param hash  词的哈希，需比上一个词大
+     * @param count 出现的信息数
+     */
+    void term(long hash, int count) throws IOException {
+        if (docs != docCount || remaining != 0 || (terms > 0 && hash <= lastTerm)) {
+            throw new IllegalStateException("段索引寫入順序錯誤");
+        }
+        dict.writeLong(hash);
+        dict.writeInt(checkPosition(position));
+        dict.writeInt(count);
+        lastTerm = hash;
+        remaining = count;
+        terms++;
+    }
+
+    /**
+     * 写入当前词出现的一个信息序号，需从小到大
+     *
+     * @param doc 信息序号
+     */
+    void posting(int doc) throws IOException {
+        out.writeInt(doc);
+        position += 4;
+        remaining--;
+    }
+
+    /**
+     * 写入词典与文件头，并同步到磁盘
+     */
+    void finish() throws IOException {
+        long dictOffset = position;
+        checkPosition(dictOffset + (long) terms * TERM);
+        out.close();
+        dict.close();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+             FileChannel source = FileChannel.open(dictFile, StandardOpenOption.READ)) {
+            long size = source.size();
+            for (long done = 0; done < size; ) {
+                done += channel.transferFrom(source, dictOffset + done, size - done);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(docCount).putInt(terms).putInt(0)
+                    .putLong(minTime).putLong(maxTime).putLong(dictOffset);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.deleteIfExists(dictFile);
+    }
+
+    /**
+     * 关闭写入器，未完成时删除临时文件
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+        dict.close();
+        Files.deleteIfExists(dictFile);
+    }
+
+    /**
+     * 检查位置是否能以 int 保存
+     *
+     * @param position 位置
+     * @return         位置
+     */
+    private static int checkPosition(long position) throws IOException {
+        if (position > Integer.MAX_VALUE) {
+            throw new IOException("段索引超過 2GB");
+        }
+        return (int) position;
+    }
+}
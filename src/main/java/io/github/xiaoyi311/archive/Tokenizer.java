@@ -0,0 +1,158 @@
+package io.github.xiaoyi311.archive;
+
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+/**
+ * 存档分词器<br>
+ * 英文、数字等按整词切分并转为小写；中日韩文字没有空格分词，按单字与相邻两字切分。
+ * 词以 64 位哈希表示，索引中不保存原文
+ */
+public class Tokenizer {
+    /**
+     * 文本词的哈希种子
+     */
+    private static final long TEXT_SEED = 0xcbf29ce484222325L;
+
+    /**
+     * 群号词的哈希种子
+     */
+    private static final long GROUP_SEED = 0x9e3779b97f4a7c15L;
+
+    /**
+     * 发送者词的哈希种子
+     */
+    private static final long SENDER_SEED = 0xc2b2ae3d27d4eb4fL;
+
+    private Tokenizer() {}
+
+    /**
+     * 切分建立索引用的词<br>
+     * 中日韩文字同时输出单字与相邻两字，同一个词可能输出多次
+     *
+     * @param text 文本
+     * @param sink 接收词的哈希
+     */
+    public static void index(String text, LongConsumer sink) {
+        tokenize(text, sink, true);
+    }
+
+    /**
+     * 切分查询用的词<br>
+     * 中日韩文字连续两字以上时只用相邻两字，只有一个字时用单字
+     *
+     * @param text 查询文本
+     * @return     去重后的词的哈希
+     */
+    public static long[] query(String text) {
+        LongStream.Builder terms = LongStream.builder();
+        tokenize(text, terms::add, false);
+        return terms.build().sorted().distinct().toArray();
+    }
+
+    /**
+     * 获取群号对应的词
+     *
+     * @param group 群号
+     * @return      词的哈希
+     */
+    public static long groupTerm(long group) {
+        return finish(GROUP_SEED ^ group);
+    }
+
+    /**
+     * 获取发送者对应的词
+     *
+     * @param sender 发送者 QQ
+     * @return       词的哈希
+     */
+    public static long senderTerm(long sender) {
+        return finish(SENDER_SEED ^ sender);
+    }
+
+    /**
+     * 切分文本
+     *
+     * @param text  文本
+     * @param sink  接收词的哈希
+     * @param index 是否为建立索引
+     */
+    private static void tokenize(String text, LongConsumer sink, boolean index) {
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            int cp = text.codePointAt(i);
+            if (isCjk(cp)) {
+                int start = i;
+                int length = 0;
+                while (i < n) {
+                    int c = text.codePointAt(i);
+                    if (!isCjk(c)) {
+                        break;
+                    }
+                    i += Character.charCount(c);
+                    length++;
+                }
+
+                int prev = -1;
+                for (int j = start; j < i; ) {
+                    int c = text.codePointAt(j);
+                    j += Character.charCount(c);
+                    if (index || length == 1) {
+                        sink.accept(finish(mix(TEXT_SEED, c)));
+                    }
+                    if (prev >= 0) {
+                        sink.accept(finish(mix(mix(TEXT_SEED, prev), c)));
+                    }
+                    prev = c;
+                }
+            } else if (Character.isLetterOrDigit(cp)) {
+                long h = TEXT_SEED;
+                while (i < n) {
+                    int c = text.codePointAt(i);
+                    if (!Character.isLetterOrDigit(c) || isCjk(c)) {
+                        break;
+                    }
+                    h = mix(h, Character.toLowerCase(c));
+                    i += Character.charCount(c);
+                }
+                sink.accept(finish(h));
+            } else {
+                i += Character.charCount(cp);
+            }
+        }
+    }
+
+    /**
+     * 是否为按字切分的中日韩文字
+     *
+     * @param cp 码位
+     * @return   是否为中日韩文字
+     */
+    private static boolean isCjk(int cp) {
+        if (cp < 0x2E80) {
+            return false;
+        }
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * FNV-1a 加入一个码位
+     */
+    private static long mix(long h, int cp) {
+        return (h ^ cp) * 0x100000001b3L;
+    }
+
+    /**
+     * SplitMix64 收尾，使哈希分布均匀
+     */
+    private static long finish(long h) {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
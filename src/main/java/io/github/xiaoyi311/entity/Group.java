@@ -1,5 +1,7 @@
 package io.github.xiaoyi311.entity;
 
+import com.alibaba.fastjson.JSONObject;
+
 /**
  * 群实体类
  */
@@ -18,4 +20,42 @@ public class Group {
      * 机器人在群里的权限
      */
     public Permission permission;
+
+    /**
+     * 由数据信息获取
+     *
+     * @param data 数据信息
+     * @return     群
+     */
+    public static Group fromJSONObject(JSONObject data) {
+        return fromJSONObject(data, null);
+    }
+
+    /**
+     * 由数据信息获取，并复用已有的实体
+     *
+     * @param data  数据信息
+     * @param reuse 复用的群，为 null 时新建
+     * @return      群
+     */
+    public static Group fromJSONObject(JSONObject data, Group reuse) {
+        Group group = reuse != null ? reuse : new Group();
+        group.id = data.getLong("id");
+        group.groupName = data.getString("name");
+        group.permission = Permission.valueOf(data.getString("permission"));
+        return group;
+    }
+
+    /**
+     * 复制群信息
+     *
+     * @return 新的群实体
+     */
+    public Group copy() {
+        Group group = new Group();
+        group.id = id;
+        group.groupName = groupName;
+        group.permission = permission;
+        return group;
+    }
 }
@@ -1,5 +1,7 @@
 package io.github.xiaoyi311.entity;
 
+import com.alibaba.fastjson.JSONObject;
+
 /**
  * 群成员实体类
  */
@@ -7,7 +9,7 @@ public class Member {
     /**
      * QQ 号
      */
-    public Integer qq;
+    public Long qq;
 
     /**
      * 群名称
@@ -38,4 +40,54 @@ public class Member {
      * 所在的群
      */
     public Group group;
+
+    /**
+     * 由数据信息获取<br>
+     * 包含所在的群
+     *
+     * @param data 数据信息
+     * @return     群成员
+     */
+    public static Member fromJSONObject(JSONObject data) {
+        return fromJSONObject(data, null);
+    }
+
+    /**
+     * 由数据信息获取，并复用已有的实体<br>
+     * 所在的群也会复用
+     *
+     * @param data  数据信息
+     * @param reuse 复用的群成员，为 null 时新建
+     * @return      群成员
+     */
+    public static Member fromJSONObject(JSONObject data, Member reuse) {
+        Member member = reuse != null ? reuse : new Member();
+        member.qq = data.getLong("id");
+        member.memberName = data.getString("memberName");
+        member.permission = Permission.valueOf(data.getString("permission"));
+        member.joinTime = data.getInteger("joinTimestamp");
+        member.lastSpeckTime = data.getInteger("lastSpeakTimestamp");
+        member.muteTimeRemaining = data.getInteger("muteTimeRemaining");
+        JSONObject group = data.getJSONObject("group");
+        member.group = group != null ? Group.fromJSONObject(group, member.group) : null;
+        return member;
+    }
+
+    /**
+     * 复制群成员信息<br>
+     * 所在的群也会复制
+     *
+     * @return 新的群成员实体
+     */
+    public Member copy() {
+        Member member = new Member();
+        member.qq = qq;
+        member.memberName = memberName;
+        member.permission = permission;
+        member.joinTime = joinTime;
+        member.lastSpeckTime = lastSpeckTime;
+        member.muteTimeRemaining = muteTimeRemaining;
+        member.group = group != null ? group.copy() : null;
+        return member;
+    }
 }
@@ -0,0 +1,105 @@
+package io.github.xiaoyi311.entity.message;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mirai 信息: @群成员<br>
+ * 不可变，同一目标共用一个实例，通过 {@link #of(long)} 获取
+ */
+public class At extends MessageChain {
+    /**
+     * 共用实例最多保存的目标数
+     */
+    private static final int CACHE_SIZE = 4096;
+
+    /**
+     * 目标 QQ 与共用实例
+     */
+    private static final Map<Long, At> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 被 @ 的群成员 QQ
+     */
+    public final long target;
+
+    /**
+     * 预先序列化的 JSON 信息
+     */
+    private final String json;
+
+    /**
+     * 创建 @群成员
+     *
+     * @param target 群成员 QQ
+     */
+    private At(long target){
+        this.target = target;
+        this.json = "{\"type\":\"At\",\"target\":" + target + "}";
+    }
+
+    /**
+     * 获取 @群成员<br>
+     * 共用实例已满时不再缓存，直接创建
+     *
+     * @param target 群成员 QQ
+     * @return       @群成员
+     */
+    public static At of(long target){
+        At at = cache.get(target);
+        if (at != null){
+            return at;
+        }
+        if (cache.size() >= CACHE_SIZE){
+            return new At(target);
+        }
+        return cache.computeIfAbsent(target, At::new);
+    }
+
+    /**
+     * 由数据信息获取<br>
+     * 不保存 display，发送时 Mirai 也不使用
+     *
+     * @param data 数据信息
+     * @return     @群成员
+     */
+    public static At fromJSONObject(JSONObject data){
+        return of(data.getLongValue("target"));
+    }
+
+    /**
+     * 将信息传为 Mirai 码
+     *
+     * @return Mirai 码
+     */
+    @Override
+    public String toMiraiString() {
+        return "[mirai:at:" + target + "]";
+    }
+
+    /**
+     * 将信息传为 JSON 信息
+     *
+     * @return JSON 信息
+     */
+    @Override
+    public JSONObject toJSONObject() {
+        JSONObject data = new JSONObject();
+        data.put("type", "At");
+        data.put("target", target);
+
+        return data;
+    }
+
+    /**
+     * 将信息传为 JSON 字符串
+     *
+     * @return JSON 字符串
+     */
+    @Override
+    public String toJSONString() {
+        return json;
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.xiaoyi311.entity.message;
+
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * Mirai 信息: @全体成员<br>
+ * 只有一个实例 {@link #INSTANCE}
+ */
+public class AtAll extends MessageChain {
+    /**
+     * 唯一实例
+     */
+    public static final AtAll INSTANCE = new AtAll();
+
+    private AtAll(){ }
+
+    /**
+     * 将信息传为 Mirai 码
+     *
+     * @return Mirai 码
+     */
+    @Override
+    public String toMiraiString() {
+        return "[mirai:atall]";
+    }
+
+    /**
+     * 将信息传为 JSON 信息
+     *
+     * @return JSON 信息
+     */
+    @Override
+    public JSONObject toJSONObject() {
+        JSONObject data = new JSONObject();
+        data.put("type", "AtAll");
+
+        return data;
+    }
+
+    /**
+     * 将信息传为 JSON 字符串
+     *
+     * @return JSON 字符串
+     */
+    @Override
+    public String toJSONString() {
+        return "{\"type\":\"AtAll\"}";
+    }
+}
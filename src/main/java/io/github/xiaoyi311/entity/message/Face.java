@@ -0,0 +1,132 @@
+package io.github.xiaoyi311.entity.message;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Mirai 信息: QQ 表情<br>
+ * 不可变，同一表情共用一个实例，通过 {@link #of(int)} 获取
+ */
+public class Face extends MessageChain {
+    /**
+     * 共用实例覆盖的表情 ID 范围
+     */
+    private static final int CACHE_SIZE = 512;
+
+    /**
+     * 表情 ID 与共用实例
+     */
+    private static final AtomicReferenceArray<Face> cache = new AtomicReferenceArray<>(CACHE_SIZE);
+
+    /**
+     * 表情 ID
+     */
+    public final int faceId;
+
+    /**
+     * 表情名称，可能为 null
+     */
+    public final String name;
+
+    /**
+     * 预先序列化的 JSON 信息
+     */
+    private final String json;
+
+    /**
+     * 创建表情
+     *
+     * @param faceId 表情 ID
+     * @param name   表情名称
+     */
+    private Face(int faceId, String name){
+        this.faceId = faceId;
+        this.name = name;
+        this.json = name == null
+                ? "{\"type\":\"Face\",\"faceId\":" + faceId + "}"
+                : "{\"type\":\"Face\",\"faceId\":" + faceId + ",\"name\":" + JSON.toJSONString(name) + "}";
+    }
+
+    /**
+     * 获取表情
+     *
+     * @param faceId 表情 ID
+     * @return       表情
+     */
+    public static Face of(int faceId){
+        return of(faceId, null);
+    }
+
+    /**
+     * 获取表情<br>
+     * 表情名称由 ID 决定，共用实例保留第一次获取时的名称
+     *
+     * @param faceId 表情 ID
+     * @param name   表情名称
+     * @return       表情
+     */
+    public static Face of(int faceId, String name){
+        if (faceId < 0 || faceId >= CACHE_SIZE){
+            return new Face(faceId, name);
+        }
+
+        Face face = cache.get(faceId);
+        if (face == null || (face.name == null && name != null)){
+            Face created = new Face(faceId, name);
+            if (cache.compareAndSet(faceId, face, created)){
+                return created;
+            }
+            face = cache.get(faceId);
+        }
+        return face;
+    }
+
+    /**
+     * 由数据信息获取
+     *
+     * @param data 数据信息
+     * @return     表情
+     */
+    public static Face fromJSONObject(JSONObject data){
+        return of(data.getIntValue("faceId"), data.getString("name"));
+    }
+
+    /**
+     * 将信息传为 Mirai 码
+     *
+     * @return Mirai 码
+     */
+    @Override
+    public String toMiraiString() {
+        return "[mirai:face:" + faceId + "]";
+    }
+
+    /**
+     * 将信息传为 JSON 信息
+     *
+     * @return JSON 信息
+     */
+    @Override
+    public JSONObject toJSONObject() {
+        JSONObject data = new JSONObject();
+        data.put("type", "Face");
+        data.put("faceId", faceId);
+        if (name != null) {
+            data.put("name", name);
+        }
+
+        return data;
+    }
+
+    /**
+     * 将信息传为 JSON 字符串
+     *
+     * @return JSON 字符串
+     */
+    @Override
+    public String toJSONString() {
+        return json;
+    }
+}
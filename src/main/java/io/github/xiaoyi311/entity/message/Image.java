@@ -0,0 +1,65 @@
+package io.github.xiaoyi311.entity.message;
+
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * Mirai 信息: 图片
+ */
+public class Image extends MessageChain {
+    /**
+     * 图片 ID，由上传图片获得
+     */
+    public String imageId;
+
+    /**
+     * 图片地址
+     */
+    public String url;
+
+    /**
+     * 由图片 ID 获取
+     *
+     * @param imageId 图片 ID
+     */
+    public Image(String imageId){
+        this.imageId = imageId;
+    }
+
+    /**
+     * 由数据信息获取
+     *
+     * @param data 数据信息
+     */
+    public Image(JSONObject data){
+        this.imageId = data.getString("imageId");
+        this.url = data.getString("url");
+    }
+
+    /**
+     * 将信息传为 Mirai 码
+     *
+     * @return Mirai 码
+     */
+    @Override
+    public String toMiraiString() {
+        return "[mirai:image:" + imageId + "]";
+    }
+
+    /**
+     * 将信息传为 JSON 信息
+     *
+     * @return JSON 信息
+     */
+    @Override
+    public JSONObject toJSONObject() {
+        JSONObject data = new JSONObject();
+        data.put("type", "Image");
+        if (imageId != null) {
+            data.put("imageId", imageId);
+        } else {
+            data.put("url", url);
+        }
+
+        return data;
+    }
+}
@@ -3,9 +3,7 @@ package io.github.xiaoyi311.entity.message;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 
-import java.lang.reflect.Constructor;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * 消息链基类
@@ -18,17 +16,73 @@ public class MessageChain {
      * @return          信息链
      */
     public static MessageChain[] getMessageChain(JSONArray dataArray){
-        List<MessageChain> ret = new ArrayList<>();
-        dataArray.forEach((data) -> {
-            try {
-                Constructor<?> messageConst = Class.forName(
-                        "io.github.xiaoyi311.entity.message."
-                                + ((JSONObject) data).getString("type")
-                ).getConstructor(JSONObject.class);
-                ret.add((MessageChain) messageConst.newInstance(data));
-            } catch (Exception ignored) { }
-        });
-        return ret.toArray(new MessageChain[0]);
+        return getMessageChain(dataArray, 0);
+    }
+
+    /**
+     * 从指定位置开始获取信息链<br>
+     * 不支持的信息类型会被跳过
+     *
+     * @param dataArray 信息链数据
+     * @param from      开始位置
+     * @return          信息链
+     */
+    public static MessageChain[] getMessageChain(JSONArray dataArray, int from){
+        MessageChain[] ret = new MessageChain[Math.max(dataArray.size() - from, 0)];
+        int count = 0;
+        for (int i = from; i < dataArray.size(); i++) {
+            MessageChain message = fromJSONObject(dataArray.getJSONObject(i));
+            if (message != null){
+                ret[count++] = message;
+            }
+        }
+        return count == ret.length ? ret : Arrays.copyOf(ret, count);
+    }
+
+    /**
+     * 由数据信息获取单个信息<br>
+     * 不可变的信息返回共用实例
+     *
+     * @param data 数据信息
+     * @return     信息，不支持的类型为 null
+     */
+    public static MessageChain fromJSONObject(JSONObject data){
+        String type = data.getString("type");
+        if (type == null){
+            return null;
+        }
+
+        switch (type) {
+            case "Plain":
+                return new Plain(data);
+            case "At":
+                return At.fromJSONObject(data);
+            case "AtAll":
+                return AtAll.INSTANCE;
+            case "Face":
+                return Face.fromJSONObject(data);
+            case "Image":
+                return new Image(data);
+            case "Quote":
+                return new Quote(data);
+            case "Source":
+                return new Source(data);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 预热<br>
+     * 提前加载所有已支持的信息类
+     */
+    public static void warmUp(){
+        fromJSONObject(JSONObject.parseObject("{\"type\":\"Plain\",\"text\":\"\"}"));
+        fromJSONObject(JSONObject.parseObject("{\"type\":\"Image\"}"));
+        fromJSONObject(JSONObject.parseObject("{\"type\":\"Quote\",\"origin\":[{\"type\":\"AtAll\"}]}"));
+        fromJSONObject(JSONObject.parseObject("{\"type\":\"Source\"}"));
+        At.of(0).toJSONString();
+        Face.of(0).toJSONString();
     }
 
     /**
@@ -45,6 +99,23 @@ public class MessageChain {
         return ret.toString();
     }
 
+    /**
+     * 获取 MessageChain 数组中的纯文本内容<br>
+     * 只连接普通文本，忽略其他类型的信息
+     *
+     * @param chains 信息数据
+     * @return       纯文本
+     */
+    public static String toPlainText(MessageChain[] chains) {
+        StringBuilder ret = new StringBuilder();
+        for (MessageChain chain : chains) {
+            if (chain instanceof Plain) {
+                ret.append(((Plain) chain).msg);
+            }
+        }
+        return ret.toString();
+    }
+
     /**
      * 将 MessageChain 数组转化为 JSON 数组
      *
@@ -59,6 +130,24 @@ public class MessageChain {
         return ret;
     }
 
+    /**
+     * 将 MessageChain 数组转化为 JSON 字符串<br>
+     * 直接连接各信息的 JSON 字符串，不可变的信息使用预先序列化的结果
+     *
+     * @param chains  信息数据
+     * @return        转化后的 JSON 字符串
+     */
+    public static String toJSONString(MessageChain[] chains) {
+        StringBuilder ret = new StringBuilder(chains.length * 32 + 2).append('[');
+        for (int i = 0; i < chains.length; i++) {
+            if (i > 0) {
+                ret.append(',');
+            }
+            ret.append(chains[i].toJSONString());
+        }
+        return ret.append(']').toString();
+    }
+
     /**
      * 将 MessageChain 传为 Mirai 码<br>
      * 此处为空，等待子类重写
@@ -74,4 +163,12 @@ public class MessageChain {
      * @return JSON 信息
      */
     public JSONObject toJSONObject() { return new JSONObject(); }
+
+    /**
+     * 将 MessageChain 传为 JSON 字符串<br>
+     * 默认序列化 {@link #toJSONObject()} 的结果，子类可以返回预先序列化的字符串
+     *
+     * @return JSON 字符串
+     */
+    public String toJSONString() { return toJSONObject().toJSONString(); }
 }
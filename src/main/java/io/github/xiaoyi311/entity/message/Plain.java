@@ -1,5 +1,6 @@
 package io.github.xiaoyi311.entity.message;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 
 /**
@@ -52,4 +53,14 @@ public class Plain extends MessageChain {
 
         return data;
     }
+
+    /**
+     * 将信息传为 JSON 字符串
+     *
+     * @return JSON 字符串
+     */
+    @Override
+    public String toJSONString() {
+        return "{\"type\":\"Plain\",\"text\":" + JSON.toJSONString(msg) + "}";
+    }
 }
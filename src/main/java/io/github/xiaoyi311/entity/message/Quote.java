@@ -0,0 +1,128 @@
+package io.github.xiaoyi311.entity.message;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * Mirai 信息: 回复引用
+ */
+public class Quote extends MessageChain {
+    /**
+     * 被引用信息的 ID
+     */
+    public final int id;
+
+    /**
+     * 被引用信息所在群，好友信息时为 0
+     */
+    public final long groupId;
+
+    /**
+     * 被引用信息的发送者
+     */
+    public final long senderId;
+
+    /**
+     * 被引用信息的接收者
+     */
+    public final long targetId;
+
+    /**
+     * 被引用信息的信息链
+     */
+    public final MessageChain[] origin;
+
+    /**
+     * 预先序列化的 JSON 信息，首次使用时生成
+     */
+    private volatile String json;
+
+    /**
+     * 创建回复引用
+     *
+     * @param id       被引用信息的 ID
+     * @param groupId  被引用信息所在群
+     * @param senderId 被引用信息的发送者
+     * @param targetId 被引用信息的接收者
+     * @param origin   被引用信息的信息链
+     */
+    public Quote(int id, long groupId, long senderId, long targetId, MessageChain[] origin){
+        this.id = id;
+        this.groupId = groupId;
+        this.senderId = senderId;
+        this.targetId = targetId;
+        this.origin = origin;
+    }
+
+    /**
+     * 由数据信息获取
+     *
+     * @param data 数据信息
+     */
+    public Quote(JSONObject data){
+        this(
+                data.getIntValue("id"),
+                data.getLongValue("groupId"),
+                data.getLongValue("senderId"),
+                data.getLongValue("targetId"),
+                getOrigin(data.getJSONArray("origin"))
+        );
+    }
+
+    /**
+     * 获取被引用信息的信息链
+     *
+     * @param origin 信息链数据
+     * @return       信息链
+     */
+    private static MessageChain[] getOrigin(JSONArray origin){
+        return origin == null ? new MessageChain[0] : MessageChain.getMessageChain(origin);
+    }
+
+    /**
+     * 将信息传为 Mirai 码
+     *
+     * @return Mirai 码
+     */
+    @Override
+    public String toMiraiString() {
+        return "[mirai:quote:" + id + "]";
+    }
+
+    /**
+     * 将信息传为 JSON 信息
+     *
+     * @return JSON 信息
+     */
+    @Override
+    public JSONObject toJSONObject() {
+        JSONObject data = new JSONObject();
+        data.put("type", "Quote");
+        data.put("id", id);
+        data.put("groupId", groupId);
+        data.put("senderId", senderId);
+        data.put("targetId", targetId);
+        data.put("origin", MessageChain.toJSONObject(origin));
+
+        return data;
+    }
+
+    /**
+     * 将信息传为 JSON 字符串
+     *
+     * @return JSON 字符串
+     */
+    @Override
+    public String toJSONString() {
+        String ret = json;
+        if (ret == null) {
+            ret = "{\"type\":\"Quote\",\"id\":" + id
+                    + ",\"groupId\":" + groupId
+                    + ",\"senderId\":" + senderId
+                    + ",\"targetId\":" + targetId
+                    + ",\"origin\":" + MessageChain.toJSONString(origin) + "}";
+            json = ret;
+        }
+        return ret;
+    }
+}
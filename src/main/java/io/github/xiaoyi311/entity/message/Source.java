@@ -0,0 +1,70 @@
+package io.github.xiaoyi311.entity.message;
+
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * Mirai 信息: 信息来源<br>
+ * 位于收到的信息链第一个，记录信息 ID 与发送时间
+ */
+public class Source extends MessageChain {
+    /**
+     * 信息 ID
+     */
+    public final int id;
+
+    /**
+     * 发送时间戳
+     */
+    public final int time;
+
+    /**
+     * 预先序列化的 JSON 信息
+     */
+    private final String json;
+
+    /**
+     * 创建信息来源
+     *
+     * @param id   信息 ID
+     * @param time 发送时间戳
+     */
+    public Source(int id, int time){
+        this.id = id;
+        this.time = time;
+        this.json = "{\"type\":\"Source\",\"id\":" + id + ",\"time\":" + time + "}";
+    }
+
+    /**
+     * 由数据信息获取
+     *
+     * @param data 数据信息
+     */
+    public Source(JSONObject data){
+        this(data.getIntValue("id"), data.getIntValue("time"));
+    }
+
+    /**
+     * 将信息传为 JSON 信息
+     *
+     * @return JSON 信息
+     */
+    @Override
+    public JSONObject toJSONObject() {
+        JSONObject data = new JSONObject();
+        data.put("type", "Source");
+        data.put("id", id);
+        data.put("time", time);
+
+        return data;
+    }
+
+    /**
+     * 将信息传为 JSON 字符串
+     *
+     * @return JSON 字符串
+     */
+    @Override
+    public String toJSONString() {
+        return json;
+    }
+}
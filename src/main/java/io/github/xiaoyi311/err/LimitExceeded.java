@@ -0,0 +1,15 @@
+package io.github.xiaoyi311.err;
+
+/**
+ * 并发请求数已达上限，且在等待时间内没有空位
+ */
+public class LimitExceeded extends RuntimeException {
+    /**
+     * 创建异常
+     *
+     * @param limit 当前并发上限
+     */
+    public LimitExceeded(int limit){
+        super("並發請求數已達上限 " + limit + "！");
+    }
+}
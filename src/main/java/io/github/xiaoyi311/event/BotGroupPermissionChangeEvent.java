@@ -0,0 +1,59 @@
+package io.github.xiaoyi311.event;
+
+import com.alibaba.fastjson.JSONObject;
+import io.github.xiaoyi311.MiraiHttpConn;
+import io.github.xiaoyi311.entity.Group;
+import io.github.xiaoyi311.entity.Permission;
+
+/**
+ * MiraiHttp 机器人在群里的权限改变事件
+ */
+public class BotGroupPermissionChangeEvent extends MiraiEventBase {
+    /**
+     * 原权限
+     */
+    public Permission origin;
+
+    /**
+     * 现权限
+     */
+    public Permission current;
+
+    /**
+     * 权限改变的群
+     */
+    public Group group;
+
+    /**
+     * 触发事件
+     *
+     * @param listener 监听类
+     */
+    @Override
+    public void onEvent(MiraiEventListener listener) {
+        listener.onBotGroupPermissionChange(this);
+    }
+
+    /**
+     * 获取事件所属的群号
+     *
+     * @return 群号
+     */
+    @Override
+    public Long getGroupId() {
+        return group.id;
+    }
+
+    /**
+     * 创建事件
+     *
+     * @param conn Mirai 连接
+     * @param data 事件数据
+     */
+    public BotGroupPermissionChangeEvent(MiraiHttpConn conn, JSONObject data){
+        super(conn);
+        origin = Permission.valueOf(data.getString("origin"));
+        current = Permission.valueOf(data.getString("current"));
+        group = Group.fromJSONObject(data.getJSONObject("group"));
+    }
+}
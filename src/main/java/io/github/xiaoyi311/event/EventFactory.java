@@ -0,0 +1,122 @@
+package io.github.xiaoyi311.event;
+
+import com.alibaba.fastjson.JSONObject;
+import io.github.xiaoyi311.MiraiHttpConn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Constructor;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MiraiHttp 事件工厂<br>
+ * 将 Mirai 返回的原始事件数据解码为事件，事件类的构造器查找一次后缓存
+ */
+public class EventFactory {
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.EventFactory");
+
+    /**
+     * 已支持的事件类名
+     */
+    private static final String[] KNOWN_EVENTS = {
+            "GroupMessageEvent",
+            "MemberJoinEvent",
+            "MemberLeaveEventQuit",
+            "MemberLeaveEventKick",
+            "MemberPermissionChangeEvent",
+            "BotGroupPermissionChangeEvent"
+    };
+
+    /**
+     * 事件类名与构造器对应表，不支持的事件为空
+     */
+    private static final Map<String, Optional<Constructor<?>>> constructors = new ConcurrentHashMap<>();
+
+    /**
+     * 解码单个事件<br>
+     * 如果获取不到对应事件或信息，便为暂不支持，不处理此事件
+     *
+     * @param conn Mirai 连接
+     * @param data 事件数据
+     * @return     事件，不支持时为 null
+     */
+    public static MiraiEventBase create(MiraiHttpConn conn, JSONObject data) {
+        return create(conn, data, false);
+    }
+
+    /**
+     * 解码单个事件<br>
+     * 使用事件池时，群信息事件从当前线程的事件池取得，分发结束后需调用 {@link MiraiEventBase#release()}
+     *
+     * @param conn   Mirai 连接
+     * @param data   事件数据
+     * @param pooled 是否使用事件池
+     * @return       事件，不支持时为 null
+     */
+    public static MiraiEventBase create(MiraiHttpConn conn, JSONObject data, boolean pooled) {
+        if (pooled && "GroupMessage".equals(data.getString("type"))) {
+            try {
+                return EventPool.acquire(conn, data);
+            } catch (Exception e) {
+                logger.warn("解碼事件 GroupMessageEvent 時出錯。", e);
+                return null;
+            }
+        }
+
+        String name = data.getString("type") + (data.containsKey("messageChain") ? "Event" : "");
+        Optional<Constructor<?>> eventConst = constructors.computeIfAbsent(name, EventFactory::findConstructor);
+        if (!eventConst.isPresent()) {
+            return null;
+        }
+
+        try {
+            return (MiraiEventBase) eventConst.get().newInstance(conn, data);
+        } catch (Exception e) {
+            logger.warn("解碼事件 {} 時出錯。", name, e);
+            return null;
+        }
+    }
+
+    /**
+     * 预热<br>
+     * 提前加载所有已支持的事件类并缓存构造器，避免第一批事件解码时才加载
+     */
+    public static void warmUp() {
+        for (String name : KNOWN_EVENTS) {
+            constructors.computeIfAbsent(name, EventFactory::findConstructor);
+        }
+    }
+
+    /**
+     * 设置事件池调试模式<br>
+     * 调试模式下回收的事件不再复用，分发结束后继续使用时抛出 IllegalStateException，并附带回收位置。
+     * 直接读取 sender 与 messages 字段时，得到的是替换后的对象，调用其方法同样抛出此错误，其中群成员的字段均为 null。
+     * 也可以通过系统属性 miraihttp.pooledEvents.debug 开启
+     *
+     * @param debug 是否开启
+     */
+    public static void setPoolDebug(boolean debug) {
+        EventPool.debug = debug;
+    }
+
+    /**
+     * 查找事件类的构造器
+     *
+     * @param name 事件类名
+     * @return     构造器，不支持时为空
+     */
+    private static Optional<Constructor<?>> findConstructor(String name) {
+        try {
+            Class<?> eventClass = Class.forName("io.github.xiaoyi311.event." + name);
+            if (!MiraiEventBase.class.isAssignableFrom(eventClass)) {
+                return Optional.empty();
+            }
+            return Optional.of(eventClass.getConstructor(MiraiHttpConn.class, JSONObject.class));
+        } catch (Exception e) {
+            logger.debug("暫不支持事件 {}。", name);
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package io.github.xiaoyi311.event;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.*;
+
+/**
+ * MiraiHttp 事件过滤器<br>
+ * 按事件类型、群号与发送者过滤事件，未设置的条件不做限制。过滤器不可变，设置条件会返回新的过滤器<br>
+ * 同一 Mirai 连接上所有监听器的过滤器会合并为一个，由轮询线程在解码事件前对原始数据检查事件类型与群号，
+ * 没有任何监听器需要的事件不会被解码
+ */
+public class EventFilter {
+    /**
+     * 接受所有事件的过滤器
+     */
+    public static final EventFilter ANY = new EventFilter(null, null, null);
+
+    /**
+     * 拒绝所有事件的过滤器
+     */
+    public static final EventFilter NONE = new EventFilter(
+            Collections.emptySet(), Collections.emptySet(), Collections.emptySet()
+    );
+
+    /**
+     * 事件类型，与 Mirai 的 type 字段一致，例如 GroupMessage，null 为不限制
+     */
+    private final Set<String> types;
+
+    /**
+     * 群号，null 为不限制
+     */
+    private final Set<Long> groups;
+
+    /**
+     * 发送者 QQ，null 为不限制
+     */
+    private final Set<Long> senders;
+
+    /**
+     * 创建过滤器
+     *
+     * @param types   事件类型
+     * @param groups  群号
+     * @param senders 发送者 QQ
+     */
+    private EventFilter(Set<String> types, Set<Long> groups, Set<Long> senders) {
+        this.types = types;
+        this.groups = groups;
+        this.senders = senders;
+    }
+
+    /**
+     * 只接受指定类型的事件
+     *
+     * @param types 事件类型，与 Mirai 的 type 字段一致，例如 GroupMessage
+     * @return      新的过滤器
+     */
+    public EventFilter types(String... types) {
+        return new EventFilter(toSet(types), groups, senders);
+    }
+
+    /**
+     * 只接受指定群的事件
+     *
+     * @param groups 群号
+     * @return       新的过滤器
+     */
+    public EventFilter groups(Long... groups) {
+        return new EventFilter(types, toSet(groups), senders);
+    }
+
+    /**
+     * 只接受指定发送者的事件
+     *
+     * @param senders 发送者 QQ
+     * @return        新的过滤器
+     */
+    public EventFilter senders(Long... senders) {
+        return new EventFilter(types, groups, toSet(senders));
+    }
+
+    /**
+     * 检查事件是否符合条件
+     *
+     * @param type   事件类型
+     * @param group  群号，事件不属于群时为 null
+     * @param sender 发送者 QQ，事件没有发送者时为 null
+     * @return       是否接受
+     */
+    public boolean test(String type, Long group, Long sender) {
+        return (types == null || types.contains(type))
+                && (groups == null || (group != null && groups.contains(group)))
+                && (senders == null || (sender != null && senders.contains(sender)));
+    }
+
+    /**
+     * 检查已解码的事件是否符合条件
+     *
+     * @param event 事件
+     * @return      是否接受
+     */
+    public boolean accept(MiraiEventBase event) {
+        return test(event.getType(), event.getGroupId(), event.getSenderId());
+    }
+
+    /**
+     * 检查未解码的原始事件数据是否可能符合条件<br>
+     * 只检查事件类型与群号，发送者在分发时检查
+     *
+     * @param data 原始事件数据
+     * @return     是否接受
+     */
+    public boolean acceptRaw(JSONObject data) {
+        if (types != null && !types.contains(data.getString("type"))) {
+            return false;
+        }
+        return groups == null || groups.contains(rawGroupId(data));
+    }
+
+    /**
+     * 合并多个过滤器，合并结果接受任意一个过滤器接受的事件<br>
+     * 各条件分别取并集，结果可能比逐个检查更宽松，但不会漏掉事件
+     *
+     * @param filters 过滤器，null 视为不限制
+     * @return        合并后的过滤器
+     */
+    public static EventFilter union(Collection<EventFilter> filters) {
+        if (filters.isEmpty()) {
+            return NONE;
+        }
+
+        Set<String> types = new HashSet<>();
+        Set<Long> groups = new HashSet<>();
+        Set<Long> senders = new HashSet<>();
+        for (EventFilter filter : filters) {
+            if (filter == null) {
+                return ANY;
+            }
+            types = union(types, filter.types);
+            groups = union(groups, filter.groups);
+            senders = union(senders, filter.senders);
+        }
+        return new EventFilter(types, groups, senders);
+    }
+
+    /**
+     * 从原始事件数据中读取群号
+     *
+     * @param data 原始事件数据
+     * @return     群号，不属于群时为 null
+     */
+    public static Long rawGroupId(JSONObject data) {
+        JSONObject owner = data.getJSONObject("sender");
+        if (owner == null) {
+            owner = data.getJSONObject("member");
+        }
+        JSONObject group = owner != null ? owner.getJSONObject("group") : data.getJSONObject("group");
+        return group != null ? group.getLong("id") : null;
+    }
+
+    /**
+     * 合并两个条件，null 为不限制
+     */
+    private static <T> Set<T> union(Set<T> a, Set<T> b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        a.addAll(b);
+        return a;
+    }
+
+    /**
+     * 转为不可变集合
+     */
+    @SafeVarargs
+    private static <T> Set<T> toSet(T... values) {
+        Set<T> set = new HashSet<>();
+        for (T value : values) {
+            set.add(value);
+        }
+        return Collections.unmodifiableSet(set);
+    }
+}
@@ -1,18 +1,59 @@
 package io.github.xiaoyi311.event;
 
+import com.alibaba.fastjson.JSONObject;
 import io.github.xiaoyi311.MiraiHttpConn;
+import io.github.xiaoyi311.util.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * MiraiHttp 监听管理器<br>
  * 管理并通知所有监听类
  */
 public class EventManager {
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.EventManager");
+
     /**
      * 所有监听类与 Mirai 连接对应表
      */
-    private static final Map<MiraiHttpConn, Collection<MiraiEventListener>> listeners = new HashMap<>();
+    private static final Map<MiraiHttpConn, List<Subscription>> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * 每个 Mirai 连接上所有监听类合并后的过滤器
+     */
+    private static final Map<MiraiHttpConn, EventFilter> filters = new ConcurrentHashMap<>();
+
+    /**
+     * 每个 Mirai 连接的慢监听类看门狗
+     */
+    private static final Map<MiraiHttpConn, ListenerWatchdog> watchdogs = new ConcurrentHashMap<>();
+
+    /**
+     * 每个 Mirai 连接上等待下一条群信息的请求
+     */
+    private static final Map<MiraiHttpConn, MessageWaiters> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * 所有批量监听类与 Mirai 连接对应表
+     */
+    private static final Map<MiraiHttpConn, List<BatchSubscription>> batchListeners = new ConcurrentHashMap<>();
+
+    /**
+     * 按时间窗口交付批次的计时器
+     */
+    private static final ScheduledThreadPoolExecutor batchTimer;
+
+    static {
+        batchTimer = new ScheduledThreadPoolExecutor(1, (r) -> {
+            Thread thread = new Thread(r, "MiraiHttp-Batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        batchTimer.setRemoveOnCancelPolicy(true);
+    }
 
     /**
      * 注册监听类到指定机器人
@@ -21,10 +62,24 @@ public class EventManager {
      * @param listener 监听类
      */
     public static void addListener(MiraiHttpConn conn, MiraiEventListener listener){
-        Collection<MiraiEventListener> temp = listeners.get(conn);
-        Collection<MiraiEventListener> temp1 = temp == null ? new ArrayList<>() : temp;
-        temp1.add(listener);
-        listeners.put(conn, temp1);
+        addListener(conn, listener, null);
+    }
+
+    /**
+     * 注册带过滤器的监听类到指定机器人<br>
+     * 监听类只会收到过滤器接受的事件
+     *
+     * @param conn     Mirai 连接
+     * @param listener 监听类
+     * @param filter   事件过滤器，null 为不过滤
+     */
+    public static void addListener(MiraiHttpConn conn, MiraiEventListener listener, EventFilter filter){
+        listeners.compute(conn, (k, v) -> {
+            List<Subscription> temp = v != null ? v : new CopyOnWriteArrayList<>();
+            temp.add(new Subscription(listener, filter));
+            return temp;
+        });
+        updateFilter(conn);
     }
 
     /**
@@ -34,19 +89,482 @@ public class EventManager {
      * @param listener 监听类
      */
     public static void removeListener(MiraiHttpConn conn, MiraiEventListener listener){
-        Collection<MiraiEventListener> temp = listeners.get(conn);
-        temp.remove(listener);
-        listeners.put(conn, temp);
+        List<Subscription> temp = listeners.get(conn);
+        if (temp != null){
+            for (Subscription subscription : temp) {
+                if (subscription.listener == listener){
+                    temp.remove(subscription);
+                    subscription.shutdown();
+                }
+            }
+            //没有监听类时不再持有 Mirai 连接
+            listeners.computeIfPresent(conn, (k, v) -> v.isEmpty() ? null : v);
+            updateFilter(conn);
+        }
+    }
+
+    /**
+     * 注册批量监听类到指定机器人<br>
+     * 每次轮询取得的事件作为一批交付
+     *
+     * @param conn     Mirai 连接
+     * @param listener 批量监听类
+     * @param filter   事件过滤器，null 为不过滤
+     */
+    public static void addBatchListener(MiraiHttpConn conn, MiraiBatchListener listener, EventFilter filter){
+        addBatchListener(conn, listener, filter, 0, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 注册按大小或时间窗口分批的批量监听类到指定机器人<br>
+     * 事件跨多次轮询累积，达到 maxSize 个，或第一个事件到达后经过 window 时交付；
+     * 两者都不大于 0 时按每次轮询分批。按大小交付在轮询线程中执行，按时间交付在计时器线程中执行
+     *
+     * @param conn     Mirai 连接
+     * @param listener 批量监听类
+     * @param filter   事件过滤器，null 为不过滤
+     * @param maxSize  每批最多事件数，不大于 0 为不限
+     * @param window   时间窗口，不大于 0 为不限
+     * @param unit     时间单位
+     */
+    public static void addBatchListener(
+            MiraiHttpConn conn,
+            MiraiBatchListener listener,
+            EventFilter filter,
+            int maxSize,
+            long window,
+            TimeUnit unit
+    ){
+        batchListeners.computeIfAbsent(conn, (k) -> new CopyOnWriteArrayList<>())
+                .add(new BatchSubscription(listener, filter, maxSize, unit.toNanos(window)));
+        updateFilter(conn);
+    }
+
+    /**
+     * 卸载指定机器人的批量监听类<br>
+     * 尚未交付的事件会先交付
+     *
+     * @param conn     Mirai 连接
+     * @param listener 批量监听类
+     */
+    public static void removeBatchListener(MiraiHttpConn conn, MiraiBatchListener listener){
+        List<BatchSubscription> temp = batchListeners.get(conn);
+        if (temp != null){
+            for (BatchSubscription subscription : temp) {
+                if (subscription.listener == listener){
+                    temp.remove(subscription);
+                    subscription.flush();
+                }
+            }
+            updateFilter(conn);
+        }
+    }
+
+    /**
+     * 结束一次轮询<br>
+     * 交付按每次轮询分批的批量监听类累积的事件，由轮询线程或事件中继的接收线程调用
+     *
+     * @param conn Mirai 连接
+     */
+    public static void endCycle(MiraiHttpConn conn){
+        List<BatchSubscription> temp = batchListeners.get(conn);
+        if (temp != null){
+            for (BatchSubscription subscription : temp) {
+                subscription.endCycle();
+            }
+        }
+    }
+
+    /**
+     * 获取 Mirai 连接上所有监听类的执行统计
+     *
+     * @param conn Mirai 连接
+     * @return     执行统计，与注册顺序一致
+     */
+    public static List<ListenerStats> getListenerStats(MiraiHttpConn conn){
+        List<ListenerStats> ret = new ArrayList<>();
+        for (Subscription subscription : getListener(conn)) {
+            ret.add(subscription.stats);
+        }
+        return ret;
+    }
+
+    /**
+     * 设置 Mirai 连接的慢监听类看门狗
+     *
+     * @param conn     Mirai 连接
+     * @param watchdog 看门狗配置，null 为不启用
+     */
+    public static void setWatchdog(MiraiHttpConn conn, ListenerWatchdog watchdog){
+        if (watchdog == null){
+            watchdogs.remove(conn);
+        } else {
+            watchdogs.put(conn, watchdog);
+        }
+    }
+
+    /**
+     * 获取 Mirai 连接上所有监听类合并后的过滤器<br>
+     * 轮询线程用它在解码前丢弃没有监听类需要的事件
+     *
+     * @param conn Mirai 连接
+     * @return     合并后的过滤器
+     */
+    public static EventFilter getFilter(MiraiHttpConn conn){
+        return filters.getOrDefault(conn, EventFilter.NONE);
+    }
+
+    /**
+     * 检查原始事件是否需要解码<br>
+     * 有监听类需要，或有请求在等待此信息时需要
+     *
+     * @param conn Mirai 连接
+     * @param data 原始事件数据
+     * @return     是否需要
+     */
+    public static boolean acceptRaw(MiraiHttpConn conn, JSONObject data){
+        if (getFilter(conn).acceptRaw(data)){
+            return true;
+        }
+        MessageWaiters temp = waiters.get(conn);
+        return temp != null && temp.acceptRaw(data);
+    }
+
+    /**
+     * 等待指定群中指定成员的下一条信息
+     *
+     * @param conn    Mirai 连接
+     * @param group   群号
+     * @param sender  发送者 QQ
+     * @param timeout 超时时间
+     * @param unit    时间单位
+     * @return        收到信息时完成，超时时以 TimeoutException 失败
+     */
+    public static CompletableFuture<GroupMessageEvent> awaitGroupMessage(
+            MiraiHttpConn conn,
+            long group,
+            long sender,
+            long timeout,
+            TimeUnit unit
+    ){
+        return waiters.computeIfAbsent(conn, (k) -> new MessageWaiters()).await(group, sender, timeout, unit);
+    }
+
+    /**
+     * 用收到的群信息完成等待它的请求
+     *
+     * @param conn  Mirai 连接
+     * @param event 群信息事件
+     */
+    protected static void completeWaiters(MiraiHttpConn conn, GroupMessageEvent event){
+        MessageWaiters temp = waiters.get(conn);
+        if (temp != null){
+            temp.complete(event);
+        }
+    }
+
+    /**
+     * 将已分发的事件加入批量监听类的批次
+     *
+     * @param conn  Mirai 连接
+     * @param event 事件
+     */
+    protected static void collectBatch(MiraiHttpConn conn, MiraiEventBase event){
+        List<BatchSubscription> temp = batchListeners.get(conn);
+        if (temp != null){
+            for (BatchSubscription subscription : temp) {
+                if (subscription.filter == null || subscription.filter.accept(event)){
+                    subscription.offer(event);
+                }
+            }
+        }
     }
 
     /**
      * 获取机器人对应监听类
      *
      * @param conn      Mirai 连接
-     * @return          对应的监听类租
+     * @return          对应的监听类组
      */
-    protected static Iterator getListener(MiraiHttpConn conn){
-        Collection<MiraiEventListener> mel = listeners.get(conn);
-        return mel != null ? mel.iterator() : null;
+    protected static List<Subscription> getListener(MiraiHttpConn conn){
+        List<Subscription> mel = listeners.get(conn);
+        return mel != null ? mel : Collections.emptyList();
+    }
+
+    /**
+     * 重新合并 Mirai 连接上的过滤器
+     *
+     * @param conn Mirai 连接
+     */
+    private static synchronized void updateFilter(MiraiHttpConn conn){
+        List<EventFilter> temp = new ArrayList<>();
+        for (Subscription subscription : getListener(conn)) {
+            temp.add(subscription.filter);
+        }
+        for (BatchSubscription subscription : batchListeners.getOrDefault(conn, Collections.emptyList())) {
+            temp.add(subscription.filter);
+        }
+        if (temp.isEmpty()) {
+            filters.remove(conn);
+        } else {
+            filters.put(conn, EventFilter.union(temp));
+        }
+    }
+
+    /**
+     * 监听类与其过滤器、执行统计
+     */
+    protected static class Subscription {
+        /**
+         * 监听类
+         */
+        protected final MiraiEventListener listener;
+
+        /**
+         * 事件过滤器，null 为不过滤
+         */
+        protected final EventFilter filter;
+
+        /**
+         * 执行统计
+         */
+        protected final ListenerStats stats;
+
+        /**
+         * 连续超过耗时预算的次数
+         */
+        private int strikes = 0;
+
+        /**
+         * 隔离后使用的独立线程，未隔离时为 null
+         */
+        private volatile ThreadPoolExecutor isolated;
+
+        /**
+         * 创建订阅
+         *
+         * @param listener 监听类
+         * @param filter   事件过滤器
+         */
+        protected Subscription(MiraiEventListener listener, EventFilter filter){
+            this.listener = listener;
+            this.filter = filter;
+            this.stats = new ListenerStats(listener);
+        }
+
+        /**
+         * 通知监听类<br>
+         * 已隔离的监听类在其独立线程中执行，待处理队列已满时丢弃事件
+         *
+         * @param event 事件
+         */
+        protected void invoke(MiraiEventBase event){
+            ThreadPoolExecutor temp = isolated;
+            if (temp != null){
+                if (temp.getQueue().remainingCapacity() == 0){
+                    drop(event);
+                    return;
+                }
+                //在独立线程执行时事件可能已被回收，需要复制
+                MiraiEventBase detached = event.detach();
+                try {
+                    temp.execute(() -> run(detached));
+                } catch (RejectedExecutionException e) {
+                    drop(event);
+                }
+            } else {
+                run(event);
+            }
+        }
+
+        /**
+         * 已隔离的监听类来不及处理，丢弃事件
+         *
+         * @param event 事件
+         */
+        private void drop(MiraiEventBase event){
+            long dropped = stats.recordDrop();
+            //只在丢弃数为 2 的幂时记录，避免日志刷屏
+            if ((dropped & (dropped - 1)) == 0){
+                logger.warn("已隔離的監聽器 {} 來不及處理，已丟棄 {} 個事件（最近為 {}）。",
+                        listener.getClass().getName(), dropped, event.getType());
+            }
+        }
+
+        /**
+         * 计时执行监听类，并检查是否需要隔离
+         *
+         * @param event 事件
+         */
+        private void run(MiraiEventBase event){
+            long start = System.nanoTime();
+            try {
+                event.onEvent(listener);
+            } catch (Exception e) {
+                stats.recordException();
+                logger.warn("監聽器 {} 處理事件 {} 時出錯。", listener.getClass().getName(), event.getType(), e);
+            } finally {
+                long time = System.nanoTime() - start;
+                stats.getLatency().record(time);
+                if (isolated == null){
+                    checkBudget(event.conn, time);
+                }
+            }
+        }
+
+        /**
+         * 连续超过耗时预算时隔离监听类<br>
+         * 启用虚拟线程时监听类可能被并发调用，需同步
+         *
+         * @param conn Mirai 连接
+         * @param time 本次耗时（纳秒）
+         */
+        private synchronized void checkBudget(MiraiHttpConn conn, long time){
+            ListenerWatchdog watchdog = watchdogs.get(conn);
+            if (watchdog == null || time <= watchdog.budgetNanos){
+                strikes = 0;
+                return;
+            }
+            if (++strikes < watchdog.strikes || isolated != null){
+                return;
+            }
+
+            isolated = new ThreadPoolExecutor(
+                    1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(watchdog.queueSize),
+                    Threads.newFactory("MiraiHttp-Isolated-" + listener.getClass().getSimpleName()),
+                    new ThreadPoolExecutor.AbortPolicy()
+            );
+            stats.markIsolated();
+            logger.warn(
+                    "監聽器 {} 連續 {} 次處理事件超過 {} 毫秒，已移到獨立線程執行。",
+                    listener.getClass().getName(),
+                    strikes,
+                    TimeUnit.NANOSECONDS.toMillis(watchdog.budgetNanos)
+            );
+            if (watchdog.onIsolated != null){
+                watchdog.onIsolated.accept(stats);
+            }
+        }
+
+        /**
+         * 关闭独立线程
+         */
+        protected void shutdown(){
+            ThreadPoolExecutor temp = isolated;
+            if (temp != null){
+                temp.shutdown();
+            }
+        }
+    }
+
+    /**
+     * 批量监听类与其过滤器、尚未交付的批次
+     */
+    protected static class BatchSubscription {
+        /**
+         * 批量监听类
+         */
+        protected final MiraiBatchListener listener;
+
+        /**
+         * 事件过滤器，null 为不过滤
+         */
+        protected final EventFilter filter;
+
+        /**
+         * 每批最多事件数，不大于 0 为不限
+         */
+        private final int maxSize;
+
+        /**
+         * 时间窗口（纳秒），不大于 0 为不限
+         */
+        private final long windowNanos;
+
+        /**
+         * 交付锁，保证同一监听类不被同时调用且批次按顺序交付
+         */
+        private final Object deliverLock = new Object();
+
+        /**
+         * 尚未交付的事件
+         */
+        private List<MiraiEventBase> buffer = new ArrayList<>();
+
+        /**
+         * 时间窗口到期时的交付任务，没有时为 null
+         */
+        private ScheduledFuture<?> deadline;
+
+        /**
+         * 创建批量订阅
+         *
+         * @param listener    批量监听类
+         * @param filter      事件过滤器
+         * @param maxSize     每批最多事件数
+         * @param windowNanos 时间窗口（纳秒）
+         */
+        protected BatchSubscription(MiraiBatchListener listener, EventFilter filter, int maxSize, long windowNanos){
+            this.listener = listener;
+            this.filter = filter;
+            this.maxSize = maxSize;
+            this.windowNanos = windowNanos;
+        }
+
+        /**
+         * 加入事件，达到每批最多事件数时交付
+         *
+         * @param event 事件
+         */
+        protected void offer(MiraiEventBase event){
+            boolean full;
+            synchronized (this) {
+                //事件在分发结束后可能被回收，需要复制
+                buffer.add(event.detach());
+                full = maxSize > 0 && buffer.size() >= maxSize;
+                if (!full && windowNanos > 0 && deadline == null){
+                    deadline = batchTimer.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            if (full){
+                flush();
+            }
+        }
+
+        /**
+         * 一次轮询结束，按每次轮询分批时交付
+         */
+        protected void endCycle(){
+            if (maxSize <= 0 && windowNanos <= 0){
+                flush();
+            }
+        }
+
+        /**
+         * 交付尚未交付的事件
+         */
+        protected void flush(){
+            synchronized (deliverLock) {
+                List<MiraiEventBase> batch;
+                synchronized (this) {
+                    if (deadline != null){
+                        deadline.cancel(false);
+                        deadline = null;
+                    }
+                    if (buffer.isEmpty()){
+                        return;
+                    }
+                    batch = buffer;
+                    buffer = new ArrayList<>();
+                }
+
+                try {
+                    listener.onEvents(Collections.unmodifiableList(batch));
+                } catch (Exception e) {
+                    logger.warn("批量監聽器 {} 處理 {} 個事件時出錯。", listener.getClass().getName(), batch.size(), e);
+                }
+            }
+        }
     }
 }
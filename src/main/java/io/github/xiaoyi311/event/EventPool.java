@@ -0,0 +1,154 @@
+package io.github.xiaoyi311.event;
+
+import com.alibaba.fastjson.JSONObject;
+import io.github.xiaoyi311.MiraiHttpConn;
+import io.github.xiaoyi311.entity.Member;
+import io.github.xiaoyi311.entity.message.MessageChain;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 群信息事件池<br>
+ * 每个线程一个池，事件从当前线程的池取出，分发结束后放回取出它的池，可以在其他线程回收，
+ * 下次解码时复用事件、群成员与群实体。
+ * 调试模式下回收的事件不再复用，并记录回收位置，之后使用时抛出错误
+ */
+class EventPool {
+    /**
+     * 每个池最多保存的事件数
+     */
+    private static final int MAX_POOLED = 256;
+
+    /**
+     * 是否为调试模式
+     */
+    static volatile boolean debug = Boolean.getBoolean("miraihttp.pooledEvents.debug");
+
+    /**
+     * 各线程的事件池
+     */
+    private static final ThreadLocal<EventPool> pools = ThreadLocal.withInitial(EventPool::new);
+
+    /**
+     * 池中的事件
+     */
+    private final ConcurrentLinkedDeque<GroupMessageEvent> events = new ConcurrentLinkedDeque<>();
+
+    /**
+     * 池中的事件数
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * 从当前线程的池取出事件并填充
+     *
+     * @param conn Mirai 连接
+     * @param data 事件数据
+     * @return     事件
+     */
+    static GroupMessageEvent acquire(MiraiHttpConn conn, JSONObject data) {
+        EventPool owner = pools.get();
+        GroupMessageEvent event = owner.events.pollLast();
+        if (event == null) {
+            event = new GroupMessageEvent(conn, true);
+        } else {
+            owner.size.decrementAndGet();
+        }
+        event.owner = owner;
+        event.reset(conn, data);
+        return event;
+    }
+
+    /**
+     * 回收事件到取出它的池
+     *
+     * @param event 事件
+     */
+    static void release(GroupMessageEvent event) {
+        if (event.inPool || event.released != null) {
+            return;
+        }
+
+        if (debug) {
+            Throwable site = new Throwable("事件在此回收");
+            event.sender = new ReleasedMember(site);
+            event.messages = new MessageChain[]{ new ReleasedMessage(site) };
+            event.released = site;
+            return;
+        }
+        event.messages = null;
+
+        EventPool owner = event.owner;
+        if (owner != null && owner.size.incrementAndGet() <= MAX_POOLED) {
+            event.inPool = true;
+            owner.events.addLast(event);
+        } else if (owner != null) {
+            owner.size.decrementAndGet();
+        }
+    }
+
+    /**
+     * 调试模式下替换已回收事件的群成员<br>
+     * 各字段均为 null，调用方法时抛出带有回收位置的错误
+     */
+    private static class ReleasedMember extends Member {
+        private final Throwable site;
+
+        private ReleasedMember(Throwable site) {
+            this.site = site;
+        }
+
+        @Override
+        public Member copy() {
+            throw released(site);
+        }
+
+        @Override
+        public String toString() {
+            throw released(site);
+        }
+    }
+
+    /**
+     * 调试模式下替换已回收事件的信息链<br>
+     * 调用方法时抛出带有回收位置的错误
+     */
+    private static class ReleasedMessage extends MessageChain {
+        private final Throwable site;
+
+        private ReleasedMessage(Throwable site) {
+            this.site = site;
+        }
+
+        @Override
+        public String toMiraiString() {
+            throw released(site);
+        }
+
+        @Override
+        public JSONObject toJSONObject() {
+            throw released(site);
+        }
+
+        @Override
+        public String toJSONString() {
+            throw released(site);
+        }
+
+        @Override
+        public String toString() {
+            throw released(site);
+        }
+    }
+
+    /**
+     * 创建使用已回收事件时的错误
+     *
+     * @param site 回收位置
+     * @return     错误
+     */
+    static IllegalStateException released(Throwable site) {
+        return new IllegalStateException("事件已回收，需要保留事件時應先調用 copy()", site);
+    }
+}
@@ -0,0 +1,183 @@
+package io.github.xiaoyi311.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 事件的延迟追踪<br>
+ * 记录事件从 Mirai 收到到监听类处理完毕的各个时间点，以及处理期间发出的 Api 请求。
+ * 除 Mirai 时间与取得时间外，时间点均为 {@link System#nanoTime()}
+ */
+public class EventTrace {
+    /**
+     * 追踪的阶段
+     */
+    public enum Stage {
+        // Mirai 收到事件到开始轮询，包括在 Mirai 队列中等待与轮询间隔，只精确到秒
+        QUEUE,
+        // 轮询请求往返
+        FETCH,
+        // 解码整批事件
+        DECODE,
+        // 等待同一批中之前的事件分发完毕
+        WAIT,
+        // 所有监听类处理事件
+        DISPATCH,
+        // 处理事件时发出的 Api 请求往返
+        SEND,
+        // Mirai 收到事件到所有监听类处理完毕
+        TOTAL
+    }
+
+    /**
+     * 事件类型
+     */
+    public final String type;
+
+    /**
+     * Mirai 收到事件的时间戳（秒），事件没有时间时为 null
+     */
+    public final Integer serverTime;
+
+    /**
+     * 取得事件的时间戳（毫秒）
+     */
+    public final long fetchedAt;
+
+    /**
+     * 开始轮询
+     */
+    public final long fetchStart;
+
+    /**
+     * 轮询结束
+     */
+    public final long fetchEnd;
+
+    /**
+     * 解码结束
+     */
+    public final long decodeEnd;
+
+    /**
+     * 开始分发
+     */
+    public long dispatchStart;
+
+    /**
+     * 分发结束
+     */
+    public long dispatchEnd;
+
+    /**
+     * 分发期间发出的 Api 请求
+     */
+    public final List<Send> sends = new ArrayList<>();
+
+    /**
+     * 创建追踪
+     *
+     * @param type       事件类型
+     * @param serverTime Mirai 收到事件的时间戳（秒）
+     * @param fetchedAt  取得事件的时间戳（毫秒）
+     * @param fetchStart 开始轮询
+     * @param fetchEnd   轮询结束
+     * @param decodeEnd  解码结束
+     */
+    public EventTrace(String type, Integer serverTime, long fetchedAt, long fetchStart, long fetchEnd, long decodeEnd) {
+        this.type = type;
+        this.serverTime = serverTime;
+        this.fetchedAt = fetchedAt;
+        this.fetchStart = fetchStart;
+        this.fetchEnd = fetchEnd;
+        this.decodeEnd = decodeEnd;
+    }
+
+    /**
+     * 获取阶段耗时
+     *
+     * @param stage 阶段
+     * @return      耗时（纳秒），SEND 为所有请求之和，无法计算时为 -1
+     */
+    public long getNanos(Stage stage) {
+        switch (stage) {
+            case QUEUE:
+                if (serverTime == null) {
+                    return -1;
+                }
+                long queue = fetchedAt - TimeUnit.NANOSECONDS.toMillis(fetchEnd - fetchStart) - serverTime * 1000L;
+                return TimeUnit.MILLISECONDS.toNanos(Math.max(queue, 0));
+            case FETCH:
+                return fetchEnd - fetchStart;
+            case DECODE:
+                return decodeEnd - fetchEnd;
+            case WAIT:
+                return dispatchStart - decodeEnd;
+            case DISPATCH:
+                return dispatchEnd - dispatchStart;
+            case SEND:
+                long sum = 0;
+                for (Send send : sends) {
+                    sum += send.end - send.start;
+                }
+                return sum;
+            case TOTAL:
+                long local = dispatchEnd - fetchStart;
+                return serverTime == null ? local : local + getNanos(Stage.QUEUE);
+            default:
+                return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(type);
+        for (Stage stage : Stage.values()) {
+            long nanos = getNanos(stage);
+            if (nanos >= 0) {
+                builder.append(' ').append(stage.name()).append('=')
+                        .append(String.format("%.3f", nanos / 1e6)).append("ms");
+            }
+        }
+        for (Send send : sends) {
+            builder.append(' ').append(send.api).append('@')
+                    .append(String.format("%.3f", (send.start - dispatchStart) / 1e6)).append('+')
+                    .append(String.format("%.3f", (send.end - send.start) / 1e6)).append("ms");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 分发期间发出的 Api 请求
+     */
+    public static class Send {
+        /**
+         * Api 名称，例如 sendGroupMessage
+         */
+        public final String api;
+
+        /**
+         * 开始请求
+         */
+        public final long start;
+
+        /**
+         * 请求结束
+         */
+        public final long end;
+
+        /**
+         * 创建请求记录
+         *
+         * @param api   Api 名称
+         * @param start 开始请求
+         * @param end   请求结束
+         */
+        public Send(String api, long start, long end) {
+            this.api = api;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -2,9 +2,7 @@ package io.github.xiaoyi311.event;
 
 import com.alibaba.fastjson.JSONObject;
 import io.github.xiaoyi311.MiraiHttpConn;
-import io.github.xiaoyi311.entity.Group;
 import io.github.xiaoyi311.entity.Member;
-import io.github.xiaoyi311.entity.Permission;
 
 /**
  * MiraiHttp 收到群信息事件
@@ -15,6 +13,26 @@ public class GroupMessageEvent extends MessageEventBase {
      */
     public Member sender;
 
+    /**
+     * 是否来自事件池
+     */
+    final boolean pooled;
+
+    /**
+     * 取出事件的池，回收时放回此池
+     */
+    EventPool owner;
+
+    /**
+     * 是否已在事件池中
+     */
+    volatile boolean inPool;
+
+    /**
+     * 调试模式下记录回收位置，未回收时为 null
+     */
+    volatile Throwable released;
+
     /**
      * 触发事件
      *
@@ -25,6 +43,41 @@ public class GroupMessageEvent extends MessageEventBase {
         listener.onGroupMessage(this);
     }
 
+    /**
+     * 触发事件<br>
+     * 先完成等待此信息的请求，再通知所有监听类
+     *
+     * @param session Mirai 连接
+     */
+    @Override
+    public void doEvent(MiraiHttpConn session) {
+        checkLive();
+        EventManager.completeWaiters(session, this);
+        super.doEvent(session);
+    }
+
+    /**
+     * 获取事件所属的群号
+     *
+     * @return 群号
+     */
+    @Override
+    public Long getGroupId() {
+        checkLive();
+        return sender.group.id;
+    }
+
+    /**
+     * 获取事件发送者的 QQ
+     *
+     * @return 发送者 QQ
+     */
+    @Override
+    public Long getSenderId() {
+        checkLive();
+        return sender.qq;
+    }
+
     /**
      * 创建事件
      *
@@ -33,29 +86,86 @@ public class GroupMessageEvent extends MessageEventBase {
      */
     public GroupMessageEvent(MiraiHttpConn conn, JSONObject data){
         super(conn);
+        this.pooled = false;
 
-        //生成群成员数据
-        JSONObject temp = data.getJSONObject("sender");
-        Group temp2 = new Group();
-        Member temp1 = new Member();
-        temp1.qq = temp.getInteger("id");
-        temp1.memberName = temp.getString("memberName");
-        temp1.permission = Permission.valueOf(temp.getString("permission"));
-        temp1.joinTime = temp.getInteger("joinTimestamp");
-        temp1.lastSpeckTime = temp.getInteger("lastSpeakTimestamp");
-        temp1.muteTimeRemaining = temp.getInteger("joinTimestamp");temp1.joinTime = temp.getInteger("muteTimeRemaining");
-
-        //生成群数据
-        temp = temp.getJSONObject("group");
-        temp2.id = temp.getLong("id");
-        temp2.groupName = temp.getString("name");
-        temp2.permission = Permission.valueOf(temp.getString("permission"));
-
-        //互相绑定
-        temp1.group = temp2;
-        sender = temp1;
+        //生成群成员与群数据
+        sender = Member.fromJSONObject(data.getJSONObject("sender"));
 
         //获取信息链
         messages = getMessageChain(data.getJSONArray("messageChain"));
     }
+
+    /**
+     * 创建空事件，由事件池填充
+     *
+     * @param conn   Mirai 连接
+     * @param pooled 是否来自事件池
+     */
+    GroupMessageEvent(MiraiHttpConn conn, boolean pooled){
+        super(conn);
+        this.pooled = pooled;
+    }
+
+    /**
+     * 以新数据填充事件，复用群成员与群实体
+     *
+     * @param conn Mirai 连接
+     * @param data 事件数据
+     */
+    void reset(MiraiHttpConn conn, JSONObject data){
+        this.conn = conn;
+        this.source = conn;
+        inPool = false;
+        trace = null;
+        sender = Member.fromJSONObject(data.getJSONObject("sender"), sender);
+        messages = getMessageChain(data.getJSONArray("messageChain"));
+    }
+
+    /**
+     * 复制事件<br>
+     * 复制出的事件不属于事件池，可以在分发结束后继续持有
+     *
+     * @return 新的事件
+     */
+    public GroupMessageEvent copy(){
+        checkLive();
+        GroupMessageEvent event = new GroupMessageEvent(conn, false);
+        event.sender = sender.copy();
+        event.messageId = messageId;
+        event.time = time;
+        event.trace = trace;
+        event.messages = messages.clone();
+        return event;
+    }
+
+    /**
+     * 获取可以在分发结束后继续持有的事件<br>
+     * 来自事件池时返回复制，否则返回自身
+     *
+     * @return 事件
+     */
+    @Override
+    public GroupMessageEvent detach(){
+        return pooled ? copy() : this;
+    }
+
+    /**
+     * 分发结束，来自事件池时放回事件池
+     */
+    @Override
+    public void release(){
+        if (pooled){
+            EventPool.release(this);
+        }
+    }
+
+    /**
+     * 检查事件是否已回收，只在调试模式下有效
+     */
+    private void checkLive(){
+        Throwable site = released;
+        if (site != null){
+            throw EventPool.released(site);
+        }
+    }
 }
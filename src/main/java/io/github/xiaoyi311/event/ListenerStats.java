@@ -0,0 +1,123 @@
+package io.github.xiaoyi311.event;
+
+import io.github.xiaoyi311.util.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 监听类执行统计<br>
+ * 记录单个监听类处理事件的耗时分布、调用次数与异常次数
+ */
+public class ListenerStats {
+    /**
+     * 监听类
+     */
+    private final MiraiEventListener listener;
+
+    /**
+     * 耗时分布
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * 异常次数
+     */
+    private final LongAdder exceptions = new LongAdder();
+
+    /**
+     * 隔离后因队列已满丢弃的事件数
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * 是否已被隔离到独立线程
+     */
+    private volatile boolean isolated = false;
+
+    /**
+     * 创建统计
+     *
+     * @param listener 监听类
+     */
+    protected ListenerStats(MiraiEventListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 获取监听类
+     *
+     * @return 监听类
+     */
+    public MiraiEventListener getListener() {
+        return listener;
+    }
+
+    /**
+     * 获取耗时分布
+     *
+     * @return 耗时分布
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * 获取调用次数
+     *
+     * @return 调用次数
+     */
+    public long getInvocations() {
+        return latency.getCount();
+    }
+
+    /**
+     * 获取异常次数
+     *
+     * @return 异常次数
+     */
+    public long getExceptions() {
+        return exceptions.sum();
+    }
+
+    /**
+     * 获取隔离后因待处理队列已满而丢弃的事件数
+     *
+     * @return 丢弃数
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * 是否已被隔离到独立线程
+     *
+     * @return 是否隔离
+     */
+    public boolean isIsolated() {
+        return isolated;
+    }
+
+    /**
+     * 记录一次异常
+     */
+    protected void recordException() {
+        exceptions.increment();
+    }
+
+    /**
+     * 记录一次丢弃
+     *
+     * @return 丢弃后的丢弃总数
+     */
+    protected long recordDrop() {
+        dropped.increment();
+        return dropped.sum();
+    }
+
+    /**
+     * 标记为已隔离
+     */
+    protected void markIsolated() {
+        isolated = true;
+    }
+}
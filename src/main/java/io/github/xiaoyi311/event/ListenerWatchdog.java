@@ -0,0 +1,68 @@
+package io.github.xiaoyi311.event;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 慢监听类看门狗配置<br>
+ * 监听类连续 strikes 次处理事件超过耗时预算后，会被移到独立的单线程中执行，
+ * 不再阻塞同一连接上的其他监听类；被隔离的监听类仍按顺序收到事件。
+ * 独立线程的待处理队列有上限，队列满时新事件被丢弃并记入 {@link ListenerStats#getDropped()}
+ */
+public class ListenerWatchdog {
+    /**
+     * 默认的待处理队列长度
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    /**
+     * 耗时预算（纳秒）
+     */
+    protected final long budgetNanos;
+
+    /**
+     * 连续超时多少次后隔离
+     */
+    protected final int strikes;
+
+    /**
+     * 隔离时的通知，可为 null
+     */
+    protected final Consumer<ListenerStats> onIsolated;
+
+    /**
+     * 隔离后的待处理队列长度
+     */
+    protected final int queueSize;
+
+    /**
+     * 创建看门狗配置，隔离后的待处理队列长度为 {@link #DEFAULT_QUEUE_SIZE}
+     *
+     * @param budget     耗时预算
+     * @param unit       时间单位
+     * @param strikes    连续超时多少次后隔离
+     * @param onIsolated 隔离时的通知，可为 null
+     */
+    public ListenerWatchdog(long budget, TimeUnit unit, int strikes, Consumer<ListenerStats> onIsolated) {
+        this(budget, unit, strikes, onIsolated, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * 创建看门狗配置
+     *
+     * @param budget     耗时预算
+     * @param unit       时间单位
+     * @param strikes    连续超时多少次后隔离
+     * @param onIsolated 隔离时的通知，可为 null
+     * @param queueSize  隔离后的待处理队列长度，队列满时丢弃新事件
+     */
+    public ListenerWatchdog(long budget, TimeUnit unit, int strikes, Consumer<ListenerStats> onIsolated, int queueSize) {
+        if (strikes < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("strikes 与 queueSize 必须大于 0");
+        }
+        this.budgetNanos = unit.toNanos(budget);
+        this.strikes = strikes;
+        this.onIsolated = onIsolated;
+        this.queueSize = queueSize;
+    }
+}
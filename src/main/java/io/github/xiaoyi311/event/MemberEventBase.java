@@ -0,0 +1,47 @@
+package io.github.xiaoyi311.event;
+
+import com.alibaba.fastjson.JSONObject;
+import io.github.xiaoyi311.MiraiHttpConn;
+import io.github.xiaoyi311.entity.Member;
+
+/**
+ * MiraiHttp 群成员事件基类<br>
+ * 存储事件涉及的群成员
+ */
+public class MemberEventBase extends MiraiEventBase {
+    /**
+     * 事件涉及的群成员
+     */
+    public Member member;
+
+    /**
+     * 创建事件
+     *
+     * @param conn Mirai 连接
+     * @param data 事件数据
+     */
+    public MemberEventBase(MiraiHttpConn conn, JSONObject data) {
+        super(conn);
+        member = Member.fromJSONObject(data.getJSONObject("member"));
+    }
+
+    /**
+     * 获取事件所属的群号
+     *
+     * @return 群号
+     */
+    @Override
+    public Long getGroupId() {
+        return member.group.id;
+    }
+
+    /**
+     * 获取事件涉及的群成员 QQ
+     *
+     * @return 群成员 QQ
+     */
+    @Override
+    public Long getSenderId() {
+        return member.qq;
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.xiaoyi311.event;
+
+import com.alibaba.fastjson.JSONObject;
+import io.github.xiaoyi311.MiraiHttpConn;
+
+/**
+ * MiraiHttp 新成员入群事件
+ */
+public class MemberJoinEvent extends MemberEventBase {
+    /**
+     * 触发事件
+     *
+     * @param listener 监听类
+     */
+    @Override
+    public void onEvent(MiraiEventListener listener) {
+        listener.onMemberJoin(this);
+    }
+
+    /**
+     * 创建事件
+     *
+     * @param conn Mirai 连接
+     * @param data 事件数据
+     */
+    public MemberJoinEvent(MiraiHttpConn conn, JSONObject data){
+        super(conn, data);
+    }
+}
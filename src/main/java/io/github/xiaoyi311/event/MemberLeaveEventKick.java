@@ -0,0 +1,37 @@
+package io.github.xiaoyi311.event;
+
+import com.alibaba.fastjson.JSONObject;
+import io.github.xiaoyi311.MiraiHttpConn;
+import io.github.xiaoyi311.entity.Member;
+
+/**
+ * MiraiHttp 成员被踢出群事件
+ */
+public class MemberLeaveEventKick extends MemberEventBase {
+    /**
+     * 操作的管理员或群主，为机器人时为 null
+     */
+    public Member operator;
+
+    /**
+     * 触发事件
+     *
+     * @param listener 监听类
+     */
+    @Override
+    public void onEvent(MiraiEventListener listener) {
+        listener.onMemberLeaveKick(this);
+    }
+
+    /**
+     * 创建事件
+     *
+     * @param conn Mirai 连接
+     * @param data 事件数据
+     */
+    public MemberLeaveEventKick(MiraiHttpConn conn, JSONObject data){
+        super(conn, data);
+        JSONObject temp = data.getJSONObject("operator");
+        operator = temp != null ? Member.fromJSONObject(temp) : null;
+    }
+}
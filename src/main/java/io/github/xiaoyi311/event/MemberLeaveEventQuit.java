@@ -0,0 +1,29 @@
+package io.github.xiaoyi311.event;
+
+import com.alibaba.fastjson.JSONObject;
+import io.github.xiaoyi311.MiraiHttpConn;
+
+/**
+ * MiraiHttp 成员主动退群事件
+ */
+public class MemberLeaveEventQuit extends MemberEventBase {
+    /**
+     * 触发事件
+     *
+     * @param listener 监听类
+     */
+    @Override
+    public void onEvent(MiraiEventListener listener) {
+        listener.onMemberLeaveQuit(this);
+    }
+
+    /**
+     * 创建事件
+     *
+     * @param conn Mirai 连接
+     * @param data 事件数据
+     */
+    public MemberLeaveEventQuit(MiraiHttpConn conn, JSONObject data){
+        super(conn, data);
+    }
+}
@@ -0,0 +1,42 @@
+package io.github.xiaoyi311.event;
+
+import com.alibaba.fastjson.JSONObject;
+import io.github.xiaoyi311.MiraiHttpConn;
+import io.github.xiaoyi311.entity.Permission;
+
+/**
+ * MiraiHttp 群成员权限改变事件（该成员不是机器人）
+ */
+public class MemberPermissionChangeEvent extends MemberEventBase {
+    /**
+     * 原权限
+     */
+    public Permission origin;
+
+    /**
+     * 现权限
+     */
+    public Permission current;
+
+    /**
+     * 触发事件
+     *
+     * @param listener 监听类
+     */
+    @Override
+    public void onEvent(MiraiEventListener listener) {
+        listener.onMemberPermissionChange(this);
+    }
+
+    /**
+     * 创建事件
+     *
+     * @param conn Mirai 连接
+     * @param data 事件数据
+     */
+    public MemberPermissionChangeEvent(MiraiHttpConn conn, JSONObject data){
+        super(conn, data);
+        origin = Permission.valueOf(data.getString("origin"));
+        current = Permission.valueOf(data.getString("current"));
+    }
+}
@@ -34,6 +34,18 @@ public class MessageEventBase extends MiraiEventBase {
         super(conn);
     }
 
+    /**
+     * 获取事件类型<br>
+     * 信息事件的类名比 Mirai 的 type 多出 Event 后缀
+     *
+     * @return 事件类型
+     */
+    @Override
+    public String getType() {
+        String name = super.getType();
+        return name.endsWith("Event") ? name.substring(0, name.length() - 5) : name;
+    }
+
     /**
      * 获取信息链
      *
@@ -44,8 +56,7 @@ public class MessageEventBase extends MiraiEventBase {
         JSONObject data = (JSONObject) chain.get(0);
         messageId = data.getInteger("id");
         time = data.getInteger("time");
-        chain.remove(0);
 
-        return MessageChain.getMessageChain(chain);
+        return MessageChain.getMessageChain(chain, 1);
     }
 }
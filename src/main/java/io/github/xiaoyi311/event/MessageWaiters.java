@@ -0,0 +1,132 @@
+package io.github.xiaoyi311.event;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * 等待下一条群信息的请求<br>
+ * 按 (群号, 发送者 QQ) 存放，每条信息只需一次查找即可找到所有等待它的请求，
+ * 与正在等待的会话数量无关
+ */
+class MessageWaiters {
+    /**
+     * 超时计时器
+     */
+    private static final ScheduledThreadPoolExecutor timer;
+
+    static {
+        timer = new ScheduledThreadPoolExecutor(1, (r) -> {
+            Thread thread = new Thread(r, "MiraiHttp-Waiter-Timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 等待中的请求
+     */
+    private final Map<Key, List<CompletableFuture<GroupMessageEvent>>> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * 等待指定群中指定成员的下一条信息
+     *
+     * @param group   群号
+     * @param sender  发送者 QQ
+     * @param timeout 超时时间
+     * @param unit    时间单位
+     * @return        收到信息时完成，超时时以 TimeoutException 失败
+     */
+    CompletableFuture<GroupMessageEvent> await(long group, long sender, long timeout, TimeUnit unit) {
+        Key key = new Key(group, sender);
+        CompletableFuture<GroupMessageEvent> future = new CompletableFuture<>();
+        waiters.compute(key, (k, list) -> {
+            List<CompletableFuture<GroupMessageEvent>> temp = list != null ? list : new ArrayList<>(1);
+            temp.add(future);
+            return temp;
+        });
+
+        ScheduledFuture<?> timeoutTask = timer.schedule(
+                () -> future.completeExceptionally(new TimeoutException("等待群信息超時")),
+                timeout,
+                unit
+        );
+
+        //完成、超时或取消时移除
+        future.whenComplete((event, e) -> {
+            timeoutTask.cancel(false);
+            waiters.computeIfPresent(key, (k, list) -> {
+                list.remove(future);
+                return list.isEmpty() ? null : list;
+            });
+        });
+        return future;
+    }
+
+    /**
+     * 是否有请求在等待原始事件
+     *
+     * @param data 原始事件数据
+     * @return     是否等待
+     */
+    boolean acceptRaw(JSONObject data) {
+        if (waiters.isEmpty() || !"GroupMessage".equals(data.getString("type"))) {
+            return false;
+        }
+        JSONObject owner = data.getJSONObject("sender");
+        Long sender = owner != null ? owner.getLong("id") : null;
+        Long group = EventFilter.rawGroupId(data);
+        return sender != null && group != null && waiters.containsKey(new Key(group, sender));
+    }
+
+    /**
+     * 用收到的信息完成等待它的请求<br>
+     * 群号与发送者取自解码后的群成员，与原始数据中的 64 位 id 一致
+     *
+     * @param event 群信息事件
+     */
+    void complete(GroupMessageEvent event) {
+        if (waiters.isEmpty()) {
+            return;
+        }
+        List<CompletableFuture<GroupMessageEvent>> list = waiters.remove(new Key(event.getGroupId(), event.getSenderId()));
+        if (list != null) {
+            //等待者在分发结束后才使用事件
+            GroupMessageEvent detached = event.detach();
+            for (CompletableFuture<GroupMessageEvent> future : list) {
+                future.complete(detached);
+            }
+        }
+    }
+
+    /**
+     * 群号与发送者
+     */
+    private static class Key {
+        private final long group;
+        private final long sender;
+
+        private Key(long group, long sender) {
+            this.group = group;
+            this.sender = sender;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return group == key.group && sender == key.sender;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(group * 31 + sender);
+        }
+    }
+}
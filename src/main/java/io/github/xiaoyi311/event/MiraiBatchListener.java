@@ -0,0 +1,19 @@
+package io.github.xiaoyi311.event;
+
+import java.util.EventListener;
+import java.util.List;
+
+/**
+ * MiraiHttp 批量事件监听类<br>
+ * 一次收到一批事件，适合批量写入数据库等需要分摊 I/O 的场景，与普通监听类同时生效。
+ * 收到的事件已经 {@link MiraiEventBase#detach()}，可以在方法返回后继续持有
+ */
+public interface MiraiBatchListener extends EventListener {
+    /**
+     * 收到一批事件时<br>
+     * 同一监听类不会被同时调用，批次按事件到达的顺序交付
+     *
+     * @param events 事件，按到达顺序排列，不可修改
+     */
+    void onEvents(List<MiraiEventBase> events);
+}
@@ -3,7 +3,6 @@ package io.github.xiaoyi311.event;
 import io.github.xiaoyi311.MiraiHttpConn;
 
 import java.util.EventObject;
-import java.util.Iterator;
 
 /**
  * MiraiHttp 事件基类<br>
@@ -15,6 +14,11 @@ public class MiraiEventBase extends EventObject {
      */
     public MiraiHttpConn conn;
 
+    /**
+     * 延迟追踪，未启用追踪时为 null
+     */
+    public EventTrace trace;
+
     /**
      * 创建事件
      *
@@ -27,17 +31,62 @@ public class MiraiEventBase extends EventObject {
 
     /**
      * 触发事件<br>
-     * 遍历所有监听类
+     * 遍历所有监听类，记录每个监听类的耗时与异常，再加入批量监听类的批次
      */
     public void doEvent(MiraiHttpConn session) {
-        Iterator iter = EventManager.getListener(session);
-        if (iter != null){
-            while (iter.hasNext()){
-                onEvent((MiraiEventListener) iter.next());
+        for (EventManager.Subscription subscription : EventManager.getListener(session)) {
+            if (subscription.filter == null || subscription.filter.accept(this)){
+                subscription.invoke(this);
             }
         }
+        EventManager.collectBatch(session, this);
+    }
+
+    /**
+     * 获取事件类型<br>
+     * 与 Mirai 的 type 字段一致
+     *
+     * @return 事件类型
+     */
+    public String getType() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * 获取事件所属的群号
+     *
+     * @return 群号，不属于群时为 null
+     */
+    public Long getGroupId() {
+        return null;
     }
 
+    /**
+     * 获取事件发送者的 QQ
+     *
+     * @return 发送者 QQ，没有发送者时为 null
+     */
+    public Long getSenderId() {
+        return null;
+    }
+
+    /**
+     * 获取可以在分发结束后继续持有的事件<br>
+     * 启用事件池时，分发结束后事件会被回收复用，需在其他线程或之后使用的事件应先调用此方法。
+     * 默认返回自身
+     *
+     * @return 事件
+     */
+    public MiraiEventBase detach() {
+        return this;
+    }
+
+    /**
+     * 分发结束<br>
+     * 来自事件池的事件会被回收，之后不应再使用。默认不做任何事
+     */
+    public void release() {}
+
     /**
      * 触发事件<br>
      * 此处为空，等待子类重写并通知监听类
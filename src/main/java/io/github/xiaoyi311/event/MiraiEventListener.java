@@ -4,7 +4,9 @@ import java.util.EventListener;
 
 /**
  * MiraiHttp 事件监听类<br>
- * 触发事件时调用对应方法
+ * 触发事件时调用对应方法。<br>
+ * Mirai 连接启用事件池时，事件在所有监听类返回后会被回收复用，
+ * 需要在方法返回后继续使用的事件应先调用 {@link MiraiEventBase#detach()} 或 {@link GroupMessageEvent#copy()}
  */
 public interface MiraiEventListener extends EventListener {
     /**
@@ -13,4 +15,39 @@ public interface MiraiEventListener extends EventListener {
      * @param event 事件信息
      */
     void onGroupMessage(GroupMessageEvent event);
+
+    /**
+     * 新成员入群时
+     *
+     * @param event 事件信息
+     */
+    default void onMemberJoin(MemberJoinEvent event) {}
+
+    /**
+     * 成员主动退群时
+     *
+     * @param event 事件信息
+     */
+    default void onMemberLeaveQuit(MemberLeaveEventQuit event) {}
+
+    /**
+     * 成员被踢出群时
+     *
+     * @param event 事件信息
+     */
+    default void onMemberLeaveKick(MemberLeaveEventKick event) {}
+
+    /**
+     * 群成员权限改变时
+     *
+     * @param event 事件信息
+     */
+    default void onMemberPermissionChange(MemberPermissionChangeEvent event) {}
+
+    /**
+     * 机器人在群里的权限改变时
+     *
+     * @param event 事件信息
+     */
+    default void onBotGroupPermissionChange(BotGroupPermissionChangeEvent event) {}
 }
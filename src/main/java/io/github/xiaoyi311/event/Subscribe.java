@@ -0,0 +1,28 @@
+package io.github.xiaoyi311.event;
+
+import java.lang.annotation.*;
+
+/**
+ * 事件处理方法<br>
+ * 标注的方法需有且只有一个事件参数，例如 {@code @Subscribe void onHello(GroupMessageEvent event)}。
+ * 编译时由 MiraiHttp-processor 为所在类生成 {@code 类名_Dispatcher} 分发器，
+ * 分发器直接调用处理方法，运行时不使用反射，通过 {@code 类名_Dispatcher.register(conn, 实例)} 注册
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface Subscribe {
+    /**
+     * 只处理这些群的事件，为空时不限制
+     *
+     * @return 群号
+     */
+    long[] groups() default {};
+
+    /**
+     * 只处理纯文本以此开头的群信息，为空时不限制，只能用于群信息事件
+     *
+     * @return 命令前缀
+     */
+    String prefix() default "";
+}
@@ -0,0 +1,144 @@
+package io.github.xiaoyi311.relay;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import io.github.xiaoyi311.MiraiHttpConn;
+import io.github.xiaoyi311.event.EventFactory;
+import io.github.xiaoyi311.event.EventManager;
+import io.github.xiaoyi311.event.MiraiEventBase;
+import io.github.xiaoyi311.util.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 事件中继订阅端<br>
+ * 从 {@link EventRelayServer} 接收事件，解码后触发本地 Mirai 连接上注册的监听器。
+ * 本地连接应使用 {@link MiraiHttpConn#bindRobot(Long, boolean)} 绑定且不轮询事件，只用于调用 Api<br>
+ * 订阅端先给中继 window 个额度，每处理完一半再补充，中继在额度用完时暂停发送
+ */
+public class EventRelayClient implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.EventRelayClient");
+
+    /**
+     * 与中继的连接
+     */
+    private final Socket socket;
+
+    /**
+     * 本地 Mirai 连接
+     */
+    private final MiraiHttpConn conn;
+
+    /**
+     * 额度窗口
+     */
+    private final int window;
+
+    /**
+     * 是否已关闭
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * 连接到中继并开始接收事件
+     *
+     * @param host   中继地址
+     * @param port   中继端口
+     * @param conn   本地 Mirai 连接，事件在此连接上触发
+     * @param window 额度窗口，即中继最多可以预先发送的事件数
+     */
+    public EventRelayClient(String host, int port, MiraiHttpConn conn, int window) throws IOException {
+        if (window < 1) {
+            throw new IllegalArgumentException("window 必须大于 0");
+        }
+        this.conn = conn;
+        this.window = window;
+        this.socket = new Socket(host, port);
+        this.socket.setTcpNoDelay(true);
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        RelayFrames.writeCredit(out, window);
+        out.flush();
+
+        Threads.newThread("MiraiHttp-Relay-Receive", () -> receiveLoop(in, out)).start();
+    }
+
+    /**
+     * 接收并触发事件
+     */
+    private void receiveLoop(DataInputStream in, DataOutputStream out) {
+        int consumed = 0;
+        try {
+            while (!closed) {
+                int length = RelayFrames.readLength(in);
+                byte type = in.readByte();
+                if (type != RelayFrames.EVENT) {
+                    in.skipBytes(length - 1);
+                    continue;
+                }
+
+                if (length < 9) {
+                    throw new IOException("無效的中繼事件幀長度：" + length);
+                }
+                in.readLong();
+                byte[] payload = new byte[length - 9];
+                in.readFully(payload);
+                try {
+                    dispatch(JSON.parseObject(new String(payload, StandardCharsets.UTF_8)));
+                } catch (RuntimeException e) {
+                    //无法解析或解码的事件跳过，仍计入额度，避免中继停止发送
+                    logger.warn("處理中繼事件時出錯，已跳過。", e);
+                }
+                //已读完当前收到的事件，视为一次轮询结束
+                if (in.available() == 0) {
+                    EventManager.endCycle(conn);
+                }
+
+                //处理完一半窗口后补充额度
+                if (++consumed >= (window + 1) / 2) {
+                    RelayFrames.writeCredit(out, consumed);
+                    out.flush();
+                    consumed = 0;
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                logger.warn("與事件中繼的連接已斷開。", e);
+            }
+        }
+    }
+
+    /**
+     * 按本地监听器的过滤器解码并触发事件
+     *
+     * @param data 原始事件数据
+     */
+    private void dispatch(JSONObject data) {
+        if (!EventManager.acceptRaw(conn, data)) {
+            return;
+        }
+        MiraiEventBase event = EventFactory.create(conn, data);
+        if (event == null) {
+            return;
+        }
+        try {
+            event.doEvent(conn);
+        } catch (Exception e) {
+            logger.warn("處理事件 {} 時出錯。", event.getClass().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * 断开与中继的连接
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        socket.close();
+    }
+}
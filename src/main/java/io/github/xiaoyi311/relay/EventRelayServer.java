@@ -0,0 +1,419 @@
+package io.github.xiaoyi311.relay;
+
+import com.alibaba.fastjson.JSONObject;
+import io.github.xiaoyi311.event.EventFilter;
+import io.github.xiaoyi311.util.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 事件中继服务端<br>
+ * Mirai 的 Session 只能有一个消费者，中继让唯一的轮询进程把事件转发给多个订阅进程（{@link EventRelayClient}）。
+ * 事件按群号以 rendezvous 哈希分配给订阅进程，同一群的事件总由同一订阅进程按顺序处理，
+ * 订阅进程加入或离开时只有少部分群改变归属；新订阅进程加入时，改变归属的群在原订阅进程队列中的事件处理完之前，
+ * 可能与新订阅进程上的事件同时处理。不属于群的事件轮流分配。
+ * 订阅进程通过额度控制流量，某个订阅进程的队列满时，轮询线程会等待<br>
+ * 订阅进程补充的额度同时确认已处理的事件。订阅进程断开时，已发送但未确认的事件与队列中的事件
+ * 在下一次转发时按原顺序先于新事件改发给其他订阅进程，因此不会丢失事件，但断开前已处理而未确认的少量事件会重复。
+ * 没有订阅进程时事件被丢弃<br>
+ * 使用 {@link io.github.xiaoyi311.MiraiHttpConn#setEventRelay(EventRelayServer)} 启用
+ */
+public class EventRelayServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.EventRelayServer");
+
+    /**
+     * 监听的 Socket
+     */
+    private final ServerSocket server;
+
+    /**
+     * 每个订阅进程的待发送队列长度
+     */
+    private final int queueSize;
+
+    /**
+     * 所有订阅进程
+     */
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * 不属于群的事件的轮流计数
+     */
+    private final AtomicInteger roundRobin = new AtomicInteger();
+
+    /**
+     * 订阅进程编号
+     */
+    private final AtomicLong subscriberIds = new AtomicLong();
+
+    /**
+     * 是否已关闭
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * 创建中继并开始接受订阅进程
+     *
+     * @param address   监听地址，例如 new InetSocketAddress("127.0.0.1", 9000)
+     * @param queueSize 每个订阅进程的待发送队列长度
+     */
+    public EventRelayServer(InetSocketAddress address, int queueSize) throws IOException {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("queueSize 必须大于 0");
+        }
+        this.queueSize = queueSize;
+        this.server = new ServerSocket();
+        this.server.bind(address);
+
+        Thread acceptThread = Threads.newThread("MiraiHttp-Relay-Accept", this::acceptLoop);
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * 获取当前订阅进程数
+     *
+     * @return 订阅进程数
+     */
+    public int getSubscriberCount() {
+        int count = 0;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.open) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 转发一个原始事件<br>
+     * 没有订阅进程时丢弃；目标订阅进程队列已满时等待
+     *
+     * @param data Mirai 原始事件数据
+     */
+    public void publish(JSONObject data) {
+        Long group = EventFilter.rawGroupId(data);
+        publish(new Frame(group != null ? group : 0L, data.toJSONString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 转发一帧事件<br>
+     * 先把已断开的订阅进程未确认的事件按原顺序改发，再转发此帧，保证同一群的事件顺序
+     *
+     * @param frame 事件帧
+     */
+    private synchronized void publish(Frame frame) {
+        while (!closed) {
+            reap();
+            Subscriber target = route(frame);
+            if (target == null) {
+                logger.debug("沒有訂閱進程，丟棄事件。");
+                return;
+            }
+            if (target.offer(frame)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 移除已断开的订阅进程，并把它未确认的事件按原顺序改发
+     */
+    private void reap() {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.open) {
+                continue;
+            }
+            subscribers.remove(subscriber);
+            List<Frame> pending = subscriber.drain();
+            if (pending.isEmpty()) {
+                continue;
+            }
+            logger.warn("訂閱進程 {} 已斷開，{} 個未確認的事件將轉發給其他訂閱進程。",
+                    subscriber.socket.getRemoteSocketAddress(), pending.size());
+            for (Frame frame : pending) {
+                publish(frame);
+            }
+        }
+    }
+
+    /**
+     * 选择事件帧的订阅进程<br>
+     * 属于群的事件选择与群号组合后权重最大的订阅进程，订阅进程变化时只有归属于它的群改变
+     *
+     * @param frame 事件帧
+     * @return      订阅进程，没有时为 null
+     */
+    private Subscriber route(Frame frame) {
+        List<Subscriber> temp = new ArrayList<>();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.open) {
+                temp.add(subscriber);
+            }
+        }
+        if (temp.isEmpty()) {
+            return null;
+        }
+        if (frame.group == 0) {
+            return temp.get(Math.floorMod(roundRobin.getAndIncrement(), temp.size()));
+        }
+
+        Subscriber best = null;
+        long bestWeight = 0;
+        for (Subscriber subscriber : temp) {
+            long weight = mix(frame.group * 0x9E3779B97F4A7C15L + subscriber.id);
+            if (best == null || Long.compareUnsigned(weight, bestWeight) > 0) {
+                best = subscriber;
+                bestWeight = weight;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * SplitMix64 混合函数
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * 接受订阅进程
+     */
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Subscriber subscriber = new Subscriber(subscriberIds.incrementAndGet(), socket);
+                subscribers.add(subscriber);
+                subscriber.start();
+                logger.info("訂閱進程 {} 已連接。", socket.getRemoteSocketAddress());
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.warn("接受訂閱進程時出錯。", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 关闭中继与所有订阅进程的连接
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+    }
+
+    /**
+     * 待发送的事件帧
+     */
+    private static class Frame {
+        private final long group;
+        private final byte[] payload;
+
+        private Frame(long group, byte[] payload) {
+            this.group = group;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * 一个订阅进程
+     */
+    private class Subscriber {
+        private final long id;
+        private final Socket socket;
+        private final BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(queueSize);
+        private final Semaphore credits = new Semaphore(0);
+        private volatile boolean open = true;
+
+        /**
+         * 已取出但订阅进程尚未确认处理的事件帧，按发送顺序排列
+         */
+        private final ArrayDeque<Frame> unacked = new ArrayDeque<>();
+
+        /**
+         * 发送线程
+         */
+        private volatile Thread writer;
+
+        private Subscriber(long id, Socket socket) {
+            this.id = id;
+            this.socket = socket;
+        }
+
+        /**
+         * 启动读取额度与发送事件的线程
+         */
+        private void start() throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            Thread reader = Threads.newThread("MiraiHttp-Relay-Credit", () -> readLoop(in));
+            reader.setDaemon(true);
+            reader.start();
+
+            writer = Threads.newThread("MiraiHttp-Relay-Send", () -> writeLoop(out));
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        /**
+         * 加入待发送队列，队列满时等待
+         *
+         * @param frame 事件帧
+         * @return      是否加入，订阅进程已断开时为 false
+         */
+        private boolean offer(Frame frame) {
+            try {
+                while (open) {
+                    if (queue.offer(frame, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        /**
+         * 读取订阅进程发来的额度<br>
+         * 第一个额度是初始窗口，之后的额度同时确认同样数量的事件已处理
+         */
+        private void readLoop(DataInputStream in) {
+            boolean granted = false;
+            try {
+                while (open) {
+                    int length = RelayFrames.readLength(in);
+                    byte type = in.readByte();
+                    if (type == RelayFrames.CREDIT && length == 5) {
+                        int count = in.readInt();
+                        if (granted) {
+                            ack(count);
+                        }
+                        granted = true;
+                        credits.release(count);
+                    } else {
+                        in.skipBytes(length - 1);
+                    }
+                }
+            } catch (IOException e) {
+                disconnect(e);
+            }
+        }
+
+        /**
+         * 在有额度时发送事件
+         */
+        private void writeLoop(DataOutputStream out) {
+            try {
+                while (open) {
+                    Frame frame = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (frame == null) {
+                        continue;
+                    }
+                    synchronized (unacked) {
+                        unacked.addLast(frame);
+                    }
+                    if (!credits.tryAcquire()) {
+                        //额度用完，先把已写入的事件发出去再等待
+                        out.flush();
+                        credits.acquire();
+                    }
+                    RelayFrames.writeEvent(out, frame.group, frame.payload);
+                    if (queue.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                disconnect(e);
+            }
+        }
+
+        /**
+         * 确认最早发送的事件已处理
+         *
+         * @param count 事件数
+         */
+        private void ack(int count) {
+            synchronized (unacked) {
+                for (int i = 0; i < count && !unacked.isEmpty(); i++) {
+                    unacked.pollFirst();
+                }
+            }
+        }
+
+        /**
+         * 连接出错，断开订阅进程<br>
+         * 未确认的事件由下一次转发改发，见 {@link #reap()}
+         */
+        private void disconnect(Exception cause) {
+            if (!open) {
+                return;
+            }
+            close();
+            if (!closed) {
+                logger.warn("訂閱進程 {} 已斷開。", socket.getRemoteSocketAddress(), cause);
+            }
+        }
+
+        /**
+         * 取出未确认与未发送的事件帧，按原顺序排列<br>
+         * 先等待发送线程结束，之后不再有事件帧被取出
+         *
+         * @return 事件帧
+         */
+        private List<Frame> drain() {
+            try {
+                writer.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<Frame> pending;
+            synchronized (unacked) {
+                pending = new ArrayList<>(unacked);
+                unacked.clear();
+            }
+            queue.drainTo(pending);
+            return pending;
+        }
+
+        /**
+         * 关闭连接，并中断等待额度的发送线程
+         */
+        private void close() {
+            open = false;
+            try {
+                socket.close();
+            } catch (IOException ignored) { }
+            Thread temp = writer;
+            if (temp != null && temp != Thread.currentThread()) {
+                temp.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.xiaoyi311.relay;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * 事件中继帧格式<br>
+ * 每帧为 [int 长度][byte 类型][内容]，长度包含类型字节：
+ * <ul>
+ *     <li>EVENT：[long 群号，不属于群时为 0][UTF-8 编码的 Mirai 原始事件 JSON]</li>
+ *     <li>CREDIT：[int 额度]，订阅进程允许中继再发送的事件数</li>
+ * </ul>
+ */
+class RelayFrames {
+    /**
+     * 事件帧
+     */
+    static final byte EVENT = 1;
+
+    /**
+     * 额度帧
+     */
+    static final byte CREDIT = 2;
+
+    /**
+     * 单帧最大长度
+     */
+    static final int MAX_FRAME = 16 * 1024 * 1024;
+
+    /**
+     * 写入事件帧
+     *
+     * @param out     输出流
+     * @param group   群号
+     * @param payload 事件数据
+     */
+    static void writeEvent(DataOutputStream out, long group, byte[] payload) throws IOException {
+        out.writeInt(1 + 8 + payload.length);
+        out.writeByte(EVENT);
+        out.writeLong(group);
+        out.write(payload);
+    }
+
+    /**
+     * 写入额度帧
+     *
+     * @param out     输出流
+     * @param credits 额度
+     */
+    static void writeCredit(DataOutputStream out, int credits) throws IOException {
+        out.writeInt(1 + 4);
+        out.writeByte(CREDIT);
+        out.writeInt(credits);
+    }
+
+    /**
+     * 读取帧长度并检查
+     *
+     * @param in 输入流
+     * @return   帧长度
+     */
+    static int readLength(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 1 || length > MAX_FRAME) {
+            throw new IOException("無效的中繼幀長度：" + length);
+        }
+        return length;
+    }
+}
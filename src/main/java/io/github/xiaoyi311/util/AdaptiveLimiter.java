@@ -0,0 +1,269 @@
+package io.github.xiaoyi311.util;
+
+import io.github.xiaoyi311.err.LimitExceeded;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 自适应并发限制<br>
+ * 按往返耗时调整并发上限（Vegas 的梯度变体）：以近期平均耗时的最小值为无排队时的基准，与近期平均耗时相比，
+ * 近期耗时没有明显变长时上限增加约 √limit，变长时按比例缩小；请求失败时上限减半。
+ * 比较的是平滑后的耗时而非单次耗时，单次耗时的抖动不会让上限骤降；基准会缓慢向上跟随，以适应整体变慢的服务器。
+ * 超过上限的请求排队等待，等待超时抛出 {@link LimitExceeded}
+ */
+public class AdaptiveLimiter {
+    /**
+     * 近期平均耗时中新样本的权重，约为最近 10 次请求
+     */
+    private static final double SHORT_WEIGHT = 0.1;
+
+    /**
+     * 基准向上跟随近期耗时的速度，约 5000 次请求
+     */
+    private static final double LONG_WEIGHT = 0.0002;
+
+    /**
+     * 近期耗时不超过基准的多少倍时视为没有排队
+     */
+    private static final double TOLERANCE = 1.5;
+
+    /**
+     * 每次调整时新上限的权重
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * 最小上限
+     */
+    private final int minLimit;
+
+    /**
+     * 最大上限
+     */
+    private final int maxLimit;
+
+    /**
+     * 最长排队时间（纳秒）
+     */
+    private final long maxWaitNanos;
+
+    /**
+     * 锁，公平模式下排队的请求按顺序取得空位
+     */
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    /**
+     * 有空位时通知
+     */
+    private final Condition available = lock.newCondition();
+
+    /**
+     * 排队时间
+     */
+    private final LatencyHistogram queueTime = new LatencyHistogram();
+
+    /**
+     * 当前上限，带小数以便缓慢增减
+     */
+    private double limit;
+
+    /**
+     * 正在进行的请求数
+     */
+    private int inFlight = 0;
+
+    /**
+     * 近期平均耗时（纳秒），尚未测量时为 0
+     */
+    private double shortRtt = 0;
+
+    /**
+     * 基准耗时（纳秒），尚未测量时为 0
+     */
+    private double longRtt = 0;
+
+    /**
+     * 被拒绝的请求数
+     */
+    private long rejected = 0;
+
+    /**
+     * 创建自适应并发限制
+     *
+     * @param initial  初始上限
+     * @param min      最小上限
+     * @param max      最大上限
+     * @param maxWait  最长排队时间，0 为没有空位时立即拒绝
+     * @param unit     时间单位
+     */
+    public AdaptiveLimiter(int initial, int min, int max, long maxWait, TimeUnit unit) {
+        if (min < 1 || max < min || initial < min || initial > max) {
+            throw new IllegalArgumentException("必須滿足 1 <= min <= initial <= max");
+        }
+        this.limit = initial;
+        this.minLimit = min;
+        this.maxLimit = max;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+    }
+
+    /**
+     * 取得一个空位<br>
+     * 没有空位时排队，超过最长排队时间或线程被中断时抛出 LimitExceeded
+     */
+    public void acquire() {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            long remaining = maxWaitNanos;
+            while (inFlight >= (int) limit) {
+                if (remaining <= 0) {
+                    rejected++;
+                    throw new LimitExceeded((int) limit);
+                }
+                try {
+                    remaining = available.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    rejected++;
+                    throw new LimitExceeded((int) limit);
+                }
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+        queueTime.record(System.nanoTime() - start);
+    }
+
+    /**
+     * 释放空位并按本次结果调整上限
+     *
+     * @param rtt     本次往返耗时（纳秒）
+     * @param success 是否成功，失败时上限减半
+     */
+    public void release(long rtt, boolean success) {
+        lock.lock();
+        try {
+            int previous = (int) limit;
+            boolean saturated = inFlight * 2 >= previous;
+            inFlight--;
+
+            if (!success) {
+                limit = Math.max(minLimit, limit / 2);
+            } else {
+                if (longRtt == 0) {
+                    shortRtt = rtt;
+                    longRtt = rtt;
+                }
+                shortRtt += (rtt - shortRtt) * SHORT_WEIGHT;
+                //基准立即跟随更小的近期耗时，只缓慢跟随变大的耗时，持续排队时基准不会很快被抬高
+                if (shortRtt < longRtt) {
+                    longRtt = shortRtt;
+                } else {
+                    longRtt += (shortRtt - longRtt) * LONG_WEIGHT;
+                }
+
+                double gradient = Math.max(0.5, Math.min(1, TOLERANCE * longRtt / shortRtt));
+                double target = limit * gradient + Math.sqrt(limit);
+                //请求数远低于上限时不增大，避免空闲时上限无限增长
+                if (target > limit && !saturated) {
+                    target = limit;
+                }
+                //每个样本只代表约 1/limit 个往返，增大时放慢，约每个往返增大 20%；减小时不放慢，尽快退让
+                double weight = target > limit ? SMOOTHING / Math.sqrt(limit) : SMOOTHING;
+                limit = Math.max(minLimit, Math.min(maxLimit, limit + (target - limit) * weight));
+            }
+
+            if ((int) limit > previous) {
+                available.signalAll();
+            } else {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取当前上限
+     *
+     * @return 并发上限
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取正在进行的请求数
+     *
+     * @return 请求数
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取被拒绝的请求数
+     *
+     * @return 请求数
+     */
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取近期平均往返耗时
+     *
+     * @param unit 时间单位
+     * @return     耗时，尚未测量时为 0
+     */
+    public long getRtt(TimeUnit unit) {
+        lock.lock();
+        try {
+            return unit.convert((long) shortRtt, TimeUnit.NANOSECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取作为无排队基准的往返耗时
+     *
+     * @param unit 时间单位
+     * @return     耗时，尚未测量时为 0
+     */
+    public long getBaselineRtt(TimeUnit unit) {
+        lock.lock();
+        try {
+            return unit.convert((long) longRtt, TimeUnit.NANOSECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取排队时间分布
+     *
+     * @return 排队时间
+     */
+    public LatencyHistogram getQueueTime() {
+        return queueTime;
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.xiaoyi311.util;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限制并发数的每任务一线程线程池<br>
+ * 每个任务都在新的线程中执行，任务开始前先取得许可，同时执行的任务数不超过许可数。
+ * 用于虚拟线程：等待许可的虚拟线程不占用平台线程，不需要任务队列
+ */
+class BoundedExecutor extends AbstractExecutorService {
+    /**
+     * 每任务一线程的线程池
+     */
+    private final ExecutorService delegate;
+
+    /**
+     * 执行许可
+     */
+    private final Semaphore permits;
+
+    /**
+     * 创建线程池
+     *
+     * @param delegate 每任务一线程的线程池
+     * @param permits  最大并发数
+     */
+    BoundedExecutor(ExecutorService delegate, int permits) {
+        this.delegate = delegate;
+        this.permits = new Semaphore(permits);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                //线程池已强制关闭
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                command.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,475 @@
+package io.github.xiaoyi311.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 会话状态存储<br>
+ * 按 (群号, 成员 QQ) 保存多步指令的状态，例如问答或表单。键直接使用两个 long，查找不创建键对象。
+ * 状态在创建后 ttl 或最后访问后 idle 过期，由时间轮统一清理；超过最大数量时清除最久未访问的状态，
+ * 所以无论多少用户开始会话，内存占用都有上限。所有方法都是线程安全的
+ */
+public class ConversationStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.ConversationStore");
+
+    /**
+     * 创建后的存活时间（毫秒），0 为不限制
+     */
+    private final long ttl;
+
+    /**
+     * 最后访问后的存活时间（毫秒），0 为不限制
+     */
+    private final long idle;
+
+    /**
+     * 最大数量
+     */
+    private final int maxSize;
+
+    /**
+     * 过期时间轮
+     */
+    private final TimerWheel<Entry> wheel;
+
+    /**
+     * 哈希桶
+     */
+    private Entry[] table = new Entry[16];
+
+    /**
+     * 按访问顺序排列的链表，头部为最久未访问
+     */
+    private final Entry lru = new Entry(0, 0, null, 0);
+
+    /**
+     * 状态数
+     */
+    private int size = 0;
+
+    /**
+     * 清理线程
+     */
+    private final Thread cleaner;
+
+    /**
+     * 是否已关闭
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * 状态被清除时的通知，可为 null
+     */
+    private volatile RemovalListener removalListener;
+
+    /**
+     * 创建会话状态存储
+     *
+     * @param ttl     创建后的存活时间（毫秒），0 为不限制
+     * @param idle    最后访问后的存活时间（毫秒），0 为不限制
+     * @param maxSize 最大数量
+     */
+    public ConversationStore(long ttl, long idle, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize 必须大于 0");
+        }
+        this.ttl = Math.max(ttl, 0);
+        this.idle = Math.max(idle, 0);
+        this.maxSize = maxSize;
+        this.wheel = new TimerWheel<>(100, System.currentTimeMillis());
+        lru.before = lru;
+        lru.after = lru;
+
+        cleaner = Threads.newThread("MiraiHttp-Conversation-Cleaner", this::cleanLoop);
+        cleaner.setDaemon(true);
+        cleaner.start();
+    }
+
+    /**
+     * 设置状态被清除时的通知
+     *
+     * @param listener 通知，null 为不通知
+     */
+    public void setRemovalListener(RemovalListener listener) {
+        this.removalListener = listener;
+    }
+
+    /**
+     * 获取状态，并刷新最后访问时间
+     *
+     * @param group  群号
+     * @param member 成员 QQ
+     * @param <T>    状态类型
+     * @return       状态，不存在或已过期时为 null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(long group, long member) {
+        List<Entry> removed;
+        Object value;
+        synchronized (this) {
+            removed = expire(System.currentTimeMillis());
+            Entry entry = find(group, member);
+            value = entry != null ? touch(entry).value : null;
+        }
+        notifyRemoved(removed, Cause.EXPIRED);
+        return (T) value;
+    }
+
+    /**
+     * 保存状态，替换原有状态并重新计算存活时间
+     *
+     * @param group  群号
+     * @param member 成员 QQ
+     * @param value  状态
+     */
+    public void put(long group, long member, Object value) {
+        List<Entry> removed;
+        List<Entry> evicted;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            removed = expire(now);
+            Entry entry = find(group, member);
+            if (entry != null) {
+                entry.value = value;
+                entry.created = now;
+                touch(entry);
+                evicted = null;
+            } else {
+                insert(new Entry(group, member, value, now));
+                evicted = evict();
+            }
+        }
+        notifyRemoved(removed, Cause.EXPIRED);
+        notifyRemoved(evicted, Cause.SIZE);
+    }
+
+    /**
+     * 获取状态，不存在时创建
+     *
+     * @param group    群号
+     * @param member   成员 QQ
+     * @param supplier 创建状态
+     * @param <T>      状态类型
+     * @return         状态
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T computeIfAbsent(long group, long member, Supplier<T> supplier) {
+        List<Entry> removed;
+        List<Entry> evicted = null;
+        Object value;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            removed = expire(now);
+            Entry entry = find(group, member);
+            if (entry != null) {
+                value = touch(entry).value;
+            } else {
+                value = supplier.get();
+                insert(new Entry(group, member, value, now));
+                evicted = evict();
+            }
+        }
+        notifyRemoved(removed, Cause.EXPIRED);
+        notifyRemoved(evicted, Cause.SIZE);
+        return (T) value;
+    }
+
+    /**
+     * 移除状态
+     *
+     * @param group  群号
+     * @param member 成员 QQ
+     * @param <T>    状态类型
+     * @return       被移除的状态，不存在时为 null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T remove(long group, long member) {
+        synchronized (this) {
+            Entry entry = find(group, member);
+            if (entry == null) {
+                return null;
+            }
+            delete(entry);
+            return (T) entry.value;
+        }
+    }
+
+    /**
+     * 获取状态数
+     *
+     * @return 状态数，可能包含尚未清理的过期状态
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 清除所有状态
+     */
+    public synchronized void clear() {
+        for (Entry entry = lru.after; entry != lru; entry = entry.after) {
+            wheel.cancel(entry.timeout);
+        }
+        table = new Entry[16];
+        lru.before = lru;
+        lru.after = lru;
+        size = 0;
+    }
+
+    /**
+     * 停止清理线程
+     */
+    @Override
+    public void close() {
+        closed = true;
+        cleaner.interrupt();
+    }
+
+    /**
+     * 定时清理过期状态
+     */
+    private void cleanLoop() {
+        while (!closed) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            List<Entry> removed;
+            synchronized (this) {
+                removed = expire(System.currentTimeMillis());
+            }
+            notifyRemoved(removed, Cause.EXPIRED);
+        }
+    }
+
+    /**
+     * 推进时间轮，移除到期的状态
+     */
+    private List<Entry> expire(long now) {
+        List<Entry> removed = wheel.advance(now);
+        for (Entry entry : removed) {
+            unlinkTable(entry);
+            unlinkLru(entry);
+            size--;
+        }
+        return removed;
+    }
+
+    /**
+     * 超过最大数量时移除最久未访问的状态
+     */
+    private List<Entry> evict() {
+        List<Entry> evicted = null;
+        while (size > maxSize) {
+            Entry eldest = lru.after;
+            delete(eldest);
+            if (evicted == null) {
+                evicted = new ArrayList<>();
+            }
+            evicted.add(eldest);
+        }
+        return evicted;
+    }
+
+    /**
+     * 刷新访问时间、访问顺序与到期时间
+     */
+    private Entry touch(Entry entry) {
+        entry.accessed = System.currentTimeMillis();
+        unlinkLru(entry);
+        linkLru(entry);
+        if (entry.timeout != null) {
+            wheel.reschedule(entry.timeout, deadline(entry));
+        }
+        return entry;
+    }
+
+    /**
+     * 计算到期时间
+     */
+    private long deadline(Entry entry) {
+        long deadline = Long.MAX_VALUE;
+        if (ttl > 0) {
+            deadline = entry.created + ttl;
+        }
+        if (idle > 0) {
+            deadline = Math.min(deadline, entry.accessed + idle);
+        }
+        return deadline;
+    }
+
+    /**
+     * 查找状态
+     */
+    private Entry find(long group, long member) {
+        Entry entry = table[indexOf(group, member, table.length)];
+        while (entry != null && (entry.group != group || entry.member != member)) {
+            entry = entry.next;
+        }
+        return entry;
+    }
+
+    /**
+     * 加入新状态
+     */
+    private void insert(Entry entry) {
+        if (size + 1 > table.length * 3 / 4) {
+            resize();
+        }
+        int index = indexOf(entry.group, entry.member, table.length);
+        entry.next = table[index];
+        table[index] = entry;
+        linkLru(entry);
+        size++;
+        if (ttl > 0 || idle > 0) {
+            entry.timeout = wheel.schedule(entry, deadline(entry));
+        }
+    }
+
+    /**
+     * 移除状态
+     */
+    private void delete(Entry entry) {
+        unlinkTable(entry);
+        unlinkLru(entry);
+        if (entry.timeout != null) {
+            wheel.cancel(entry.timeout);
+        }
+        size--;
+    }
+
+    /**
+     * 扩大哈希表
+     */
+    private void resize() {
+        Entry[] temp = new Entry[table.length * 2];
+        for (Entry head : table) {
+            Entry entry = head;
+            while (entry != null) {
+                Entry next = entry.next;
+                int index = indexOf(entry.group, entry.member, temp.length);
+                entry.next = temp[index];
+                temp[index] = entry;
+                entry = next;
+            }
+        }
+        table = temp;
+    }
+
+    private void unlinkTable(Entry entry) {
+        int index = indexOf(entry.group, entry.member, table.length);
+        Entry prev = null;
+        Entry current = table[index];
+        while (current != null && current != entry) {
+            prev = current;
+            current = current.next;
+        }
+        if (current == null) {
+            return;
+        }
+        if (prev == null) {
+            table[index] = entry.next;
+        } else {
+            prev.next = entry.next;
+        }
+        entry.next = null;
+    }
+
+    private void linkLru(Entry entry) {
+        entry.before = lru.before;
+        entry.after = lru;
+        lru.before.after = entry;
+        lru.before = entry;
+    }
+
+    private void unlinkLru(Entry entry) {
+        entry.before.after = entry.after;
+        entry.after.before = entry.before;
+    }
+
+    /**
+     * 计算哈希桶位置
+     */
+    private static int indexOf(long group, long member, int length) {
+        long hash = group * 0x9E3779B97F4A7C15L + member;
+        hash ^= hash >>> 32;
+        hash *= 0xD6E8FEB86659FD93L;
+        return (int) (hash ^ (hash >>> 32)) & (length - 1);
+    }
+
+    /**
+     * 通知被清除的状态
+     */
+    private void notifyRemoved(List<Entry> entries, Cause cause) {
+        RemovalListener listener = removalListener;
+        if (listener == null || entries == null) {
+            return;
+        }
+        for (Entry entry : entries) {
+            try {
+                listener.onRemoved(entry.group, entry.member, entry.value, cause);
+            } catch (Exception e) {
+                logger.warn("會話狀態清除通知出錯。", e);
+            }
+        }
+    }
+
+    /**
+     * 状态被清除的原因
+     */
+    public enum Cause {
+        /**
+         * 存活时间已到
+         */
+        EXPIRED,
+
+        /**
+         * 超过最大数量
+         */
+        SIZE
+    }
+
+    /**
+     * 状态被清除时的通知
+     */
+    public interface RemovalListener {
+        /**
+         * 状态因过期或超过最大数量被清除时
+         *
+         * @param group  群号
+         * @param member 成员 QQ
+         * @param value  状态
+         * @param cause  原因
+         */
+        void onRemoved(long group, long member, Object value, Cause cause);
+    }
+
+    /**
+     * 一条状态
+     */
+    private static class Entry {
+        private final long group;
+        private final long member;
+        private Object value;
+        private long created;
+        private long accessed;
+        private Entry next;
+        private Entry before;
+        private Entry after;
+        private TimerWheel.Timeout<Entry> timeout;
+
+        private Entry(long group, long member, Object value, long now) {
+            this.group = group;
+            this.member = member;
+            this.value = value;
+            this.created = now;
+            this.accessed = now;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.github.xiaoyi311.util;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min 频率估计<br>
+ * 以 depth 行、width 列的计数器估计每个键出现的次数，内存固定，与键的数量无关。
+ * 估计值不会小于真实值，超出部分不超过 总次数 * e / width 的概率至少为 1 - e^-depth。
+ * 使用保守更新以减小高估，线程不安全
+ */
+public class CountMinSketch {
+    /**
+     * 每行宽度，为 2 的幂
+     */
+    private final int width;
+
+    /**
+     * 行数
+     */
+    private final int depth;
+
+    /**
+     * 计数器，按行连续存放
+     */
+    private final int[] counters;
+
+    /**
+     * 总次数
+     */
+    private long total;
+
+    /**
+     * 创建频率估计
+     *
+     * @param width 每行宽度，会向上取 2 的幂
+     * @param depth 行数
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width < 1 || depth < 1) {
+            throw new IllegalArgumentException("width 与 depth 必须大于 0");
+        }
+        int w = 1;
+        while (w < width) {
+            w <<= 1;
+        }
+        this.width = w;
+        this.depth = depth;
+        this.counters = new int[this.width * depth];
+    }
+
+    /**
+     * 记录一次
+     *
+     * @param key 键
+     * @return    记录后的估计次数
+     */
+    public int add(long key) {
+        //保守更新：只增加等于当前最小值的计数器
+        int min = estimate(key);
+        int next = min == Integer.MAX_VALUE ? min : min + 1;
+        for (int i = 0; i < depth; i++) {
+            int index = index(key, i);
+            if (counters[index] < next) {
+                counters[index] = next;
+            }
+        }
+        total++;
+        return next;
+    }
+
+    /**
+     * 估计次数
+     *
+     * @param key 键
+     * @return    估计次数，不小于真实值
+     */
+    public int estimate(long key) {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters[index(key, i)]);
+        }
+        return min;
+    }
+
+    /**
+     * 获取总次数
+     *
+     * @return 总次数
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * 清空记录
+     */
+    public void clear() {
+        Arrays.fill(counters, 0);
+        total = 0;
+    }
+
+    /**
+     * 计算键在某一行的位置
+     *
+     * @param key 键
+     * @param row 行
+     * @return    计数器位置
+     */
+    private int index(long key, int row) {
+        //SplitMix64 混合，每行使用不同的种子
+        long z = key + (row + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return row * width + (int) (z & (width - 1));
+    }
+}
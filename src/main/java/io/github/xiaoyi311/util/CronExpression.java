@@ -0,0 +1,173 @@
+package io.github.xiaoyi311.util;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Cron 表达式<br>
+ * 五个字段依次为分钟（0-59）、小时（0-23）、日（1-31）、月（1-12）、星期（0-7，0 与 7 为星期日），以空格分隔。
+ * 每个字段支持 *、数值、范围 a-b、列表 a,b 与步长 a/n、a-b/n（a 可为 *）。
+ * 日与星期都不为 * 时，满足任意一个即可，与常见的 cron 实现相同
+ */
+public class CronExpression {
+    /**
+     * 向后查找的最大年数，超过时视为不会再触发
+     */
+    private static final int MAX_YEARS = 5;
+
+    /**
+     * 原始表达式
+     */
+    private final String expression;
+
+    private final long minutes;
+    private final long hours;
+    private final long days;
+    private final long months;
+    private final long weekdays;
+
+    /**
+     * 日字段是否为 *
+     */
+    private final boolean anyDay;
+
+    /**
+     * 星期字段是否为 *
+     */
+    private final boolean anyWeekday;
+
+    /**
+     * 解析表达式
+     *
+     * @param expression 表达式
+     */
+    public CronExpression(String expression) {
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("cron 表达式需要 5 个字段：" + expression);
+        }
+        this.expression = expression.trim();
+        this.minutes = parse(fields[0], 0, 59);
+        this.hours = parse(fields[1], 0, 23);
+        this.days = parse(fields[2], 1, 31);
+        this.months = parse(fields[3], 1, 12);
+
+        long weekdays = parse(fields[4], 0, 7);
+        if ((weekdays & (1L << 7)) != 0) {
+            weekdays |= 1;
+        }
+        this.weekdays = weekdays;
+        this.anyDay = fields[2].startsWith("*");
+        this.anyWeekday = fields[4].startsWith("*");
+    }
+
+    /**
+     * 计算指定时间之后的下一次触发时间
+     *
+     * @param after 时间，结果严格晚于此时间
+     * @return      下一次触发时间，精确到分钟；五年内不会触发时为 null
+     */
+    public ZonedDateTime next(ZonedDateTime after) {
+        ZonedDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        int limit = time.getYear() + MAX_YEARS;
+
+        while (time.getYear() <= limit) {
+            if (!has(months, time.getMonthValue())) {
+                time = time.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1).plusMonths(1);
+                continue;
+            }
+            if (!matchDay(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+                continue;
+            }
+            if (!has(hours, time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+                continue;
+            }
+            if (!has(minutes, time.getMinute())) {
+                time = time.plusMinutes(1);
+                continue;
+            }
+            return time;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * 日与星期是否满足
+     */
+    private boolean matchDay(ZonedDateTime time) {
+        boolean day = has(days, time.getDayOfMonth());
+        boolean weekday = has(weekdays, time.getDayOfWeek().getValue() % 7);
+        if (anyDay || anyWeekday) {
+            return day && weekday;
+        }
+        return day || weekday;
+    }
+
+    private static boolean has(long bits, int value) {
+        return (bits & (1L << value)) != 0;
+    }
+
+    /**
+     * 解析单个字段为位集合
+     *
+     * @param field 字段
+     * @param min   最小值
+     * @param max   最大值
+     * @return      位集合，第 n 位表示 n 满足
+     */
+    private static long parse(String field, int min, int max) {
+        long bits = 0;
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = number(part.substring(slash + 1), 1, max);
+                part = part.substring(0, slash);
+            }
+
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else {
+                int dash = part.indexOf('-');
+                if (dash >= 0) {
+                    from = number(part.substring(0, dash), min, max);
+                    to = number(part.substring(dash + 1), min, max);
+                    if (from > to) {
+                        throw new IllegalArgumentException("cron 字段范围无效：" + field);
+                    }
+                } else {
+                    from = number(part, min, max);
+                    to = slash >= 0 ? max : from;
+                }
+            }
+
+            for (int i = from; i <= to; i += step) {
+                bits |= 1L << i;
+            }
+        }
+        return bits;
+    }
+
+    private static int number(String text, int min, int max) {
+        int value;
+        try {
+            value = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("cron 字段无效：" + text);
+        }
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("cron 字段 " + value + " 超出范围 " + min + "-" + max);
+        }
+        return value;
+    }
+}
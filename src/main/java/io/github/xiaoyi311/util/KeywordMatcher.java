@@ -0,0 +1,324 @@
+package io.github.xiaoyi311.util;
+
+import io.github.xiaoyi311.entity.message.MessageChain;
+import io.github.xiaoyi311.event.GroupMessageEvent;
+import io.github.xiaoyi311.event.MiraiEventListener;
+
+import java.util.*;
+
+/**
+ * 多关键词匹配工具<br>
+ * 将注册的关键词组编译为 Aho-Corasick 自动机，一次线性扫描即可找出文本中所有关键词，耗时与关键词数量无关。
+ * 修改关键词组时在后台构建新自动机后再替换，替换前后的匹配都不会被暂停
+ */
+public class KeywordMatcher {
+    /**
+     * 是否忽略大小写
+     */
+    private final boolean ignoreCase;
+
+    /**
+     * 所有关键词组
+     */
+    private final Map<String, Set<String>> keywordSets = new LinkedHashMap<>();
+
+    /**
+     * 当前使用的自动机
+     */
+    private volatile Automaton automaton = new Automaton(new ArrayList<>(), false);
+
+    /**
+     * 创建关键词匹配工具
+     *
+     * @param ignoreCase 是否忽略大小写
+     */
+    public KeywordMatcher(boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * 注册或替换关键词组，并重新构建自动机
+     *
+     * @param set      关键词组名称
+     * @param keywords 关键词
+     */
+    public synchronized void register(String set, Collection<String> keywords) {
+        Set<String> temp = new LinkedHashSet<>();
+        for (String keyword : keywords) {
+            if (keyword != null && !keyword.isEmpty()) {
+                temp.add(keyword);
+            }
+        }
+        keywordSets.put(set, temp);
+        rebuild();
+    }
+
+    /**
+     * 卸载关键词组，并重新构建自动机
+     *
+     * @param set 关键词组名称
+     */
+    public synchronized void unregister(String set) {
+        if (keywordSets.remove(set) != null) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 重新构建自动机<br>
+     * 构建期间匹配继续使用旧自动机，构建完成后原子替换
+     */
+    public synchronized void rebuild() {
+        List<Keyword> temp = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> entry : keywordSets.entrySet()) {
+            for (String keyword : entry.getValue()) {
+                temp.add(new Keyword(entry.getKey(), keyword));
+            }
+        }
+        automaton = new Automaton(temp, ignoreCase);
+    }
+
+    /**
+     * 在文本中查找所有关键词
+     *
+     * @param text     文本
+     * @param listener 每找到一个关键词调用一次，按结束位置顺序
+     */
+    public void match(CharSequence text, MatchListener listener) {
+        automaton.match(text, listener);
+    }
+
+    /**
+     * 文本中是否包含任意关键词
+     *
+     * @param text 文本
+     * @return     是否包含
+     */
+    public boolean containsAny(CharSequence text) {
+        return automaton.containsAny(text);
+    }
+
+    /**
+     * 创建群信息监听类<br>
+     * 对每条群信息的纯文本内容进行匹配，位置为关键词在纯文本中的位置
+     *
+     * @param listener 匹配通知
+     * @return         监听类，使用 MiraiHttp.registerListener 注册
+     */
+    public MiraiEventListener asListener(GroupMatchListener listener) {
+        return (event) -> {
+            String text = MessageChain.toPlainText(event.messages);
+            match(text, (set, keyword, start, end) -> listener.onMatch(event, set, keyword, start, end));
+        };
+    }
+
+    /**
+     * 匹配通知
+     */
+    public interface MatchListener {
+        /**
+         * 找到关键词时
+         *
+         * @param set     关键词所属的组
+         * @param keyword 关键词
+         * @param start   起始位置（包含）
+         * @param end     结束位置（不包含）
+         */
+        void onMatch(String set, String keyword, int start, int end);
+    }
+
+    /**
+     * 群信息匹配通知
+     */
+    public interface GroupMatchListener {
+        /**
+         * 在群信息中找到关键词时
+         *
+         * @param event   群信息事件
+         * @param set     关键词所属的组
+         * @param keyword 关键词
+         * @param start   在纯文本中的起始位置（包含）
+         * @param end     在纯文本中的结束位置（不包含）
+         */
+        void onMatch(GroupMessageEvent event, String set, String keyword, int start, int end);
+    }
+
+    /**
+     * 关键词与所属组
+     */
+    private static class Keyword {
+        private final String set;
+        private final String text;
+
+        private Keyword(String set, String text) {
+            this.set = set;
+            this.text = text;
+        }
+    }
+
+    /**
+     * 不可变的 Aho-Corasick 自动机<br>
+     * 每个节点的子节点按字符排序存放，查找时二分；失败指针与输出链接在构建时计算
+     */
+    private static class Automaton {
+        private static final char[] NO_CHARS = new char[0];
+        private static final int[] NO_INTS = new int[0];
+
+        private final boolean ignoreCase;
+        private final Keyword[] keywords;
+
+        /**
+         * 各节点子节点的字符与编号
+         */
+        private char[][] childChars;
+        private int[][] childNodes;
+
+        /**
+         * 失败指针
+         */
+        private int[] fail;
+
+        /**
+         * 在此节点结束的关键词，没有时为 -1
+         */
+        private int[] output;
+
+        /**
+         * 沿失败指针找到的下一个有关键词结束的节点，没有时为 -1
+         */
+        private int[] outputLink;
+
+        /**
+         * 在同一节点结束的下一个关键词，没有时为 -1
+         */
+        private int[] sameEnd;
+
+        private Automaton(List<Keyword> keywords, boolean ignoreCase) {
+            this.ignoreCase = ignoreCase;
+            this.keywords = keywords.toArray(new Keyword[0]);
+            build();
+        }
+
+        private void build() {
+            sameEnd = new int[keywords.length];
+            Arrays.fill(sameEnd, -1);
+
+            //构建字典树
+            List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+            List<Integer> ends = new ArrayList<>();
+            trie.add(new TreeMap<>());
+            ends.add(-1);
+            for (int k = 0; k < keywords.length; k++) {
+                int node = 0;
+                String text = keywords[k].text;
+                for (int i = 0; i < text.length(); i++) {
+                    char c = normalize(text.charAt(i));
+                    Integer next = trie.get(node).get(c);
+                    if (next == null) {
+                        next = trie.size();
+                        trie.add(new TreeMap<>());
+                        ends.add(-1);
+                        trie.get(node).put(c, next);
+                    }
+                    node = next;
+                }
+                //同一关键词出现在多个组中时，用链表串起来
+                sameEnd[k] = ends.get(node);
+                ends.set(node, k);
+            }
+
+            int size = trie.size();
+            childChars = new char[size][];
+            childNodes = new int[size][];
+            output = new int[size];
+            for (int n = 0; n < size; n++) {
+                TreeMap<Character, Integer> children = trie.get(n);
+                childChars[n] = children.isEmpty() ? NO_CHARS : new char[children.size()];
+                childNodes[n] = children.isEmpty() ? NO_INTS : new int[children.size()];
+                int i = 0;
+                for (Map.Entry<Character, Integer> entry : children.entrySet()) {
+                    childChars[n][i] = entry.getKey();
+                    childNodes[n][i] = entry.getValue();
+                    i++;
+                }
+                output[n] = ends.get(n);
+            }
+
+            //广度优先计算失败指针与输出链接
+            fail = new int[size];
+            outputLink = new int[size];
+            Arrays.fill(outputLink, -1);
+            int[] queue = new int[size];
+            int head = 0;
+            int tail = 0;
+            for (int child : childNodes[0]) {
+                queue[tail++] = child;
+            }
+            while (head < tail) {
+                int node = queue[head++];
+                for (int i = 0; i < childChars[node].length; i++) {
+                    char c = childChars[node][i];
+                    int child = childNodes[node][i];
+                    int f = fail[node];
+                    int target;
+                    while ((target = next(f, c)) < 0 && f != 0) {
+                        f = fail[f];
+                    }
+                    fail[child] = target < 0 ? 0 : target;
+                    int linked = fail[child];
+                    outputLink[child] = output[linked] >= 0 ? linked : outputLink[linked];
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        private int next(int node, char c) {
+            int i = Arrays.binarySearch(childChars[node], c);
+            return i >= 0 ? childNodes[node][i] : -1;
+        }
+
+        private char normalize(char c) {
+            return ignoreCase ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+        }
+
+        private int step(int node, char c) {
+            int target;
+            while ((target = next(node, c)) < 0 && node != 0) {
+                node = fail[node];
+            }
+            return target < 0 ? 0 : target;
+        }
+
+        private void match(CharSequence text, MatchListener listener) {
+            if (keywords.length == 0) {
+                return;
+            }
+            int node = 0;
+            for (int i = 0; i < text.length(); i++) {
+                node = step(node, normalize(text.charAt(i)));
+                int out = output[node] >= 0 ? node : outputLink[node];
+                while (out >= 0) {
+                    for (int k = output[out]; k >= 0; k = sameEnd[k]) {
+                        Keyword keyword = keywords[k];
+                        listener.onMatch(keyword.set, keyword.text, i + 1 - keyword.text.length(), i + 1);
+                    }
+                    out = outputLink[out];
+                }
+            }
+        }
+
+        private boolean containsAny(CharSequence text) {
+            if (keywords.length == 0) {
+                return false;
+            }
+            int node = 0;
+            for (int i = 0; i < text.length(); i++) {
+                node = step(node, normalize(text.charAt(i)));
+                if (output[node] >= 0 || outputLink[node] >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.xiaoyi311.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时直方图<br>
+ * 按 2 的幂划分区间记录纳秒耗时，内存固定，可在多线程中同时记录。百分位数为所在区间的上界，误差不超过一倍
+ */
+public class LatencyHistogram {
+    /**
+     * 区间数，第 i 个区间记录 [2^(i-1), 2^i) 纳秒的耗时
+     */
+    private static final int BUCKETS = 64;
+
+    /**
+     * 各区间计数
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * 总次数
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * 总耗时
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * 最大耗时
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时（纳秒）
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+        count.increment();
+        sum.add(nanos);
+        long current;
+        do {
+            current = max.get();
+        } while (nanos > current && !max.compareAndSet(current, nanos));
+    }
+
+    /**
+     * 获取记录次数
+     *
+     * @return 次数
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * 获取平均耗时
+     *
+     * @param unit 时间单位
+     * @return     平均耗时，没有记录时为 0
+     */
+    public double getMean(TimeUnit unit) {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) unit.convert(sum.sum(), TimeUnit.NANOSECONDS) / n;
+    }
+
+    /**
+     * 获取最大耗时
+     *
+     * @param unit 时间单位
+     * @return     最大耗时
+     */
+    public long getMax(TimeUnit unit) {
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 获取百分位耗时
+     *
+     * @param percentile 百分位，0 ~ 100
+     * @param unit       时间单位
+     * @return           百分位耗时，没有记录时为 0
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(n * Math.min(Math.max(percentile, 0), 100) / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= Math.max(target, 1)) {
+                long upper = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                return unit.convert(Math.min(upper, max.get()), TimeUnit.NANOSECONDS);
+            }
+        }
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 清空记录
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+}
@@ -1,20 +1,37 @@
 package io.github.xiaoyi311.util;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import io.github.xiaoyi311.err.NetworkIOError;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.*;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * 网络请求工具类<br>
  * 发出网络请求，与 Api 建立连接
  */
 public class Network {
+    /**
+     * 是否接受压缩的返回内容
+     */
+    private static volatile boolean acceptCompression = true;
+
+    /**
+     * 压缩请求内容的大小阈值，小于 0 为不压缩
+     */
+    private static volatile int requestCompressionThreshold = -1;
+
     /**
      * 向指定URL发送GET方法的请求
      *
@@ -23,8 +40,6 @@ public class Network {
      * @return URL  所代表远程资源的响应结果
      */
     public static NetworkReturn sendGet(String url, String param) throws NetworkIOError {
-        String result = "";
-        BufferedReader in = null;
         try {
             String urlNameString = url + "?" + param;
             URL realUrl = new URL(urlNameString);
@@ -32,25 +47,14 @@ public class Network {
             connection.setRequestProperty("accept", "*/*");
             connection.setRequestProperty("connection", "Keep-Alive");
             connection.setRequestProperty("user-agent", "Mozilla/4.0 (compatible; MSIE 6.0; Windows NT 5.1;SV1)");
+            acceptEncoding(connection);
             connection.connect();
-            in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            String line;
-            while ((line = in.readLine()) != null) {
-                result += line;
-            }
+            return readResponse(connection);
         } catch (IOException e) {
             throw new NetworkIOError(String.format("GET %s（參數：%s）時失敗！", url, param), e);
+        } catch (RuntimeException e) {
+            throw new NetworkIOError(String.format("GET %s（參數：%s）時返回內容無法解析！", url, param), e);
         }
-        finally {
-            try {
-                if (in != null) {
-                    in.close();
-                }
-            } catch (Exception e2) {
-                e2.printStackTrace();
-            }
-        }
-        return verifyReturnData(result);
     }
 
     /**
@@ -61,43 +65,244 @@ public class Network {
      * @return      所代表远程资源的响应结果
      */
     public static NetworkReturn sendPost(String url, String param) {
-        PrintWriter out = null;
-        BufferedReader in = null;
-        String result = "";
         try {
-            URL realUrl = new URL(url);
-            URLConnection conn = realUrl.openConnection();
+            return sendPostChecked(url, param);
+        } catch (NetworkIOError e) {
+            e.printStackTrace();
+            return verifyReturnData("");
+        }
+    }
+
+    /**
+     * 向指定 URL 发送POST方法的请求<br>
+     * 与 {@link #sendPost(String, String)} 相同，但网络错误或返回内容无法解析时抛出 NetworkIOError
+     *
+     * @param url   发送请求的 URL
+     * @param param 请求参数
+     * @return      所代表远程资源的响应结果
+     */
+    public static NetworkReturn sendPostChecked(String url, String param) throws NetworkIOError {
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+            conn.setRequestMethod("POST");
             conn.setRequestProperty("accept", "*/*");
             conn.setRequestProperty("connection", "Keep-Alive");
             conn.setRequestProperty("Charset", "UTF-8");
             conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
             conn.setRequestProperty("user-agent", "Mozilla/4.0 (compatible; MSIE 6.0; Windows NT 5.1;SV1)");
+            acceptEncoding(conn);
+            conn.setDoOutput(true);
+            conn.setDoInput(true);
+            writeBody(conn, param.getBytes(StandardCharsets.UTF_8));
+            return readResponse(conn);
+        } catch (IOException e) {
+            throw new NetworkIOError(String.format("POST %s 時失敗！", url), e);
+        } catch (RuntimeException e) {
+            throw new NetworkIOError(String.format("POST %s 時返回內容無法解析！", url), e);
+        }
+    }
+
+    /**
+     * 向指定 URL 发送 multipart/form-data 请求<br>
+     * 使用分块传输，文件内容由 file 直接写入连接，不会整体读入内存
+     *
+     * @param url      发送请求的 URL
+     * @param fields   普通表单字段
+     * @param fileField 文件字段名
+     * @param fileName 文件名
+     * @param file     写入文件内容
+     * @return         所代表远程资源的响应结果
+     */
+    public static NetworkReturn sendMultipart(
+            String url,
+            Map<String, String> fields,
+            String fileField,
+            String fileName,
+            BodyWriter file
+    ) throws NetworkIOError {
+        String boundary = "----MiraiHttp" + UUID.randomUUID().toString().replace("-", "");
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("accept", "*/*");
+            conn.setRequestProperty("connection", "Keep-Alive");
+            conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
+            conn.setRequestProperty("user-agent", "Mozilla/4.0 (compatible; MSIE 6.0; Windows NT 5.1;SV1)");
+            acceptEncoding(conn);
+            conn.setChunkedStreamingMode(64 * 1024);
             conn.setDoOutput(true);
             conn.setDoInput(true);
-            out = new PrintWriter(conn.getOutputStream());
-            out.print(param);
-            out.flush();
-            in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            String line;
-            while ((line = in.readLine()) != null) {
-                result += line;
+
+            try (OutputStream out = new BufferedOutputStream(conn.getOutputStream(), 64 * 1024)) {
+                for (Map.Entry<String, String> field : fields.entrySet()) {
+                    out.write(("--" + boundary + "\r\n"
+                            + "Content-Disposition: form-data; name=\"" + field.getKey() + "\"\r\n\r\n"
+                            + field.getValue() + "\r\n").getBytes(StandardCharsets.UTF_8));
+                }
+                out.write(("--" + boundary + "\r\n"
+                        + "Content-Disposition: form-data; name=\"" + fileField + "\"; filename=\"" + fileName + "\"\r\n"
+                        + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                file.writeTo(out);
+                out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+
+            return readResponse(conn);
+        } catch (IOException e) {
+            throw new NetworkIOError(String.format("POST %s（上傳 %s）時失敗！", url, fileName), e);
+        } catch (RuntimeException e) {
+            throw new NetworkIOError(String.format("POST %s（上傳 %s）時返回內容無法解析！", url, fileName), e);
+        }
+    }
+
+    /**
+     * 设置是否接受压缩的返回内容<br>
+     * 启用时请求带有 Accept-Encoding: gzip, deflate，服务器（例如反向代理）压缩的返回内容会先解压再解析，默认启用
+     *
+     * @param accept 是否接受
+     */
+    public static void setAcceptCompression(boolean accept) {
+        acceptCompression = accept;
+    }
+
+    /**
+     * 设置压缩请求内容的大小阈值<br>
+     * JSON 请求内容达到阈值时以 gzip 压缩发送，需要服务器或反向代理支持 Content-Encoding: gzip 的请求，默认不压缩
+     *
+     * @param bytes 阈值（字节），小于 0 为不压缩
+     */
+    public static void setRequestCompressionThreshold(int bytes) {
+        requestCompressionThreshold = bytes;
+    }
+
+    /**
+     * 按设置添加 Accept-Encoding
+     *
+     * @param conn 连接
+     */
+    private static void acceptEncoding(URLConnection conn) {
+        if (acceptCompression) {
+            conn.setRequestProperty("Accept-Encoding", "gzip, deflate");
+        }
+    }
+
+    /**
+     * 写入请求内容，达到阈值时压缩
+     *
+     * @param conn 连接
+     * @param body 请求内容
+     */
+    private static void writeBody(HttpURLConnection conn, byte[] body) throws IOException {
+        int threshold = requestCompressionThreshold;
+        if (threshold >= 0 && body.length >= threshold) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body);
+            }
+            body = compressed.toByteArray();
+            conn.setRequestProperty("Content-Encoding", "gzip");
+        }
+        conn.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * 读取返回内容<br>
+     * fastjson 不支持增量解析，返回内容（压缩时为解压后的内容）会完整读入一个字节数组，再直接由字节解析，
+     * 不经过逐行读取与中间字符串。未压缩时按 Content-Length 一次分配缓冲区
+     *
+     * @param conn 连接
+     * @return     返回数据
+     */
+    private static NetworkReturn readResponse(URLConnection conn) throws IOException {
+        String encoding = conn.getContentEncoding();
+        int length = isCompressed(encoding) ? -1 : conn.getContentLength();
+        try (InputStream in = decode(conn.getInputStream(), encoding)) {
+            return verifyReturnData(JSON.parseObject(readFully(in, length)));
         }
-        finally {
-            try {
-                if (out != null) {
-                    out.close();
+    }
+
+    /**
+     * 返回内容是否经过压缩
+     *
+     * @param encoding Content-Encoding
+     * @return         是否压缩
+     */
+    private static boolean isCompressed(String encoding) {
+        return encoding != null && !encoding.isEmpty() && !encoding.equalsIgnoreCase("identity");
+    }
+
+    /**
+     * 读取全部内容
+     *
+     * @param in     输入流
+     * @param length 预计长度，未知时小于等于 0
+     * @return       全部内容
+     */
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] buffer = new byte[length > 0 ? length : 8192];
+        int count = 0;
+        while (true) {
+            int n = in.read(buffer, count, buffer.length - count);
+            if (n < 0) {
+                return count == buffer.length ? buffer : Arrays.copyOf(buffer, count);
+            }
+            count += n;
+            if (count == buffer.length) {
+                int next = in.read();
+                if (next < 0) {
+                    return buffer;
                 }
-                if (in != null) {
-                    in.close();
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                buffer[count++] = (byte) next;
+            }
+        }
+    }
+
+    /**
+     * 按 Content-Encoding 解压返回内容
+     *
+     * @param in       返回内容
+     * @param encoding Content-Encoding
+     * @return         解压后的内容
+     */
+    private static InputStream decode(InputStream in, String encoding) throws IOException {
+        if (encoding == null || encoding.isEmpty() || encoding.equalsIgnoreCase("identity")) {
+            return in;
+        }
+        if (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip")) {
+            return new GZIPInputStream(in, 8192);
+        }
+        if (encoding.equalsIgnoreCase("deflate")) {
+            //deflate 应带有 zlib 头，部分服务器发送不带头的原始数据，按前两个字节判断
+            PushbackInputStream pushback = new PushbackInputStream(in, 2);
+            byte[] head = new byte[2];
+            int read = 0;
+            while (read < 2) {
+                int n = pushback.read(head, read, 2 - read);
+                if (n < 0) {
+                    break;
                 }
-            } catch (IOException ex) {
-                ex.printStackTrace();
+                read += n;
             }
+            pushback.unread(head, 0, read);
+            boolean zlib = read == 2 && (head[0] & 0x0F) == 8 && (((head[0] & 0xFF) << 8) | (head[1] & 0xFF)) % 31 == 0;
+
+            Inflater inflater = new Inflater(!zlib);
+            return new InflaterInputStream(pushback, inflater, 8192) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
         }
-        return verifyReturnData(result);
+        in.close();
+        throw new IOException("不支持的 Content-Encoding：" + encoding);
     }
 
     /**
@@ -107,13 +312,34 @@ public class Network {
      * @return 转换后数据
      */
     private static NetworkReturn verifyReturnData(String data){
-        JSONObject obj = JSONObject.parseObject(data);
+        return verifyReturnData(JSONObject.parseObject(data));
+    }
+
+    /**
+     * 转换数据类型
+     *
+     * @param obj 返回数据
+     * @return 转换后数据
+     */
+    private static NetworkReturn verifyReturnData(JSONObject obj){
         NetworkReturn ret = new NetworkReturn();
         ret.code = obj.getInteger("code");
         ret.data = obj;
         return ret;
     }
 
+    /**
+     * 请求内容写入器
+     */
+    public interface BodyWriter {
+        /**
+         * 写入请求内容
+         *
+         * @param out 请求输出流
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
     /**
      * 数据返回统一类型
      */
@@ -0,0 +1,95 @@
+package io.github.xiaoyi311.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 滑动窗口计数<br>
+ * 将窗口分为固定数量的桶，记录最近一个窗口内的次数，内存固定。
+ * 精度为一个桶的长度，线程不安全
+ */
+public class RateCounter {
+    /**
+     * 每个桶的长度（毫秒）
+     */
+    private final long bucketMillis;
+
+    /**
+     * 各桶计数
+     */
+    private final long[] counts;
+
+    /**
+     * 各桶对应的时间段序号
+     */
+    private final long[] epochs;
+
+    /**
+     * 创建计数
+     *
+     * @param window  窗口长度
+     * @param unit    时间单位
+     * @param buckets 桶的数量
+     */
+    public RateCounter(long window, TimeUnit unit, int buckets) {
+        long millis = unit.toMillis(window);
+        if (buckets < 1 || millis < buckets) {
+            throw new IllegalArgumentException("窗口需不短于桶的数量（毫秒）");
+        }
+        this.bucketMillis = millis / buckets;
+        this.counts = new long[buckets];
+        this.epochs = new long[buckets];
+    }
+
+    /**
+     * 记录一次
+     *
+     * @param now 当前时间（毫秒）
+     */
+    public void add(long now) {
+        long epoch = now / bucketMillis;
+        int i = (int) Math.floorMod(epoch, (long) counts.length);
+        if (epochs[i] != epoch) {
+            epochs[i] = epoch;
+            counts[i] = 0;
+        }
+        counts[i]++;
+    }
+
+    /**
+     * 获取最近一个窗口内的次数
+     *
+     * @param now 当前时间（毫秒）
+     * @return    次数
+     */
+    public long getCount(long now) {
+        long epoch = now / bucketMillis;
+        long sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (epoch - epochs[i] < counts.length && epochs[i] <= epoch) {
+                sum += counts[i];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 获取最近一个窗口内的平均速率
+     *
+     * @param now  当前时间（毫秒）
+     * @param unit 速率的时间单位
+     * @return     每单位时间的次数
+     */
+    public double getRate(long now, TimeUnit unit) {
+        return getCount(now) * (double) unit.toMillis(1) / (bucketMillis * counts.length);
+    }
+
+    /**
+     * 获取窗口长度
+     *
+     * @param unit 时间单位
+     * @return     窗口长度
+     */
+    public long getWindow(TimeUnit unit) {
+        return unit.convert(bucketMillis * counts.length, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.xiaoyi311.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程工具类<br>
+ * 统一创建轮询、事件分发与发送所用的线程。在 Java 21 及以上版本运行时，
+ * 可通过 {@link #setVirtualThreads(boolean)} 或系统属性 {@code miraihttp.virtualThreads=true}
+ * 切换为虚拟线程；虚拟线程均为守护线程，不会阻止 JVM 退出，需由主线程自行保持运行
+ */
+public class Threads {
+    private static final Logger logger = LoggerFactory.getLogger("MiraiHttp.Threads");
+
+    /**
+     * 是否使用虚拟线程
+     */
+    private static volatile boolean virtualThreads = false;
+
+    static {
+        if (Boolean.getBoolean("miraihttp.virtualThreads")) {
+            setVirtualThreads(true);
+        }
+    }
+
+    /**
+     * 当前运行环境是否支持虚拟线程
+     *
+     * @return 是否支持
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return VirtualThreads.isSupported();
+    }
+
+    /**
+     * 设置是否使用虚拟线程<br>
+     * 只影响之后创建的线程；运行环境不支持时忽略并继续使用平台线程
+     *
+     * @param enable 是否使用
+     */
+    public static void setVirtualThreads(boolean enable) {
+        if (enable && !VirtualThreads.isSupported()) {
+            logger.warn("當前 Java 版本不支持虛擬線程，繼續使用平台線程。");
+            return;
+        }
+        virtualThreads = enable;
+    }
+
+    /**
+     * 是否正在使用虚拟线程
+     *
+     * @return 是否使用
+     */
+    public static boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * 创建一个未启动的线程
+     *
+     * @param name 线程名称
+     * @param task 线程任务
+     * @return     线程
+     */
+    public static Thread newThread(String name, Runnable task) {
+        if (virtualThreads) {
+            return VirtualThreads.newThread(name, task);
+        }
+        return new Thread(task, name);
+    }
+
+    /**
+     * 创建一个最多同时执行 maxThreads 个任务的线程池<br>
+     * 平台线程模式下为固定大小的线程池，线程为守护线程；
+     * 虚拟线程模式下每个任务一个虚拟线程，由信号量限制同时执行的任务数。
+     * maxThreads 为 1 时两种模式都使用单个线程，任务按提交顺序执行
+     *
+     * @param name       线程名称前缀
+     * @param maxThreads 最大并发数
+     * @return           线程池
+     */
+    public static ExecutorService newExecutor(String name, int maxThreads) {
+        if (virtualThreads && maxThreads > 1) {
+            return new BoundedExecutor(VirtualThreads.newExecutor(name + "-"), maxThreads);
+        }
+        return Executors.newFixedThreadPool(maxThreads, newFactory(name));
+    }
+
+    /**
+     * 创建线程工厂<br>
+     * 平台线程模式下线程为守护线程
+     *
+     * @param name 线程名称前缀
+     * @return     线程工厂
+     */
+    public static ThreadFactory newFactory(String name) {
+        if (virtualThreads) {
+            return VirtualThreads.newFactory(name + "-");
+        }
+        AtomicInteger threadId = new AtomicInteger();
+        return (r) -> {
+            Thread thread = new Thread(r, name + "-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,313 @@
+package io.github.xiaoyi311.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分层时间轮<br>
+ * 每层 256 个槽，共 6 层。加入、取消与重新安排都是 O(1)，推进时间时到期的任务按批返回。
+ * 时间轮本身不是线程安全的，调用方需自行同步
+ *
+ * @param <T> 任务类型
+ */
+public class TimerWheel<T> {
+    /**
+     * 每层槽数的位数
+     */
+    private static final int BITS = 8;
+
+    /**
+     * 每层槽数
+     */
+    private static final int SLOTS = 1 << BITS;
+
+    /**
+     * 槽号掩码
+     */
+    private static final int MASK = SLOTS - 1;
+
+    /**
+     * 层数
+     */
+    private static final int LEVELS = 6;
+
+    /**
+     * 可直接安排的最远刻度数，更远的任务先安排到最远处，到时再重新安排
+     */
+    private static final long MAX_TICKS = (1L << (BITS * LEVELS)) - 1;
+
+    /**
+     * 每刻度的毫秒数
+     */
+    private final long tickMillis;
+
+    /**
+     * 刻度 0 对应的时间
+     */
+    private final long startMillis;
+
+    /**
+     * 各层各槽的任务链表头
+     */
+    private final Timeout<T>[][] wheels;
+
+    /**
+     * 当前刻度，此刻度及之前的任务都已到期
+     */
+    private long currentTick = 0;
+
+    /**
+     * 任务数
+     */
+    private int size = 0;
+
+    /**
+     * 创建时间轮
+     *
+     * @param tickMillis  每刻度的毫秒数
+     * @param startMillis 开始时间
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMillis, long startMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("tickMillis 必须大于 0");
+        }
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+        this.wheels = (Timeout<T>[][]) new Timeout<?>[LEVELS][SLOTS];
+    }
+
+    /**
+     * 加入任务
+     *
+     * @param value    任务
+     * @param deadline 到期时间（毫秒），已过期的任务在下一刻度到期
+     * @return         任务句柄，可用于取消与重新安排
+     */
+    public Timeout<T> schedule(T value, long deadline) {
+        Timeout<T> timeout = new Timeout<>(value);
+        place(timeout, deadline);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * 重新安排任务的到期时间<br>
+     * 已到期或已取消的任务会重新加入
+     *
+     * @param timeout  任务句柄
+     * @param deadline 新的到期时间（毫秒）
+     */
+    public void reschedule(Timeout<T> timeout, long deadline) {
+        if (timeout.slot != null) {
+            unlink(timeout);
+        } else {
+            size++;
+        }
+        place(timeout, deadline);
+    }
+
+    /**
+     * 取消任务
+     *
+     * @param timeout 任务句柄
+     * @return        是否取消，任务已到期或已取消时为 false
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout.slot == null) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * 推进时间到指定时刻，返回这段时间内到期的任务
+     *
+     * @param now 当前时间（毫秒）
+     * @return    到期的任务，按到期刻度排序
+     */
+    public List<T> advance(long now) {
+        List<T> expired = new ArrayList<>();
+        long target = Math.floorDiv(now - startMillis, tickMillis);
+        while (currentTick < target) {
+            if (size == 0) {
+                currentTick = target;
+                break;
+            }
+            currentTick++;
+            cascade();
+
+            Timeout<T>[] level0 = wheels[0];
+            int index = (int) (currentTick & MASK);
+            Timeout<T> timeout = level0[index];
+            level0[index] = null;
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.slot = null;
+                timeout.prev = null;
+                timeout.next = null;
+                if (timeout.deadlineTick <= currentTick) {
+                    size--;
+                    expired.add(timeout.value);
+                } else {
+                    //超出最远范围的任务，重新安排
+                    insert(timeout);
+                }
+                timeout = next;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 获取任务数
+     *
+     * @return 任务数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 低层转完一圈时，把高层当前槽的任务重新安排到低层，从最高层开始
+     */
+    private void cascade() {
+        int top = 0;
+        for (int l = 1; l < LEVELS; l++) {
+            if ((currentTick & ((1L << (BITS * l)) - 1)) != 0) {
+                break;
+            }
+            top = l;
+        }
+        for (int l = top; l >= 1; l--) {
+            int index = (int) ((currentTick >>> (BITS * l)) & MASK);
+            Timeout<T> timeout = wheels[l][index];
+            wheels[l][index] = null;
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.slot = null;
+                timeout.prev = null;
+                timeout.next = null;
+                insert(timeout);
+                timeout = next;
+            }
+        }
+    }
+
+    /**
+     * 计算到期刻度并放入槽中
+     */
+    private void place(Timeout<T> timeout, long deadline) {
+        long delta = deadline - startMillis;
+        long tick = delta <= 0 ? 0 : (delta + tickMillis - 1) / tickMillis;
+        timeout.deadline = deadline;
+        timeout.deadlineTick = tick;
+        insert(timeout);
+    }
+
+    /**
+     * 按到期刻度与当前刻度的差异选择层与槽
+     */
+    private void insert(Timeout<T> timeout) {
+        long tick = Math.max(timeout.deadlineTick, currentTick + 1);
+        tick = Math.min(tick, currentTick + MAX_TICKS);
+        long diff = tick ^ currentTick;
+        int level = (63 - Long.numberOfLeadingZeros(diff)) / BITS;
+        int index = (int) ((tick >>> (BITS * level)) & MASK);
+
+        Timeout<T>[] slots = wheels[level];
+        timeout.slot = slots;
+        timeout.index = index;
+        timeout.prev = null;
+        timeout.next = slots[index];
+        if (slots[index] != null) {
+            slots[index].prev = timeout;
+        }
+        slots[index] = timeout;
+    }
+
+    /**
+     * 从槽中移除
+     */
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            timeout.slot[timeout.index] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.slot = null;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    /**
+     * 任务句柄
+     *
+     * @param <T> 任务类型
+     */
+    public static class Timeout<T> {
+        /**
+         * 任务
+         */
+        private final T value;
+
+        /**
+         * 到期时间（毫秒）
+         */
+        private long deadline;
+
+        /**
+         * 到期刻度
+         */
+        private long deadlineTick;
+
+        /**
+         * 所在的层，不在时间轮中时为 null
+         */
+        private Timeout<T>[] slot;
+
+        /**
+         * 所在的槽号
+         */
+        private int index;
+
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T value) {
+            this.value = value;
+        }
+
+        /**
+         * 获取任务
+         *
+         * @return 任务
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * 获取到期时间
+         *
+         * @return 到期时间（毫秒）
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * 是否仍在等待到期
+         *
+         * @return 是否等待
+         */
+        public boolean isPending() {
+            return slot != null;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package io.github.xiaoyi311.util;
+
+import java.util.*;
+
+/**
+ * 出现次数最多的 k 个键<br>
+ * 使用 Space-Saving 算法，只保存 k 个计数器，内存固定。出现次数超过 总次数 / k 的键一定在结果中，
+ * 每个结果的计数可能偏高，偏高不超过其 error。线程不安全
+ */
+public class TopK {
+    /**
+     * 最多保存的键数
+     */
+    private final int capacity;
+
+    /**
+     * 按计数排列的最小堆
+     */
+    private final Entry[] heap;
+
+    /**
+     * 键与计数器对应表
+     */
+    private final Map<Long, Entry> index;
+
+    /**
+     * 当前保存的键数
+     */
+    private int size;
+
+    /**
+     * 创建计数
+     *
+     * @param capacity 最多保存的键数
+     */
+    public TopK(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity 必须大于 0");
+        }
+        this.capacity = capacity;
+        this.heap = new Entry[capacity];
+        this.index = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * 记录一次
+     *
+     * @param key 键
+     */
+    public void add(long key) {
+        Entry entry = index.get(key);
+        if (entry == null && size < capacity) {
+            entry = new Entry(key, 1, 0);
+            entry.position = size;
+            heap[size++] = entry;
+            index.put(key, entry);
+            siftUp(entry.position);
+            return;
+        }
+
+        if (entry == null) {
+            //替换计数最小的键，新键继承其计数作为误差
+            entry = heap[0];
+            index.remove(entry.key);
+            entry.key = key;
+            entry.error = entry.count;
+            index.put(key, entry);
+        }
+        entry.count++;
+        siftDown(entry.position);
+    }
+
+    /**
+     * 获取计数最多的键
+     *
+     * @param n 最多返回的数量
+     * @return  按计数从大到小排列的键，为副本
+     */
+    public List<Entry> top(int n) {
+        List<Entry> ret = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ret.add(new Entry(heap[i].key, heap[i].count, heap[i].error));
+        }
+        ret.sort((a, b) -> Long.compare(b.count, a.count));
+        return ret.size() > n ? new ArrayList<>(ret.subList(0, Math.max(n, 0))) : ret;
+    }
+
+    /**
+     * 清空记录
+     */
+    public void clear() {
+        Arrays.fill(heap, null);
+        index.clear();
+        size = 0;
+    }
+
+    /**
+     * 新加入后上浮
+     *
+     * @param position 位置
+     */
+    private void siftUp(int position) {
+        Entry entry = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (heap[parent].count <= entry.count) {
+                break;
+            }
+            heap[position] = heap[parent];
+            heap[position].position = position;
+            position = parent;
+        }
+        heap[position] = entry;
+        entry.position = position;
+    }
+
+    /**
+     * 计数增加后下沉
+     *
+     * @param position 位置
+     */
+    private void siftDown(int position) {
+        Entry entry = heap[position];
+        while (true) {
+            int child = position * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (heap[child].count >= entry.count) {
+                break;
+            }
+            heap[position] = heap[child];
+            heap[position].position = position;
+            position = child;
+        }
+        heap[position] = entry;
+        entry.position = position;
+    }
+
+    /**
+     * 计数结果
+     */
+    public static class Entry {
+        /**
+         * 键
+         */
+        public long key;
+
+        /**
+         * 计数，不小于真实次数
+         */
+        public long count;
+
+        /**
+         * 计数可能偏高的上限，真实次数不小于 count - error
+         */
+        public long error;
+
+        /**
+         * 在堆中的位置
+         */
+        private int position;
+
+        /**
+         * 创建计数结果
+         *
+         * @param key   键
+         * @param count 计数
+         * @param error 误差
+         */
+        private Entry(long key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
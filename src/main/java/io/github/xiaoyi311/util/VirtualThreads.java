@@ -0,0 +1,50 @@
+package io.github.xiaoyi311.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程支持<br>
+ * Java 8 版本，不支持虚拟线程；Java 21 版本位于多版本 JAR 的 META-INF/versions/21
+ */
+class VirtualThreads {
+    /**
+     * 是否支持虚拟线程
+     *
+     * @return 是否支持
+     */
+    static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * 创建一个未启动的虚拟线程
+     *
+     * @param name 线程名称
+     * @param task 线程任务
+     * @return     线程
+     */
+    static Thread newThread(String name, Runnable task) {
+        throw new UnsupportedOperationException("當前 Java 版本不支持虛擬線程");
+    }
+
+    /**
+     * 创建虚拟线程工厂
+     *
+     * @param prefix 线程名称前缀
+     * @return       线程工厂
+     */
+    static ThreadFactory newFactory(String prefix) {
+        throw new UnsupportedOperationException("當前 Java 版本不支持虛擬線程");
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的线程池
+     *
+     * @param prefix 线程名称前缀
+     * @return       线程池
+     */
+    static ExecutorService newExecutor(String prefix) {
+        throw new UnsupportedOperationException("當前 Java 版本不支持虛擬線程");
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.xiaoyi311.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程支持<br>
+ * Java 21 版本，使用 {@link Thread#ofVirtual()} 创建线程
+ */
+class VirtualThreads {
+    /**
+     * 是否支持虚拟线程
+     *
+     * @return 是否支持
+     */
+    static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * 创建一个未启动的虚拟线程
+     *
+     * @param name 线程名称
+     * @param task 线程任务
+     * @return     线程
+     */
+    static Thread newThread(String name, Runnable task) {
+        return Thread.ofVirtual().name(name).unstarted(task);
+    }
+
+    /**
+     * 创建虚拟线程工厂
+     *
+     * @param prefix 线程名称前缀
+     * @return       线程工厂
+     */
+    static ThreadFactory newFactory(String prefix) {
+        return Thread.ofVirtual().name(prefix, 1).factory();
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的线程池
+     *
+     * @param prefix 线程名称前缀
+     * @return       线程池
+     */
+    static ExecutorService newExecutor(String prefix) {
+        return Executors.newThreadPerTaskExecutor(newFactory(prefix));
+    }
+}